@@ -0,0 +1,110 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * <p>Compressed sparse rows for indicator data: the rows only store their indices,
+ * every value is implicitly 1, so the solvers can skip the multiplications.</p>
+ *
+ * The bias feature (index <code>biasIndex</code>, always the last entry of a row)
+ * has the value <code>biasValue</code>. <code>biasIndex</code> is 0 if there's no bias feature.
+ *
+ * Rows which contain other values can be mixed in: if <code>valuePtr[i] &gt;= 0</code>,
+ * the values of row i are stored at <code>value[valuePtr[i]] .. value[valuePtr[i] + length(i) - 1]</code>.
+ * <code>valuePtr</code> is <code>null</code> if all rows are binary.
+ */
+final class BinaryCsrRows implements SparseRows {
+
+    final int[]    rowPtr;
+    final int[]    index;
+    final int[]    valuePtr;
+    final double[] value;
+    final int      biasIndex;
+    final double   biasValue;
+
+    BinaryCsrRows( int[] rowPtr, int[] index, int[] valuePtr, double[] value, int biasIndex, double biasValue ) {
+        this.rowPtr = rowPtr;
+        this.index = index;
+        this.valuePtr = valuePtr;
+        this.value = value;
+        this.biasIndex = biasIndex;
+        this.biasValue = biasValue;
+    }
+
+    private int valueOffset(int i) {
+        return valuePtr == null ? -1 : valuePtr[i];
+    }
+
+    public int length(int i) {
+        return rowPtr[i + 1] - rowPtr[i];
+    }
+
+    public int copy(int i, int[] index, double[] value) {
+        int begin = rowPtr[i];
+        int len = rowPtr[i + 1] - begin;
+        System.arraycopy(this.index, begin, index, 0, len);
+        int offset = valueOffset(i);
+        if (offset >= 0) {
+            System.arraycopy(this.value, offset, value, 0, len);
+        } else {
+            for (int k = 0; k < len; k++)
+                value[k] = 1;
+            if (len > 0 && index[len - 1] == biasIndex) value[len - 1] = biasValue;
+        }
+        return len;
+    }
+
+    public double dot(int i, double[] v) {
+        int begin = rowPtr[i];
+        int end = rowPtr[i + 1];
+        double s = 0;
+        int offset = valueOffset(i);
+        if (offset >= 0) {
+            for (int k = begin; k < end; k++) {
+                s += v[index[k] - 1] * value[offset + k - begin];
+            }
+            return s;
+        }
+
+        boolean hasBias = end > begin && index[end - 1] == biasIndex;
+        if (hasBias) end--;
+        for (int k = begin; k < end; k++) {
+            s += v[index[k] - 1];
+        }
+        if (hasBias) s += v[biasIndex - 1] * biasValue;
+        return s;
+    }
+
+    public void axpy(int i, double a, double[] v) {
+        int begin = rowPtr[i];
+        int end = rowPtr[i + 1];
+        int offset = valueOffset(i);
+        if (offset >= 0) {
+            for (int k = begin; k < end; k++) {
+                v[index[k] - 1] += a * value[offset + k - begin];
+            }
+            return;
+        }
+
+        boolean hasBias = end > begin && index[end - 1] == biasIndex;
+        if (hasBias) end--;
+        for (int k = begin; k < end; k++) {
+            v[index[k] - 1] += a;
+        }
+        if (hasBias) v[biasIndex - 1] += a * biasValue;
+    }
+
+    public double squaredNorm(int i) {
+        int begin = rowPtr[i];
+        int end = rowPtr[i + 1];
+        int offset = valueOffset(i);
+        if (offset >= 0) {
+            double s = 0;
+            for (int k = offset, last = offset + end - begin; k < last; k++) {
+                s += value[k] * value[k];
+            }
+            return s;
+        }
+
+        if (end > begin && index[end - 1] == biasIndex) return (end - begin - 1) + biasValue * biasValue;
+        return end - begin;
+    }
+}
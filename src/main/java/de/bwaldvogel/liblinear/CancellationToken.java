@@ -0,0 +1,23 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * Lets another thread stop a running training, see {@link Parameter#setCancellationToken(CancellationToken)}.
+ * The solvers check the token between their outer iterations and return the weights they have reached so far.
+ *
+ * @since 1.9
+ */
+public final class CancellationToken {
+
+    private volatile boolean cancelled;
+
+    /**
+     * asks the trainings that use this token to stop
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
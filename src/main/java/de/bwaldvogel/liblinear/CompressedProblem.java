@@ -0,0 +1,44 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * <p>A {@link Problem} that keeps its instances in a compressed, byte-oriented row format.</p>
+ *
+ * The indices of each instance are delta-coded as variable length integers, so sparse data with
+ * small gaps between the indices needs one or two bytes per index instead of four. The values are
+ * either kept in double precision ({@link StorageType#COMPRESSED}) or, if the data has only a few
+ * distinct values (e.g. counts or indicators), replaced by short codes into a dictionary of the
+ * distinct values ({@link StorageType#COMPRESSED_DICTIONARY}). The values are never rounded.
+ *
+ * The solvers decode the instances on the fly, which trades some CPU time for memory bandwidth
+ * and makes very large training sets fit into memory. The models are exactly the same as the ones
+ * trained on an uncompressed problem.
+ *
+ * Use {@link ProblemBuilder} or {@link Train#readProblem(java.io.File, double, StorageType)} to create it.
+ * {@link Problem#x} is <code>null</code> for this kind of problem.
+ *
+ * @since 1.9
+ */
+public class CompressedProblem extends Problem {
+
+    CompressedProblem( CompressedRows rows, int[] y, int n, double bias ) {
+        this.rows = rows;
+        this.l = y.length;
+        this.n = n;
+        this.y = y;
+        this.bias = bias;
+    }
+
+    /**
+     * @return true if the values are coded with a dictionary, see {@link StorageType#COMPRESSED_DICTIONARY}
+     */
+    public boolean isDictionaryCoded() {
+        return ((CompressedRows)rows).dictionary != null;
+    }
+
+    /**
+     * @return the number of bytes used by the encoded instances (without the labels)
+     */
+    public long getMemoryUsage() {
+        return ((CompressedRows)rows).memoryUsage();
+    }
+}
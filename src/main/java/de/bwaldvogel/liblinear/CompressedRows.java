@@ -0,0 +1,210 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * <p>Compressed sparse rows: the indices of a row are delta-coded and stored as varints in a byte array.</p>
+ *
+ * The bytes of row i are <code>data[rowPtr[i]] .. data[rowPtr[i+1]-1]</code>. Each entry starts with the
+ * difference to the previous index of the row (the first one with the index itself) as unsigned LEB128 varint,
+ * so dense rows need a single byte per index. The values are either stored in <code>value</code>
+ * (the values of row i start at <code>value[valuePtr[i]]</code>), or, if <code>dictionary</code> is set,
+ * each delta is followed by a varint code into the dictionary of distinct values.
+ *
+ * The rows are decoded on the fly in every call, entry by entry in ascending index order.
+ * The bias feature is not stored, it is appended to every row like in {@link MappedRows}.
+ */
+final class CompressedRows implements SparseRows {
+
+    final byte[]   data;
+    final int[]    rowPtr;
+    final int[]    valuePtr;
+    final double[] value;
+    final double[] dictionary;
+    final int      biasIndex;
+    final double   biasValue;
+
+    /**
+     * @param biasIndex the index of the bias feature or 0 if there is no bias feature
+     */
+    CompressedRows( byte[] data, int[] rowPtr, int[] valuePtr, double[] value, double[] dictionary, int biasIndex, double biasValue ) {
+        this.data = data;
+        this.rowPtr = rowPtr;
+        this.valuePtr = valuePtr;
+        this.value = value;
+        this.dictionary = dictionary;
+        this.biasIndex = biasIndex;
+        this.biasValue = biasValue;
+    }
+
+    public int length(int i) {
+        int length;
+        if (dictionary == null) {
+            length = valuePtr[i + 1] - valuePtr[i];
+        } else {
+            // every entry consists of two varints, count the last bytes of the varints
+            int varints = 0;
+            for (int p = rowPtr[i], end = rowPtr[i + 1]; p < end; p++) {
+                if (data[p] >= 0) varints++;
+            }
+            length = varints / 2;
+        }
+        if (biasIndex > 0) length++;
+        return length;
+    }
+
+    public int copy(int i, int[] index, double[] value) {
+        final byte[] data = this.data;
+        int p = rowPtr[i];
+        int end = rowPtr[i + 1];
+        int q = dictionary == null ? valuePtr[i] : 0;
+        int idx = 0;
+        int j = 0;
+        while (p < end) {
+            int b = data[p++];
+            int delta = b & 0x7f;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = data[p++];
+                delta |= (b & 0x7f) << shift;
+            }
+            idx += delta;
+            index[j] = idx;
+
+            if (dictionary == null) {
+                value[j] = this.value[q++];
+            } else {
+                b = data[p++];
+                int code = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    code |= (b & 0x7f) << shift;
+                }
+                value[j] = dictionary[code];
+            }
+            j++;
+        }
+        if (biasIndex > 0) {
+            index[j] = biasIndex;
+            value[j] = biasValue;
+            j++;
+        }
+        return j;
+    }
+
+    public double dot(int i, double[] v) {
+        final byte[] data = this.data;
+        int p = rowPtr[i];
+        int end = rowPtr[i + 1];
+        int idx = 0;
+        double s = 0;
+        if (dictionary == null) {
+            final double[] value = this.value;
+            int q = valuePtr[i];
+            while (p < end) {
+                int b = data[p++];
+                int delta = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    delta |= (b & 0x7f) << shift;
+                }
+                idx += delta;
+                s += v[idx - 1] * value[q++];
+            }
+        } else {
+            final double[] dictionary = this.dictionary;
+            while (p < end) {
+                int b = data[p++];
+                int delta = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    delta |= (b & 0x7f) << shift;
+                }
+                idx += delta;
+                b = data[p++];
+                int code = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    code |= (b & 0x7f) << shift;
+                }
+                s += v[idx - 1] * dictionary[code];
+            }
+        }
+        if (biasIndex > 0) s += v[biasIndex - 1] * biasValue;
+        return s;
+    }
+
+    public void axpy(int i, double a, double[] v) {
+        final byte[] data = this.data;
+        int p = rowPtr[i];
+        int end = rowPtr[i + 1];
+        int idx = 0;
+        if (dictionary == null) {
+            final double[] value = this.value;
+            int q = valuePtr[i];
+            while (p < end) {
+                int b = data[p++];
+                int delta = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    delta |= (b & 0x7f) << shift;
+                }
+                idx += delta;
+                v[idx - 1] += a * value[q++];
+            }
+        } else {
+            final double[] dictionary = this.dictionary;
+            while (p < end) {
+                int b = data[p++];
+                int delta = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    delta |= (b & 0x7f) << shift;
+                }
+                idx += delta;
+                b = data[p++];
+                int code = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    code |= (b & 0x7f) << shift;
+                }
+                v[idx - 1] += a * dictionary[code];
+            }
+        }
+        if (biasIndex > 0) v[biasIndex - 1] += a * biasValue;
+    }
+
+    public double squaredNorm(int i) {
+        double s = 0;
+        if (dictionary == null) {
+            for (int q = valuePtr[i], end = valuePtr[i + 1]; q < end; q++) {
+                s += value[q] * value[q];
+            }
+        } else {
+            // skip the deltas, only the codes are needed
+            final byte[] data = this.data;
+            int p = rowPtr[i];
+            int end = rowPtr[i + 1];
+            while (p < end) {
+                while (data[p++] < 0) {}
+                int b = data[p++];
+                int code = b & 0x7f;
+                for (int shift = 7; b < 0; shift += 7) {
+                    b = data[p++];
+                    code |= (b & 0x7f) << shift;
+                }
+                s += dictionary[code] * dictionary[code];
+            }
+        }
+        if (biasIndex > 0) s += biasValue * biasValue;
+        return s;
+    }
+
+    /**
+     * @return the number of bytes used by the arrays of the rows
+     */
+    long memoryUsage() {
+        long bytes = data.length + 4L * rowPtr.length;
+        if (valuePtr != null) bytes += 4L * valuePtr.length;
+        if (value != null) bytes += 8L * value.length;
+        if (dictionary != null) bytes += 8L * dictionary.length;
+        return bytes;
+    }
+}
@@ -0,0 +1,183 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * encodes rows one after the other into {@link CompressedRows}
+ */
+final class CompressedRowsWriter {
+
+    private byte[]   data       = new byte[256];
+    private int      size       = 0;
+    private int      l          = 0;
+    private int[]    rowPtr     = new int[17];
+
+    // without dictionary
+    private int[]    valuePtr;
+    private double[] value;
+    private int      valueCount = 0;
+
+    // with dictionary: open addressing hash table from the bits of a value to its code + 1 (0 is empty)
+    private double[] dictionary;
+    private int      dictionarySize;
+    private long[]   keys;
+    private int[]    codes;
+
+    CompressedRowsWriter( boolean dictionaryCoded ) {
+        if (dictionaryCoded) {
+            dictionary = new double[16];
+            keys = new long[64];
+            codes = new int[64];
+        } else {
+            valuePtr = new int[17];
+            value = new double[64];
+        }
+    }
+
+    /**
+     * appends the row given by the entries <code>from .. to-1</code> of <code>index</code> and <code>value</code>,
+     * the indices must be positive and sorted in ascending order
+     */
+    void addRow(int[] index, double[] value, int from, int to) {
+        if (l + 1 == rowPtr.length) {
+            rowPtr = grow(rowPtr, l + 2);
+            if (valuePtr != null) valuePtr = grow(valuePtr, l + 2);
+        }
+        // every varint needs at most 5 bytes
+        long maxSize = size + 10L * (to - from);
+        if (maxSize > Integer.MAX_VALUE - 8) throw new IllegalStateException("too many non-zero entries");
+        if (maxSize > data.length) data = grow(data, (int)maxSize);
+
+        int indexBefore = 0;
+        for (int k = from; k < to; k++) {
+            writeVarint(index[k] - indexBefore);
+            indexBefore = index[k];
+            if (dictionary != null) writeVarint(code(value[k]));
+        }
+        if (dictionary == null) {
+            int length = to - from;
+            if (valueCount + length > this.value.length) this.value = grow(this.value, valueCount + length);
+            System.arraycopy(value, from, this.value, valueCount, length);
+            valueCount += length;
+            valuePtr[l + 1] = valueCount;
+        }
+        l++;
+        rowPtr[l] = size;
+    }
+
+    /**
+     * appends the first l rows of the given rows
+     *
+     * @param withoutBias drops the last entry of every row, i.e. the bias feature
+     */
+    void addRows(SparseRows rows, int l, boolean withoutBias) {
+        int[] index = new int[16];
+        double[] value = new double[16];
+        for (int i = 0; i < l; i++) {
+            int length = rows.length(i);
+            if (length > index.length) {
+                index = new int[newCapacity(index.length, length)];
+                value = new double[index.length];
+            }
+            rows.copy(i, index, value);
+            addRow(index, value, 0, withoutBias ? length - 1 : length);
+        }
+    }
+
+    int size() {
+        return l;
+    }
+
+    /**
+     * @param biasIndex the index of the bias feature which is appended to every row, or 0 for no bias feature
+     */
+    CompressedRows build(int biasIndex, double biasValue) {
+        byte[] compactData = new byte[size];
+        System.arraycopy(data, 0, compactData, 0, size);
+        data = null;
+        if (dictionary == null) {
+            return new CompressedRows(compactData, copyOf(rowPtr, l + 1), copyOf(valuePtr, l + 1), copyOf(value, valueCount), null,
+                biasIndex, biasValue);
+        }
+        return new CompressedRows(compactData, copyOf(rowPtr, l + 1), null, null, copyOf(dictionary, dictionarySize), biasIndex, biasValue);
+    }
+
+    private void writeVarint(int v) {
+        while ((v & ~0x7f) != 0) {
+            data[size++] = (byte)((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        data[size++] = (byte)v;
+    }
+
+    private int code(double v) {
+        long key = Double.doubleToLongBits(v);
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (codes[slot] != 0) {
+            if (keys[slot] == key) return codes[slot] - 1;
+            slot = (slot + 1) & mask;
+        }
+
+        int code = dictionarySize;
+        if (code == dictionary.length) dictionary = grow(dictionary, code + 1);
+        dictionary[code] = v;
+        dictionarySize++;
+        keys[slot] = key;
+        codes[slot] = code + 1;
+        // keep the load factor below 1/2
+        if (2 * dictionarySize > keys.length) rehash();
+        return code;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldCodes = codes;
+        keys = new long[oldKeys.length * 2];
+        codes = new int[oldCodes.length * 2];
+        int mask = keys.length - 1;
+        for (int s = 0; s < oldKeys.length; s++) {
+            if (oldCodes[s] == 0) continue;
+            int slot = hash(oldKeys[s]) & mask;
+            while (codes[slot] != 0)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[s];
+            codes[slot] = oldCodes[s];
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    private static int newCapacity(int length, int minCapacity) {
+        int capacity = length + (length >> 1) + 16;
+        if (capacity < minCapacity || capacity < 0) capacity = minCapacity;
+        return capacity;
+    }
+
+    private static byte[] grow(byte[] array, int minCapacity) {
+        byte[] copy = new byte[newCapacity(array.length, minCapacity)];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static int[] grow(int[] array, int minCapacity) {
+        return copyOf(array, newCapacity(array.length, minCapacity));
+    }
+
+    private static double[] grow(double[] array, int minCapacity) {
+        return copyOf(array, newCapacity(array.length, minCapacity));
+    }
+
+    private static int[] copyOf(int[] original, int newLength) {
+        int[] copy = new int[newLength];
+        System.arraycopy(original, 0, copy, 0, Math.min(original.length, newLength));
+        return copy;
+    }
+
+    private static double[] copyOf(double[] original, int newLength) {
+        double[] copy = new double[newLength];
+        System.arraycopy(original, 0, copy, 0, Math.min(original.length, newLength));
+        return copy;
+    }
+}
@@ -0,0 +1,156 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * <p>A {@link Problem} that keeps its instances in compressed sparse row (CSR) format
+ * instead of an array of {@link libsvm.svm.model.Feature} objects.</p>
+ *
+ * The non-zero entries of instance i are stored at the positions
+ * <code>rowPtr[i] .. rowPtr[i+1]-1</code> of <code>index</code> and <code>value</code>.
+ * For the example given in {@link Problem} (bias = 1) the arrays are:
+ * <pre>
+ *  rowPtr -&gt; 0 3 7 9 13 19
+ *  index  -&gt; 2   3   6  2   3   4    6  1   6  2   4   5   6  1    2    3   4   5   6
+ *  value  -&gt; 0.1 0.2 1  0.1 0.3 -1.2 1  0.4 1  0.1 1.4 0.5 1  -0.1 -0.2 0.1 1.1 0.1 1
+ * </pre>
+ *
+ * Like in {@link Problem#x}, the bias feature has to be part of each row.
+ * {@link Problem#x} is <code>null</code> for this kind of problem.
+ *
+ * The values can either be stored in double or in single precision ({@link #isSinglePrecision()}).
+ * Single precision halves the memory needed for the values, the solvers still compute in double precision.
+ * For indicator data, the values can be omitted completely ({@link #isBinary()}).
+ *
+ * @since 1.9
+ */
+public class CsrProblem extends Problem {
+
+    private final int[]    rowPtr;
+    private final int[]    index;
+    private final double[] value;
+    private final float[]  floatValue;
+
+    /**
+     * The arrays are <b>not</b> copied.
+     *
+     * @param rowPtr row offsets, <code>rowPtr.length == y.length + 1</code>
+     * @param index one-based feature indices, sorted in ascending order within each row
+     * @param value feature values
+     * @param y target values
+     * @param n the number of features (including the bias feature if bias &gt;= 0)
+     * @param bias see {@link Problem#bias}
+     * @throws IllegalArgumentException if the arrays do not describe a valid problem
+     */
+    public CsrProblem( int[] rowPtr, int[] index, double[] value, int[] y, int n, double bias ) {
+        this(rowPtr, index, value, null, y, n, bias);
+        if (value == null) throw new IllegalArgumentException("arrays must not be null");
+        if (value.length < rowPtr[l]) throw new IllegalArgumentException("value array is too short");
+        this.rows = new CsrRows(rowPtr, index, value);
+    }
+
+    /**
+     * same as {@link #CsrProblem(int[], int[], double[], int[], int, double)} with single precision values
+     */
+    public CsrProblem( int[] rowPtr, int[] index, float[] value, int[] y, int n, double bias ) {
+        this(rowPtr, index, null, value, y, n, bias);
+        if (value == null) throw new IllegalArgumentException("arrays must not be null");
+        if (value.length < rowPtr[l]) throw new IllegalArgumentException("value array is too short");
+        this.rows = new FloatCsrRows(rowPtr, index, value);
+    }
+
+    /**
+     * Creates a problem of binary (indicator) instances which only stores the indices.
+     * Every value is 1, except for the bias feature (index n, the last entry of each row if bias &gt;= 0)
+     * which has the value <code>bias</code>.
+     *
+     * @see #CsrProblem(int[], int[], double[], int[], int, double)
+     */
+    public CsrProblem( int[] rowPtr, int[] index, int[] y, int n, double bias ) {
+        this(rowPtr, index, (double[])null, (float[])null, y, n, bias);
+        this.rows = new BinaryCsrRows(rowPtr, index, null, null, bias >= 0 ? n : 0, bias);
+    }
+
+    /**
+     * binary rows mixed with rows that have their own values, see {@link BinaryCsrRows}
+     */
+    CsrProblem( int[] rowPtr, int[] index, int[] valuePtr, double[] value, int[] y, int n, double bias ) {
+        this(rowPtr, index, (double[])null, (float[])null, y, n, bias);
+        this.rows = new BinaryCsrRows(rowPtr, index, valuePtr, value, bias >= 0 ? n : 0, bias);
+    }
+
+    private CsrProblem( int[] rowPtr, int[] index, double[] value, float[] floatValue, int[] y, int n, double bias ) {
+        if (rowPtr == null || index == null || y == null)
+            throw new IllegalArgumentException("arrays must not be null");
+        if (rowPtr.length != y.length + 1) throw new IllegalArgumentException("rowPtr must have y.length + 1 elements");
+        checkRows(rowPtr, index, n);
+
+        this.rowPtr = rowPtr;
+        this.index = index;
+        this.value = value;
+        this.floatValue = floatValue;
+        this.l = y.length;
+        this.n = n;
+        this.y = y;
+        this.bias = bias;
+    }
+
+    static void checkRows(int[] rowPtr, int[] index, int n) {
+        if (rowPtr[0] != 0) throw new IllegalArgumentException("rowPtr[0] must be 0");
+        int l = rowPtr.length - 1;
+        if (index.length < rowPtr[l]) throw new IllegalArgumentException("index array is too short");
+        for (int i = 0; i < l; i++) {
+            if (rowPtr[i + 1] < rowPtr[i]) throw new IllegalArgumentException("rowPtr must be non-decreasing");
+            int indexBefore = 0;
+            for (int k = rowPtr[i]; k < rowPtr[i + 1]; k++) {
+                if (index[k] <= indexBefore) {
+                    throw new IllegalArgumentException("feature nodes must be sorted by index in ascending order");
+                }
+                if (index[k] > n) throw new IllegalArgumentException("feature index " + index[k] + " is larger than n=" + n);
+                indexBefore = index[k];
+            }
+        }
+    }
+
+    /**
+     * @return the row offsets (<b>not</b> a copy)
+     */
+    public int[] getRowPtr() {
+        return rowPtr;
+    }
+
+    /**
+     * @return the feature indices (<b>not</b> a copy)
+     */
+    public int[] getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the feature values (<b>not</b> a copy) or <code>null</code> if they are stored in single precision
+     *         or if this is a binary problem
+     */
+    public double[] getValue() {
+        return value;
+    }
+
+    /**
+     * @return the feature values (<b>not</b> a copy) or <code>null</code> if they are stored in double precision
+     */
+    public float[] getFloatValue() {
+        return floatValue;
+    }
+
+    /**
+     * @return true if the values are stored as <code>float</code>
+     */
+    public boolean isSinglePrecision() {
+        return floatValue != null;
+    }
+
+    /**
+     * @return true if (some of) the rows only store their indices
+     * @see #CsrProblem(int[], int[], int[], int, double)
+     */
+    public boolean isBinary() {
+        return rows instanceof BinaryCsrRows;
+    }
+}
@@ -0,0 +1,52 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * compressed sparse row storage: the entries of row i are located at
+ * <code>rowPtr[i] .. rowPtr[i+1]-1</code> of <code>index</code> and <code>value</code>
+ */
+final class CsrRows implements SparseRows {
+
+    final int[]    rowPtr;
+    final int[]    index;
+    final double[] value;
+
+    CsrRows( int[] rowPtr, int[] index, double[] value ) {
+        this.rowPtr = rowPtr;
+        this.index = index;
+        this.value = value;
+    }
+
+    public int length(int i) {
+        return rowPtr[i + 1] - rowPtr[i];
+    }
+
+    public int copy(int i, int[] index, double[] value) {
+        int begin = rowPtr[i];
+        int len = rowPtr[i + 1] - begin;
+        System.arraycopy(this.index, begin, index, 0, len);
+        System.arraycopy(this.value, begin, value, 0, len);
+        return len;
+    }
+
+    public double dot(int i, double[] v) {
+        double s = 0;
+        for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+            s += v[index[k] - 1] * value[k];
+        }
+        return s;
+    }
+
+    public void axpy(int i, double a, double[] v) {
+        for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+            v[index[k] - 1] += a * value[k];
+        }
+    }
+
+    public double squaredNorm(int i) {
+        double s = 0;
+        for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+            s += value[k] * value[k];
+        }
+        return s;
+    }
+}
@@ -0,0 +1,102 @@
+package de.bwaldvogel.liblinear;
+
+import libsvm.svm.model.Feature;
+
+/**
+ * finds duplicate instances with a hash table over the hashes of the instances, see {@link Problem#collapseDuplicates(Problem)}
+ */
+final class DuplicateRows {
+
+    private DuplicateRows() {}
+
+    static Problem collapse(Problem prob) {
+        int l = prob.l;
+        SparseRows x = prob.rows();
+
+        int max_length = 0;
+        for (int i = 0; i < l; i++)
+            max_length = Math.max(max_length, x.length(i));
+        int[] index = new int[max_length];
+        double[] value = new double[max_length];
+        int[] otherIndex = new int[max_length];
+        double[] otherValue = new double[max_length];
+
+        // open addressing, a slot holds the position + 1 of a distinct instance
+        int capacity = (int)Math.min(1L << 30, Integer.highestOneBit(Math.max(l, 1)) * 4L);
+        int mask = capacity - 1;
+        int[] table = new int[capacity];
+
+        int[] distinct = new int[l];
+        long[] hashes = new long[l];
+        double[] weight = new double[l];
+        int count = 0;
+
+        for (int i = 0; i < l; i++) {
+            int length = x.copy(i, index, value);
+            long hash = hash(prob.y[i], index, value, length);
+            double w = prob.W != null ? prob.W[i] : 1;
+
+            int slot = (int)hash & mask;
+            while (true) {
+                int d = table[slot] - 1;
+                if (d < 0) {
+                    table[slot] = count + 1;
+                    distinct[count] = i;
+                    hashes[count] = hash;
+                    weight[count] = w;
+                    count++;
+                    break;
+                }
+                int j = distinct[d];
+                if (hashes[d] == hash && prob.y[j] == prob.y[i] && x.length(j) == length) {
+                    x.copy(j, otherIndex, otherValue);
+                    if (equals(index, value, otherIndex, otherValue, length)) {
+                        weight[d] += w;
+                        break;
+                    }
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        if (count == l) return prob;
+
+        Problem result = new Problem();
+        result.l = count;
+        result.n = prob.n;
+        result.bias = prob.bias;
+        result.featureHasher = prob.featureHasher;
+        result.y = new int[count];
+        result.W = new double[count];
+        int[] rows = new int[count];
+        System.arraycopy(distinct, 0, rows, 0, count);
+        System.arraycopy(weight, 0, result.W, 0, count);
+        for (int k = 0; k < count; k++)
+            result.y[k] = prob.y[rows[k]];
+
+        if (prob.rows == null) {
+            result.x = new Feature[count][];
+            for (int k = 0; k < count; k++)
+                result.x[k] = prob.x[rows[k]];
+        } else {
+            result.rows = new RowSubset(prob.rows, rows);
+        }
+        return result;
+    }
+
+    private static long hash(int label, int[] index, double[] value, int length) {
+        long h = label;
+        for (int k = 0; k < length; k++) {
+            h = h * 0x9E3779B97F4A7C15L + index[k];
+            h = h * 0x9E3779B97F4A7C15L + Double.doubleToLongBits(value[k]);
+        }
+        return FeatureHasher.hash(h);
+    }
+
+    private static boolean equals(int[] index, double[] value, int[] otherIndex, double[] otherValue, int length) {
+        for (int k = 0; k < length; k++) {
+            if (index[k] != otherIndex[k] || Double.doubleToLongBits(value[k]) != Double.doubleToLongBits(otherValue[k])) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package de.bwaldvogel.liblinear;
+
+import libsvm.svm.model.Feature;
+
+/**
+ * {@link SparseRows} view of the classic <code>Feature[][]</code> representation ({@link Problem#x})
+ */
+final class FeatureArrayRows implements SparseRows {
+
+    private final Feature[][] x;
+
+    FeatureArrayRows( Feature[][] x ) {
+        this.x = x;
+    }
+
+    public int length(int i) {
+        return x[i].length;
+    }
+
+    public int copy(int i, int[] index, double[] value) {
+        Feature[] xi = x[i];
+        for (int k = 0; k < xi.length; k++) {
+            index[k] = xi[k].getIndex();
+            value[k] = xi[k].getValue();
+        }
+        return xi.length;
+    }
+
+    public double dot(int i, double[] v) {
+        double s = 0;
+        for (Feature xi : x[i]) {
+            s += v[xi.getIndex() - 1] * xi.getValue();
+        }
+        return s;
+    }
+
+    public void axpy(int i, double a, double[] v) {
+        for (Feature xi : x[i]) {
+            v[xi.getIndex() - 1] += a * xi.getValue();
+        }
+    }
+
+    public double squaredNorm(int i) {
+        double s = 0;
+        for (Feature xi : x[i]) {
+            s += xi.getValue() * xi.getValue();
+        }
+        return s;
+    }
+}
@@ -0,0 +1,140 @@
+package de.bwaldvogel.liblinear;
+
+import java.util.Random;
+
+/**
+ * <p>The instance matrix in column-major order for the L1-regularized solvers, together with the rows that the
+ * solver sees.</p>
+ *
+ * The columns (see {@link Linear#transposeToColumns(Problem)}) are built once per training or cross validation and
+ * shared read-only by all classes and folds. The row indices of the columns are the one-based rows of the problem
+ * they were built from, a sub-problem like a permutation or a fold only gets a new row mapping
+ * (see {@link #select(int[])}). The solvers apply the labels at compute time, the values are never modified.
+ */
+final class FeatureColumns {
+
+    private static final int POWER_ITERATIONS = 20;
+
+    final int[]    col_ptr;
+    final int[]    row_index;
+    final double[] x_value;
+
+    /**
+     * row <code>row_index[k] - 1</code> of the base problem is row <code>rowOf[row_index[k] - 1]</code> of the
+     * problem of the solver, -1 if it is not part of it
+     */
+    final int[]    rowOf;
+    /** the inverse of rowOf */
+    private final int[] baseRow;
+
+    /** the estimate of {@link #spectralRadius()}, 0 until it is computed */
+    private double      spectralRadius;
+
+    /**
+     * @param columns the columns of a problem with l instances
+     */
+    FeatureColumns( CsrRows columns, int l ) {
+        this(columns.rowPtr, columns.index, columns.value, identity(l), identity(l));
+    }
+
+    private FeatureColumns( int[] col_ptr, int[] row_index, double[] x_value, int[] rowOf, int[] baseRow ) {
+        this.col_ptr = col_ptr;
+        this.row_index = row_index;
+        this.x_value = x_value;
+        this.rowOf = rowOf;
+        this.baseRow = baseRow;
+    }
+
+    private static int[] identity(int l) {
+        int[] rows = new int[l];
+        for (int i = 0; i < l; i++)
+            rows[i] = i;
+        return rows;
+    }
+
+    /**
+     * @param rows the rows of the sub-problem, row i of the sub-problem is row <code>rows[i]</code> of this problem
+     * @return the columns of the sub-problem, they share the arrays of this columns
+     */
+    FeatureColumns select(int[] rows) {
+        int[] subRowOf = new int[rowOf.length];
+        int[] subBaseRow = new int[rows.length];
+        for (int i = 0; i < subRowOf.length; i++)
+            subRowOf[i] = -1;
+        for (int i = 0; i < rows.length; i++) {
+            subBaseRow[i] = baseRow[rows[i]];
+            subRowOf[subBaseRow[i]] = i;
+        }
+        return new FeatureColumns(col_ptr, row_index, x_value, subRowOf, subBaseRow);
+    }
+
+    /**
+     * @return the spectral radius of <code>X^T X</code> with normalized columns of the selected rows, estimated
+     *         on the first call and shared by all classes of the problem
+     */
+    synchronized double spectralRadius() {
+        if (spectralRadius == 0) spectralRadius = estimateSpectralRadius(new Random(0));
+        return spectralRadius;
+    }
+
+    /**
+     * The power iteration on <code>X^T X</code> with normalized columns. Its eigenvalues are between 1 for
+     * uncorrelated and <code>n</code> for identical features. It has its own random start vector, so that it
+     * doesn't change the coordinate order of the solvers.
+     */
+    private double estimateSpectralRadius(Random random) {
+        int l = baseRow.length;
+        int w_size = col_ptr.length - 1;
+        double[] norm = new double[w_size];
+        double[] v = new double[w_size];
+        double[] u = new double[l];
+        for (int j = 0; j < w_size; j++) {
+            double sq = 0;
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++)
+                if (rowOf[row_index[k] - 1] >= 0) sq += x_value[k] * x_value[k];
+            norm[j] = Math.sqrt(sq);
+            if (norm[j] > 0) v[j] = random.nextDouble();
+        }
+
+        double rho = 1;
+        for (int iter = 0; iter < POWER_ITERATIONS; iter++) {
+            double v_norm = 0;
+            for (int j = 0; j < w_size; j++)
+                v_norm += v[j] * v[j];
+            v_norm = Math.sqrt(v_norm);
+            if (v_norm == 0) break;
+
+            for (int i = 0; i < l; i++)
+                u[i] = 0;
+            for (int j = 0; j < w_size; j++) {
+                if (v[j] == 0) continue;
+                double vj = v[j] / (v_norm * norm[j]);
+                for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                    int ind = rowOf[row_index[k] - 1];
+                    if (ind >= 0) u[ind] += vj * x_value[k];
+                }
+            }
+
+            double Av_norm = 0;
+            for (int j = 0; j < w_size; j++) {
+                if (norm[j] == 0) continue;
+                double s = 0;
+                for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                    int ind = rowOf[row_index[k] - 1];
+                    if (ind >= 0) s += x_value[k] * u[ind];
+                }
+                v[j] = s / norm[j];
+                Av_norm += v[j] * v[j];
+            }
+            rho = Math.max(1, Math.sqrt(Av_norm));
+        }
+        return rho;
+    }
+
+    /**
+     * @return the number of non-zero entries of all columns, including the rows that are not selected
+     */
+    int nnz() {
+        return col_ptr[col_ptr.length - 1];
+    }
+}
@@ -0,0 +1,237 @@
+package de.bwaldvogel.liblinear;
+
+import java.io.Serializable;
+
+/**
+ * <p>Maps arbitrary feature keys into the fixed index range <code>1 .. 2^bits</code> ("hashing trick").</p>
+ *
+ * Instead of remapping the raw feature ids to dense indices with a dictionary, every key is hashed and the
+ * low bits of the hash select the feature index, so the number of weights is bounded by <code>2^bits</code>
+ * no matter how many distinct keys there are. Keys that collide add up their values. With signed hashing
+ * (the default) another bit of the hash decides whether the value is negated, so that collisions cancel out
+ * in expectation instead of adding a bias.
+ *
+ * Keys are either strings or longs. In files in LibSVM format (see
+ * {@link Train#readProblem(java.io.File, double, StorageType, int, FeatureHasher)}) the part in front of the
+ * colon is the key: decimal integers within the range of long are hashed like {@link #index(long)}, anything else
+ * like {@link #index(String)}. The hasher is stored in the {@link Model}, so {@link Predict} applies the same mapping.
+ * The hash function is fixed, it doesn't depend on the JVM or on {@link String#hashCode()}.
+ *
+ * @since 1.9
+ */
+public final class FeatureHasher implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** the largest number of bits, so that 2^bits + 1 features (with bias) still fit into an int */
+    public static final int   MAX_BITS         = 30;
+
+    private final int         bits;
+    private final boolean     signed;
+
+    /**
+     * creates a hasher with signed hashing
+     *
+     * @param bits the feature indices are <code>1 .. 2^bits</code>
+     * @throws IllegalArgumentException if bits is not between 1 and {@link #MAX_BITS}
+     */
+    public FeatureHasher( int bits ) {
+        this(bits, true);
+    }
+
+    /**
+     * @param bits the feature indices are <code>1 .. 2^bits</code>
+     * @param signed whether the values are negated for half of the keys
+     * @throws IllegalArgumentException if bits is not between 1 and {@link #MAX_BITS}
+     */
+    public FeatureHasher( int bits, boolean signed ) {
+        if (bits < 1 || bits > MAX_BITS) throw new IllegalArgumentException("bits must be between 1 and " + MAX_BITS + ": " + bits);
+        this.bits = bits;
+        this.signed = signed;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    public boolean isSigned() {
+        return signed;
+    }
+
+    /**
+     * @return the number of feature indices, <code>2^bits</code>
+     */
+    public int getDimension() {
+        return 1 << bits;
+    }
+
+    /**
+     * @return the feature index of the key, between 1 and {@link #getDimension()}
+     */
+    public int index(long key) {
+        return indexOf(hash(key));
+    }
+
+    /**
+     * @return the feature index of the key, between 1 and {@link #getDimension()}
+     */
+    public int index(String key) {
+        return indexOf(hash(key));
+    }
+
+    /**
+     * @return the factor (1 or -1) that is applied to the value of the key
+     */
+    public double sign(long key) {
+        return signOf(hash(key));
+    }
+
+    /**
+     * @return the factor (1 or -1) that is applied to the value of the key
+     */
+    public double sign(String key) {
+        return signOf(hash(key));
+    }
+
+    int indexOf(long hash) {
+        return (int)(hash & ((1 << bits) - 1)) + 1;
+    }
+
+    /** the sign is taken from the highest bit, the index from the lowest bits */
+    double signOf(long hash) {
+        return signed && hash < 0 ? -1 : 1;
+    }
+
+    static long hash(long key) {
+        return mix(key);
+    }
+
+    static long hash(String key) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = 0; i < key.length(); i++)
+            h = (h ^ key.charAt(i)) * FNV_PRIME;
+        return mix(h);
+    }
+
+    /**
+     * @return the hash of the token <code>s[begin] .. s[end-1]</code>, which is the hash of the long key if the
+     *         token is a decimal integer in the range of long and the hash of the string key otherwise
+     */
+    static long hash(char[] s, int begin, int end) {
+        int i = begin;
+        boolean negative = i < end && s[i] == '-';
+        if (negative) i++;
+        if (i < end && end - i <= 19) {
+            // accumulate negatively to cover Long.MIN_VALUE
+            long result = 0;
+            for (; i < end; i++) {
+                int digit = s[i] - '0';
+                if (digit < 0 || digit > 9 || result < (Long.MIN_VALUE + digit) / 10) break;
+                result = result * 10 - digit;
+            }
+            if (i == end && (negative || result != Long.MIN_VALUE)) return mix(negative ? result : -result);
+        }
+
+        long h = FNV_OFFSET_BASIS;
+        for (i = begin; i < end; i++)
+            h = (h ^ s[i]) * FNV_PRIME;
+        return mix(h);
+    }
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME        = 0x100000001b3L;
+
+    /** the finalizer of MurmurHash3, every bit of the key affects every bit of the result */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Sorts the first <code>length</code> entries by index and adds up the values of equal indices.
+     * Entries whose values add up to zero are removed.
+     *
+     * @return the new length
+     */
+    static int sortAndMerge(int[] index, double[] value, int length) {
+        sort(index, value, 0, length);
+        int m = 0;
+        for (int k = 0; k < length;) {
+            int idx = index[k];
+            double sum = value[k++];
+            while (k < length && index[k] == idx)
+                sum += value[k++];
+            if (sum != 0) {
+                index[m] = idx;
+                value[m] = sum;
+                m++;
+            }
+        }
+        return m;
+    }
+
+    /** sorts the entries <code>from .. to-1</code> by index, stable for equal indices */
+    private static void sort(int[] index, double[] value, int from, int to) {
+        if (to - from <= 32) {
+            for (int i = from + 1; i < to; i++) {
+                int idx = index[i];
+                double val = value[i];
+                int j = i - 1;
+                for (; j >= from && index[j] > idx; j--) {
+                    index[j + 1] = index[j];
+                    value[j + 1] = value[j];
+                }
+                index[j + 1] = idx;
+                value[j + 1] = val;
+            }
+            return;
+        }
+
+        // merge sort, so that collisions are always added up in the order of the keys
+        int mid = (from + to) >>> 1;
+        sort(index, value, from, mid);
+        sort(index, value, mid, to);
+        if (index[mid - 1] <= index[mid]) return;
+
+        int[] leftIndex = new int[mid - from];
+        double[] leftValue = new double[mid - from];
+        System.arraycopy(index, from, leftIndex, 0, leftIndex.length);
+        System.arraycopy(value, from, leftValue, 0, leftValue.length);
+        int i = 0, j = mid, k = from;
+        while (i < leftIndex.length && j < to) {
+            if (index[j] < leftIndex[i]) {
+                index[k] = index[j];
+                value[k++] = value[j++];
+            } else {
+                index[k] = leftIndex[i];
+                value[k++] = leftValue[i++];
+            }
+        }
+        while (i < leftIndex.length) {
+            index[k] = leftIndex[i];
+            value[k++] = leftValue[i++];
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * bits + (signed ? 1 : 0);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof FeatureHasher)) return false;
+        FeatureHasher other = (FeatureHasher)obj;
+        return bits == other.bits && signed == other.signed;
+    }
+
+    @Override
+    public String toString() {
+        return "FeatureHasher bits=" + bits + " signed=" + signed;
+    }
+}
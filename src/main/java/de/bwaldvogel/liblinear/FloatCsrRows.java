@@ -0,0 +1,55 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * same as {@link CsrRows}, but the values are stored in single precision.
+ * All sums are still accumulated in double precision.
+ */
+final class FloatCsrRows implements SparseRows {
+
+    final int[]   rowPtr;
+    final int[]   index;
+    final float[] value;
+
+    FloatCsrRows( int[] rowPtr, int[] index, float[] value ) {
+        this.rowPtr = rowPtr;
+        this.index = index;
+        this.value = value;
+    }
+
+    public int length(int i) {
+        return rowPtr[i + 1] - rowPtr[i];
+    }
+
+    public int copy(int i, int[] index, double[] value) {
+        int begin = rowPtr[i];
+        int len = rowPtr[i + 1] - begin;
+        System.arraycopy(this.index, begin, index, 0, len);
+        for (int k = 0; k < len; k++) {
+            value[k] = this.value[begin + k];
+        }
+        return len;
+    }
+
+    public double dot(int i, double[] v) {
+        double s = 0;
+        for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+            s += v[index[k] - 1] * value[k];
+        }
+        return s;
+    }
+
+    public void axpy(int i, double a, double[] v) {
+        for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+            v[index[k] - 1] += a * value[k];
+        }
+    }
+
+    public double squaredNorm(int i) {
+        double s = 0;
+        for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+            double val = value[k];
+            s += val * val;
+        }
+        return s;
+    }
+}
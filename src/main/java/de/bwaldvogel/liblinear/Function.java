@@ -9,5 +9,11 @@ interface Function {
 
     void Hv(double[] s, double[] Hs);
 
+    /**
+     * the diagonal of the Hessian at the w of the last {@link #grad(double[], double[])}, the preconditioner of the
+     * conjugate gradient in {@link Tron}
+     */
+    void Hdiag(double[] M);
+
     int get_nr_variable();
 }
@@ -1,33 +1,47 @@
 package de.bwaldvogel.liblinear;
 
-import libsvm.svm.model.Feature;
-import libsvm.svm.model.FeatureNode;
-
 class L2R_L2_SvcFunction implements Function {
 
-    private final Problem  prob;
-    private final double[] C;
-    private final int[]    I;
-    private final double[] z;
+    private final Problem    prob;
+    private final RowKernels kernels;
+    private final double[]   C;
+    private final int[]      I;
+    private final double[]   z;
 
-    private int            sizeI;
+    private int              sizeI;
 
     public L2R_L2_SvcFunction( Problem prob, double Cp, double Cn ) {
+        this(prob, Cp, Cn, 1);
+    }
+
+    /**
+     * @param numThreads the number of threads that compute the matrix-vector products
+     */
+    public L2R_L2_SvcFunction( Problem prob, double Cp, double Cn, int numThreads ) {
+        this(prob, Cp, Cn, numThreads, new SolverWorkspace());
+    }
+
+    /**
+     * @param workspace holds the vectors of length l and the kernels, so that the next class can reuse them
+     */
+    L2R_L2_SvcFunction( Problem prob, double Cp, double Cn, int numThreads, SolverWorkspace workspace ) {
         int i;
         int l = prob.l;
         int[] y = prob.y;
 
         this.prob = prob;
+        this.kernels = workspace.kernels(prob.rows(), l, prob.n, numThreads);
 
-        z = new double[l];
-        C = new double[l];
-        I = new int[l];
+        z = workspace.doubles(SolverWorkspace.FUN_Z, l);
+        C = workspace.doubles(SolverWorkspace.FUN_C, l);
+        I = workspace.ints(SolverWorkspace.FUN_I, l);
 
         for (i = 0; i < l; i++) {
             if (y[i] == 1)
                 C[i] = Cp;
             else
                 C[i] = Cn;
+            if (prob.W != null) C[i] *= prob.W[i];
         }
     }
 
@@ -78,51 +92,28 @@ class L2R_L2_SvcFunction implements Function {
 
     public void Hv(double[] s, double[] Hs) {
         int i;
-        int l = prob.l;
         int w_size = get_nr_variable();
-        double[] wa = new double[l];
-
-        subXv(s, wa);
-        for (i = 0; i < sizeI; i++)
-            wa[i] = C[I[i]] * wa[i];
 
-        subXTv(wa, Hs);
+        kernels.XTDXv(I, sizeI, C, s, Hs);
         for (i = 0; i < w_size; i++)
             Hs[i] = s[i] + 2 * Hs[i];
     }
 
-    private void subXTv(double[] v, double[] XTv) {
+    public void Hdiag(double[] M) {
         int i;
         int w_size = get_nr_variable();
 
+        kernels.diagXTDX(I, sizeI, C, M);
         for (i = 0; i < w_size; i++)
-            XTv[i] = 0;
-
-        for (i = 0; i < sizeI; i++) {
-            for (Feature s : prob.x[I[i]]) {
-                XTv[s.getIndex() - 1] += v[i] * s.getValue();
-            }
-        }
+            M[i] = 1 + 2 * M[i];
     }
 
-    private void subXv(double[] v, double[] Xv) {
-
-        for (int i = 0; i < sizeI; i++) {
-            Xv[i] = 0;
-            for (Feature s : prob.x[I[i]]) {
-                Xv[i] += v[s.getIndex() - 1] * s.getValue();
-            }
-        }
+    private void subXTv(double[] v, double[] XTv) {
+        kernels.XTv(I, sizeI, v, XTv);
     }
 
     private void Xv(double[] v, double[] Xv) {
-
-        for (int i = 0; i < prob.l; i++) {
-            Xv[i] = 0;
-            for (Feature s : prob.x[i]) {
-                Xv[i] += v[s.getIndex() - 1] * s.getValue();
-            }
-        }
+        kernels.Xv(null, prob.l, v, Xv);
     }
 
 }
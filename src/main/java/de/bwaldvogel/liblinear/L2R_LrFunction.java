@@ -1,58 +1,73 @@
 package de.bwaldvogel.liblinear;
 
-import libsvm.svm.model.Feature;
-import libsvm.svm.model.FeatureNode;
-
 class L2R_LrFunction implements Function {
 
-    private final double[] C;
-    private final double[] z;
-    private final double[] D;
-    private final Problem  prob;
+    private final double[]   C;
+    private final double[]   z;
+    /** <code>C_i * sigma(y_i w^T x_i) * (1 - sigma(y_i w^T x_i))</code>, the factors of the Hessian */
+    private final double[]   D;
+    private final Problem    prob;
+    private final RowKernels kernels;
+    /** false for the loss alone, without <code>w^T w / 2</code> */
+    private final boolean    regularized;
+
+    /** the derivative of the loss, computed by {@link #grad(double[], double[])} while the rows are visited */
+    private final RowKernels.Coefficients lossDerivative = new RowKernels.Coefficients() {
+
+        public double get(int k, int i) {
+            int yi = prob.y[i];
+            double zi = 1 / (1 + Math.exp(-yi * z[i]));
+            D[i] = C[i] * (zi * (1 - zi));
+            return C[i] * (zi - 1) * yi;
+        }
+    };
 
     public L2R_LrFunction( Problem prob, double Cp, double Cn ) {
+        this(prob, Cp, Cn, 1);
+    }
+
+    /**
+     * @param numThreads the number of threads that compute the matrix-vector products
+     */
+    public L2R_LrFunction( Problem prob, double Cp, double Cn, int numThreads ) {
+        this(prob, Cp, Cn, numThreads, new SolverWorkspace());
+    }
+
+    /**
+     * @param workspace holds the vectors of length l and the kernels, so that the next class can reuse them
+     */
+    L2R_LrFunction( Problem prob, double Cp, double Cn, int numThreads, SolverWorkspace workspace ) {
+        this(prob, Cp, Cn, numThreads, workspace, true);
+    }
+
+    /**
+     * @param regularized false for the logistic loss alone, the smooth part of the L1-regularized objective
+     */
+    L2R_LrFunction( Problem prob, double Cp, double Cn, int numThreads, SolverWorkspace workspace, boolean regularized ) {
         int i;
         int l = prob.l;
         int[] y = prob.y;
 
         this.prob = prob;
+        this.regularized = regularized;
+        this.kernels = workspace.kernels(prob.rows(), l, prob.n, numThreads);
 
-        z = new double[l];
-        D = new double[l];
-        C = new double[l];
+        z = workspace.doubles(SolverWorkspace.FUN_Z, l);
+        D = workspace.doubles(SolverWorkspace.FUN_D, l);
+        C = workspace.doubles(SolverWorkspace.FUN_C, l);
 
         for (i = 0; i < l; i++) {
             if (y[i] == 1)
                 C[i] = Cp;
             else
                 C[i] = Cn;
+            if (prob.W != null) C[i] *= prob.W[i];
         }
     }
 
 
     private void Xv(double[] v, double[] Xv) {
-
-        for (int i = 0; i < prob.l; i++) {
-            Xv[i] = 0;
-            for (Feature s : prob.x[i]) {
-                Xv[i] += v[s.getIndex() - 1] * s.getValue();
-            }
-        }
-    }
-
-    private void XTv(double[] v, double[] XTv) {
-        int l = prob.l;
-        int w_size = get_nr_variable();
-        Feature[][] x = prob.x;
-
-        for (int i = 0; i < w_size; i++)
-            XTv[i] = 0;
-
-        for (int i = 0; i < l; i++) {
-            for (Feature s : x[i]) {
-                XTv[s.getIndex() - 1] += v[i] * s.getValue();
-            }
-        }
+        kernels.Xv(null, prob.l, v, Xv);
     }
 
 
@@ -72,8 +87,10 @@ class L2R_LrFunction implements Function {
                 f += C[i] * (-yz + Math.log(1 + Math.exp(yz)));
         }
         f = 2.0 * f;
-        for (i = 0; i < w_size; i++)
-            f += w[i] * w[i];
+        if (regularized) {
+            for (i = 0; i < w_size; i++)
+                f += w[i] * w[i];
+        }
         f /= 2.0;
 
         return (f);
@@ -81,35 +98,36 @@ class L2R_LrFunction implements Function {
 
     public void grad(double[] w, double[] g) {
         int i;
-        int[] y = prob.y;
-        int l = prob.l;
         int w_size = get_nr_variable();
 
-        for (i = 0; i < l; i++) {
-            z[i] = 1 / (1 + Math.exp(-y[i] * z[i]));
-            D[i] = z[i] * (1 - z[i]);
-            z[i] = C[i] * (z[i] - 1) * y[i];
-        }
-        XTv(z, g);
+        kernels.XTv(null, prob.l, lossDerivative, g);
 
-        for (i = 0; i < w_size; i++)
-            g[i] = w[i] + g[i];
+        if (regularized) {
+            for (i = 0; i < w_size; i++)
+                g[i] = w[i] + g[i];
+        }
     }
 
     public void Hv(double[] s, double[] Hs) {
         int i;
-        int l = prob.l;
         int w_size = get_nr_variable();
-        double[] wa = new double[l];
 
-        Xv(s, wa);
-        for (i = 0; i < l; i++)
-            wa[i] = C[i] * D[i] * wa[i];
+        kernels.XTDXv(null, prob.l, D, s, Hs);
+        if (regularized) {
+            for (i = 0; i < w_size; i++)
+                Hs[i] = s[i] + Hs[i];
+        }
+    }
 
-        XTv(wa, Hs);
-        for (i = 0; i < w_size; i++)
-            Hs[i] = s[i] + Hs[i];
-        // delete[] wa;
+    public void Hdiag(double[] M) {
+        int i;
+        int w_size = get_nr_variable();
+
+        kernels.diagXTDX(null, prob.l, D, M);
+        if (regularized) {
+            for (i = 0; i < w_size; i++)
+                M[i] = 1 + M[i];
+        }
     }
 
     public int get_nr_variable() {
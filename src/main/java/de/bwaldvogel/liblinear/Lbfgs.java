@@ -0,0 +1,231 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * <p>Limited-memory quasi-Newton minimization of a {@link Function}: L-BFGS for the L2-regularized losses and
+ * OWL-QN (Andrew and Gao, "Scalable training of L1-regularized log-linear models", ICML 2007) for
+ * <code>||w||_1 + f(w)</code>.</p>
+ *
+ * An iteration needs one gradient and usually one function value, i.e. two passes over the rows, and no
+ * Hessian-vector products. The direction is computed from the last {@link #MEMORY} steps and gradient
+ * differences with the two-loop recursion, the step length by backtracking until the Armijo condition holds.
+ *
+ * OWL-QN replaces the gradient by the pseudo-gradient of the L1 term, keeps the direction in the orthant of the
+ * pseudo-gradient and projects every trial point onto the orthant of the current iterate, so that weights only
+ * become zero or change their sign across one iteration.
+ */
+final class Lbfgs {
+
+    /** the number of stored pairs of steps and gradient differences */
+    static final int              MEMORY         = 10;
+
+    private static final double   ARMIJO         = 1e-4;
+    private static final int      MAX_LINESEARCH = 20;
+
+    private final Function        fun_obj;
+    private final double          eps;
+    private final int             max_iter;
+    private final TrainingBudget  budget;
+    private final boolean         l1;
+    private final SolverWorkspace workspace;
+    private final Utils           utils          = new Utils();
+
+    /**
+     * @param eps the stopping tolerance, relative to the (pseudo-)gradient at w = 0
+     * @param budget stops the iterations at its deadline, null for no limit
+     * @param workspace holds the vectors and the stored pairs, so that another minimization can reuse them
+     * @param l1 minimizes <code>||w||_1 + fun_obj(w)</code> by OWL-QN instead of <code>fun_obj(w)</code>
+     */
+    Lbfgs( Function fun_obj, double eps, int max_iter, TrainingBudget budget, SolverWorkspace workspace, boolean l1 ) {
+        this.fun_obj = fun_obj;
+        this.eps = eps;
+        this.max_iter = max_iter;
+        this.budget = budget;
+        this.workspace = workspace;
+        this.l1 = l1;
+    }
+
+    void minimize(double[] w) {
+        int n = fun_obj.get_nr_variable();
+        int i, iter;
+        double[] g = workspace.doubles(SolverWorkspace.LBFGS_G, n);
+        double[] pg = workspace.doubles(SolverWorkspace.LBFGS_PG, n);
+        double[] d = workspace.doubles(SolverWorkspace.LBFGS_D, n);
+        double[] w_new = workspace.doubles(SolverWorkspace.LBFGS_W_NEW, n);
+        double[] g_new = workspace.doubles(SolverWorkspace.LBFGS_G_NEW, n);
+        // only the stored pairs are read
+        double[][] s = workspace.matrix(SolverWorkspace.LBFGS_S, MEMORY, n);
+        double[][] y = workspace.matrix(SolverWorkspace.LBFGS_Y, MEMORY, n);
+        double[] rho = workspace.doubles(SolverWorkspace.LBFGS_RHO, MEMORY);
+        double[] alpha = workspace.doubles(SolverWorkspace.LBFGS_ALPHA, MEMORY);
+        int stored = 0, newest = -1;
+
+        // w is the starting point. The stopping condition is relative to the
+        // (pseudo-)gradient at w = 0, so that a warm start doesn't make it stricter.
+        double gnorm0;
+        if (!Linear.isZero(w)) {
+            double[] w0 = workspace.zeros(SolverWorkspace.LBFGS_W0, n);
+            fun_obj.fun(w0);
+            fun_obj.grad(w0, g);
+            pseudoGradient(w0, g, pg);
+            gnorm0 = norm(pg);
+        } else {
+            gnorm0 = -1;
+        }
+        double f = objective(w);
+        fun_obj.grad(w, g);
+        pseudoGradient(w, g, pg);
+        double gnorm = norm(pg);
+        if (gnorm0 < 0) gnorm0 = gnorm;
+
+        for (iter = 1; iter <= max_iter; iter++) {
+            // w is only replaced by better iterates, so it can be returned at any time
+            if (budget != null && budget.shouldStop()) break;
+            if (gnorm <= eps * gnorm0) break;
+
+            // two-loop recursion, d = -H * pg
+            for (i = 0; i < n; i++)
+                d[i] = -pg[i];
+            for (int k = 0, m = newest; k < stored; k++, m = (m + MEMORY - 1) % MEMORY) {
+                alpha[m] = rho[m] * dot(s[m], d);
+                daxpy(-alpha[m], y[m], d);
+            }
+            if (stored > 0) scale(1 / (rho[newest] * dot(y[newest], y[newest])), d);
+            for (int k = 0, m = (newest + MEMORY - stored + 1) % MEMORY; k < stored; k++, m = (m + 1) % MEMORY) {
+                double beta = rho[m] * dot(y[m], d);
+                daxpy(alpha[m] - beta, s[m], d);
+            }
+            if (l1) {
+                // the direction must stay in the orthant of -pg
+                for (i = 0; i < n; i++)
+                    if (d[i] * pg[i] >= 0) d[i] = 0;
+            }
+            if (dot(d, pg) >= 0) {
+                // not a descent direction, start over with steepest descent
+                stored = 0;
+                for (i = 0; i < n; i++)
+                    d[i] = -pg[i];
+            }
+
+            // without curvature information the step is bounded by the length of the gradient
+            double step = stored == 0 ? Math.min(1, 1 / norm(d)) : 1;
+            double fnew = f;
+            int search;
+            for (search = 0; search < MAX_LINESEARCH; search++) {
+                for (i = 0; i < n; i++) {
+                    w_new[i] = w[i] + step * d[i];
+                    if (l1) {
+                        // stay in the orthant of w, or of -pg for the weights that are zero
+                        double orthant = w[i] != 0 ? w[i] : -pg[i];
+                        if (w_new[i] * orthant <= 0) w_new[i] = 0;
+                    }
+                }
+                fnew = objective(w_new);
+                double decrease = 0;
+                for (i = 0; i < n; i++)
+                    decrease += pg[i] * (w_new[i] - w[i]);
+                if (fnew <= f + ARMIJO * decrease) break;
+                step *= 0.5;
+            }
+            if (search == MAX_LINESEARCH) {
+                utils.info("warning: line search fails%n");
+                break;
+            }
+
+            fun_obj.grad(w_new, g_new);
+
+            // the pair is only stored if the curvature is positive, which keeps H positive definite
+            double sy = 0, yy = 0;
+            for (i = 0; i < n; i++) {
+                sy += (w_new[i] - w[i]) * (g_new[i] - g[i]);
+                yy += (g_new[i] - g[i]) * (g_new[i] - g[i]);
+            }
+            if (sy > 1e-10 * yy) {
+                newest = (newest + 1) % MEMORY;
+                for (i = 0; i < n; i++) {
+                    s[newest][i] = w_new[i] - w[i];
+                    y[newest][i] = g_new[i] - g[i];
+                }
+                rho[newest] = 1 / sy;
+                stored = Math.min(stored + 1, MEMORY);
+            }
+
+            System.arraycopy(w_new, 0, w, 0, n);
+            System.arraycopy(g_new, 0, g, 0, n);
+            pseudoGradient(w, g, pg);
+            gnorm = norm(pg);
+
+            utils.info("iter %2d f %5.3e |g| %5.3e step %5.3e%n", iter, fnew, gnorm, step);
+
+            if (Math.abs(f - fnew) <= 1.0e-12 * Math.abs(f)) {
+                utils.info("warning: reduction too small%n");
+                f = fnew;
+                break;
+            }
+            f = fnew;
+        }
+    }
+
+    /** the function value plus the L1 term, sets the state of the function object for the gradient at w */
+    private double objective(double[] w) {
+        double f = fun_obj.fun(w);
+        if (l1) {
+            for (double wi : w)
+                f += Math.abs(wi);
+        }
+        return f;
+    }
+
+    /**
+     * the gradient of the L2-regularized objective or the pseudo-gradient of <code>||w||_1 + f(w)</code>, whose
+     * components are the one-sided derivatives towards the steepest descent and 0 where both sides go up
+     */
+    private void pseudoGradient(double[] w, double[] g, double[] pg) {
+        if (!l1) {
+            System.arraycopy(g, 0, pg, 0, g.length);
+            return;
+        }
+        for (int i = 0; i < g.length; i++) {
+            if (w[i] > 0)
+                pg[i] = g[i] + 1;
+            else if (w[i] < 0)
+                pg[i] = g[i] - 1;
+            else if (g[i] < -1)
+                pg[i] = g[i] + 1;
+            else if (g[i] > 1)
+                pg[i] = g[i] - 1;
+            else
+                pg[i] = 0;
+        }
+    }
+
+    /** the Euclidean norm for L-BFGS, the 1-norm for OWL-QN like the other L1-regularized solvers */
+    private double norm(double[] v) {
+        double norm = 0;
+        if (l1) {
+            for (double vi : v)
+                norm += Math.abs(vi);
+            return norm;
+        }
+        for (double vi : v)
+            norm += vi * vi;
+        return Math.sqrt(norm);
+    }
+
+    private static double dot(double[] u, double[] v) {
+        double product = 0;
+        for (int i = 0; i < u.length; i++)
+            product += u[i] * v[i];
+        return product;
+    }
+
+    /** v += a * u */
+    private static void daxpy(double a, double[] u, double[] v) {
+        for (int i = 0; i < u.length; i++)
+            v[i] += a * u[i];
+    }
+
+    private static void scale(double a, double[] v) {
+        for (int i = 0; i < v.length; i++)
+            v[i] *= a;
+    }
+}
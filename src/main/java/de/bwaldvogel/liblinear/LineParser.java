@@ -0,0 +1,137 @@
+package de.bwaldvogel.liblinear;
+
+import java.io.File;
+
+/**
+ * <p>Parses the lines of a file in LibSVM format into reusable buffers.</p>
+ *
+ * The line is split into tokens like <code>new StringTokenizer(line, " \t\n\r\f:")</code> would do,
+ * but only the start and end of each token are remembered and the numbers are parsed with the
+ * {@link NumberScanner}, so no objects are created unless the line is broken.
+ * With a {@link FeatureHasher}, the indices are hashed keys, see {@link #LineParser(FeatureHasher)}.
+ */
+final class LineParser {
+
+    /** maps the keys to the indices, null if the indices are used as they are */
+    private final FeatureHasher hasher;
+
+    int      label;
+    /** the number of features of the last parsed line */
+    int      length;
+    int[]    indices     = new int[16];
+    double[] values      = new double[16];
+
+    /** the tokens of the current line are s[tokenStart[t]] .. s[tokenEnd[t]-1] */
+    private int[]    tokenStart  = new int[33];
+    private int[]    tokenEnd    = new int[33];
+
+    LineParser() {
+        this(null);
+    }
+
+    /**
+     * every token in front of a colon is hashed with the given hasher, see {@link FeatureHasher#hash(char[], int, int)}.
+     * The keys don't have to be sorted, the resulting indices are sorted and colliding keys are added up.
+     */
+    LineParser( FeatureHasher hasher ) {
+        this.hasher = hasher;
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == ':';
+    }
+
+    private int tokenize(char[] s, int begin, int end) {
+        int tokens = 0;
+        int i = begin;
+        while (true) {
+            while (i < end && isDelimiter(s[i]))
+                i++;
+            if (i == end) return tokens;
+            if (tokens == tokenStart.length) {
+                int[] newStart = new int[tokens * 2];
+                int[] newEnd = new int[tokens * 2];
+                System.arraycopy(tokenStart, 0, newStart, 0, tokens);
+                System.arraycopy(tokenEnd, 0, newEnd, 0, tokens);
+                tokenStart = newStart;
+                tokenEnd = newEnd;
+            }
+            tokenStart[tokens] = i;
+            while (i < end && !isDelimiter(s[i]))
+                i++;
+            tokenEnd[tokens] = i;
+            tokens++;
+        }
+    }
+
+    private String token(char[] s, int t) {
+        return new String(s, tokenStart[t], tokenEnd[t] - tokenStart[t]);
+    }
+
+    /**
+     * parses the line <code>s[begin] .. s[end-1]</code>
+     *
+     * @throws InvalidInputDataException if the line is not correctly formatted
+     */
+    void parse(char[] s, int begin, int end, File file, int lineNr) throws InvalidInputDataException {
+        int tokens = tokenize(s, begin, end);
+        if (tokens == 0) throw new InvalidInputDataException("empty line", file, lineNr);
+
+        try {
+            label = NumberScanner.parseInt(s, tokenStart[0], tokenEnd[0]);
+        } catch (NumberFormatException e) {
+            throw new InvalidInputDataException("invalid label: " + token(s, 0), file, lineNr, e);
+        }
+
+        int m = (tokens - 1) / 2;
+        if (m > indices.length) {
+            indices = new int[m];
+            values = new double[m];
+        }
+        if (hasher != null) {
+            parseHashed(s, m, file, lineNr);
+            return;
+        }
+
+        int indexBefore = 0;
+        for (int j = 0; j < m; j++) {
+
+            int t = 2 * j + 1;
+            int index;
+            try {
+                index = NumberScanner.parseInt(s, tokenStart[t], tokenEnd[t]);
+            } catch (NumberFormatException e) {
+                throw new InvalidInputDataException("invalid index: " + token(s, t), file, lineNr, e);
+            }
+
+            // assert that indices are valid and sorted
+            if (index < 0) throw new InvalidInputDataException("invalid index: " + index, file, lineNr);
+            if (index <= indexBefore) throw new InvalidInputDataException("indices must be sorted in ascending order", file, lineNr);
+            indexBefore = index;
+
+            t++;
+            try {
+                indices[j] = index;
+                values[j] = NumberScanner.parseDouble(s, tokenStart[t], tokenEnd[t]);
+            } catch (NumberFormatException e) {
+                throw new InvalidInputDataException("invalid value: " + token(s, t), file, lineNr);
+            }
+        }
+        length = m;
+    }
+
+    private void parseHashed(char[] s, int m, File file, int lineNr) throws InvalidInputDataException {
+        for (int j = 0; j < m; j++) {
+            int t = 2 * j + 1;
+            long hash = FeatureHasher.hash(s, tokenStart[t], tokenEnd[t]);
+            t++;
+            try {
+                indices[j] = hasher.indexOf(hash);
+                values[j] = hasher.signOf(hash) * NumberScanner.parseDouble(s, tokenStart[t], tokenEnd[t]);
+            } catch (NumberFormatException e) {
+                throw new InvalidInputDataException("invalid value: " + token(s, t), file, lineNr);
+            }
+        }
+        length = FeatureHasher.sortAndMerge(indices, values, m);
+    }
+}
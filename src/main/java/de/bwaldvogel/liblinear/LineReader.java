@@ -0,0 +1,95 @@
+package de.bwaldvogel.liblinear;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <p>Reads lines into a reusable character buffer instead of creating a string per line.</p>
+ *
+ * The lines are terminated like in {@link java.io.BufferedReader#readLine()}: by
+ * <code>'\n'</code>, <code>'\r'</code> or <code>"\r\n"</code>.
+ * After {@link #next()} returned true, the current line is <code>buf[start] .. buf[end-1]</code>.
+ */
+final class LineReader {
+
+    private final Reader in;
+
+    char[]               buf;
+    int                  start;
+    int                  end;
+
+    /** the unread characters are buf[pos] .. buf[limit-1] */
+    private int          pos;
+    private int          limit;
+    private boolean      skipLF;
+
+    LineReader( Reader in ) {
+        this(in, 1 << 16);
+    }
+
+    LineReader( Reader in, int bufferSize ) {
+        this.in = in;
+        buf = new char[bufferSize];
+    }
+
+    /**
+     * @return false if the end of the stream has been reached
+     */
+    boolean next() throws IOException {
+        if (skipLF) {
+            if (pos == limit && !fill()) return false;
+            if (buf[pos] == '\n') pos++;
+            skipLF = false;
+        }
+
+        int i = pos;
+        while (true) {
+            for (; i < limit; i++) {
+                char c = buf[i];
+                if (c == '\n' || c == '\r') {
+                    start = pos;
+                    end = i;
+                    pos = i + 1;
+                    skipLF = c == '\r';
+                    return true;
+                }
+            }
+
+            int scanned = i - pos;
+            if (!fill()) {
+                if (pos == limit) return false;
+                // the last line has no line terminator
+                start = pos;
+                end = limit;
+                pos = limit;
+                return true;
+            }
+            i = pos + scanned;
+        }
+    }
+
+    /**
+     * moves the unread characters to the beginning of the buffer (which grows if a line doesn't fit) and reads more
+     *
+     * @return false if the end of the stream has been reached
+     */
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            char[] newBuf = new char[buf.length * 2];
+            System.arraycopy(buf, 0, newBuf, 0, limit);
+            buf = newBuf;
+        }
+        int read;
+        do {
+            read = in.read(buf, limit, buf.length - limit);
+        } while (read == 0);
+        if (read < 0) return false;
+        limit += read;
+        return true;
+    }
+}
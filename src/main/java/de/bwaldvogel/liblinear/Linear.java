@@ -13,8 +13,14 @@ import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Formatter;
+import java.util.List;
 import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 
 import libsvm.svm.model.Feature;
@@ -86,49 +92,215 @@ public class Linear {
 	}
 	
     /**
+     * The folds are trained concurrently on up to {@link Parameter#getNumThreads()} threads. Each fold has its own
+     * random generator, so the result doesn't depend on the number of threads.
+     * With instance weights ({@link Problem#W}), an instance counts as often as its weight when the predictions are
+     * scored, like the copies it stands for, see {@link #accuracy(Problem, int[])}.
+     *
      * @param target predicted classes
      */
-    public  void crossValidation(Problem prob, Parameter param, int nr_fold, int[] target) {
+    public  void crossValidation(final Problem prob, final Parameter param, int nr_fold, final int[] target) {
         int i;
-        int[] fold_start = new int[nr_fold + 1];
-        int l = prob.l;
-        int[] perm = new int[l];
+        final int[] fold_start = new int[nr_fold + 1];
+        final int l = prob.l;
+        final int[] perm = shuffledIndices(l);
+        for (i = 0; i <= nr_fold; i++)
+            fold_start[i] = i * l / nr_fold;
 
-        for (i = 0; i < l; i++)
+        final SparseRows x = prob.rows();
+        final RowStatistics statistics = prob.rowStatistics();
+        final FeatureColumns columns = columns(prob, param);
+
+        // every fold has its own random generator, so the folds can run in any order
+        final long seed = utils.getRandom().nextLong();
+        int foldThreads = Math.min(param.numThreads, nr_fold);
+        final int classThreads = Math.max(1, param.numThreads / foldThreads);
+        final TrainingBudget budget = new TrainingBudget(param);
+        final SolverWorkspace.Pool workspaces = new SolverWorkspace.Pool();
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nr_fold);
+        for (i = 0; i < nr_fold; i++) {
+            final int fold = i;
+            tasks.add(new Callable<Void>() {
+
+                public Void call() {
+                    int[] rows = foldRows(perm, fold_start[fold], fold_start[fold + 1]);
+                    Problem subprob = foldProblem(prob, x, statistics, rows);
+                    Model submodel = train(subprob, param, null, null, columns == null ? null : columns.select(rows),
+                        taskRandom(seed, fold), classThreads, budget, workspaces);
+                    predictFold(submodel, x, perm, fold_start[fold], fold_start[fold + 1], statistics.maxLength, target);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks, foldThreads, "the cross validation");
+    }
+
+    /**
+     * <p>Trains models for an ascending sequence of C values (regularization path) and measures the accuracy of each
+     * C with <code>nr_fold</code>-fold cross validation.</p>
+     *
+     * Every model is trained with a warm start from the model of the previous C (see
+     * {@link #train(Problem, Parameter, Model)}), which usually needs far fewer iterations than a cold start. The folds
+     * are the same for all C values and every fold is warm-started from its own model of the previous C. The folds run
+     * concurrently like in {@link #crossValidation(Problem, Parameter, int, int[])}.
+     *
+     * @param param the solver, eps, class weights and threads, its C is ignored
+     * @param C the C values in ascending order
+     * @throws IllegalArgumentException if the C values are not positive and ascending or <code>nr_fold &lt; 2</code>
+     * @since 1.9
+     */
+    public RegularizationPath trainPath(final Problem prob, Parameter param, double[] C, final int nr_fold) {
+        if (C == null || C.length == 0) throw new IllegalArgumentException("C values must not be empty");
+        for (int k = 0; k < C.length; k++) {
+            if (!(C[k] > 0)) throw new IllegalArgumentException("C must not be <= 0: " + C[k]);
+            if (k > 0 && C[k] <= C[k - 1]) throw new IllegalArgumentException("C values must be ascending: " + C[k - 1] + ", " + C[k]);
+        }
+        if (nr_fold < 2) throw new IllegalArgumentException("nr_fold must be at least 2");
+
+        final int l = prob.l;
+        final int[] perm = shuffledIndices(l);
+        final int[] fold_start = new int[nr_fold + 1];
+        for (int i = 0; i <= nr_fold; i++)
+            fold_start[i] = i * l / nr_fold;
+
+        final SparseRows x = prob.rows();
+        final RowStatistics statistics = prob.rowStatistics();
+        final FeatureColumns columns = columns(prob, param);
+        final Problem[] subprobs = new Problem[nr_fold];
+        final FeatureColumns[] subcolumns = new FeatureColumns[nr_fold];
+        final Model[] submodels = new Model[nr_fold];
+        final Random[] randoms = new Random[nr_fold];
+        long seed = utils.getRandom().nextLong();
+        for (int i = 0; i < nr_fold; i++) {
+            int[] rows = foldRows(perm, fold_start[i], fold_start[i + 1]);
+            subprobs[i] = foldProblem(prob, x, statistics, rows);
+            if (columns != null) subcolumns[i] = columns.select(rows);
+            randoms[i] = taskRandom(seed, i);
+        }
+        int foldThreads = Math.min(param.numThreads, nr_fold);
+        final int classThreads = Math.max(1, param.numThreads / foldThreads);
+        final TrainingBudget budget = new TrainingBudget(param);
+        final SolverWorkspace.Pool workspaces = new SolverWorkspace.Pool();
+
+        Model[] models = new Model[C.length];
+        double[] accuracy = new double[C.length];
+        final int[] target = new int[l];
+        for (int k = 0; k < C.length; k++) {
+            final Parameter param_k = param.withC(C[k]);
+
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nr_fold);
+            for (int i = 0; i < nr_fold; i++) {
+                final int fold = i;
+                tasks.add(new Callable<Void>() {
+
+                    public Void call() {
+                        submodels[fold] = train(subprobs[fold], param_k, submodels[fold], null, subcolumns[fold], randoms[fold], classThreads,
+                            budget, workspaces);
+                        predictFold(submodels[fold], x, perm, fold_start[fold], fold_start[fold + 1], statistics.maxLength, target);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(tasks, foldThreads, "the cross validation");
+
+            accuracy[k] = accuracy(prob, target);
+
+            models[k] = train(prob, param_k, k > 0 ? models[k - 1] : null, null, columns, utils.getRandom(), param.numThreads, budget,
+                workspaces);
+        }
+        return new RegularizationPath(C, models, accuracy);
+    }
+
+    /**
+     * @param target the predicted classes of the instances, e.g. of {@link #crossValidation(Problem, Parameter, int, int[])}
+     * @return the fraction of the instances that were predicted correctly, every instance weighted by {@link Problem#W}
+     * @since 1.9
+     */
+    public static double accuracy(Problem prob, int[] target) {
+        double correct = 0;
+        double total = 0;
+        for (int i = 0; i < prob.l; i++) {
+            double weight = prob.W != null ? prob.W[i] : 1;
+            if (target[i] == prob.y[i]) correct += weight;
+            total += weight;
+        }
+        return total > 0 ? correct / total : 0;
+    }
+
+    /**
+     * @return the random generator of the i-th of several tasks that share one seed. The seeds are spread by the
+     *         SplitMix64 step, so the generators of neighbouring tasks are not correlated.
+     */
+    private static Random taskRandom(long seed, int i) {
+        long z = seed + (i + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
+    }
+
+    /** @return a random permutation of <code>0 .. l-1</code> */
+    private int[] shuffledIndices(int l) {
+        int[] perm = new int[l];
+        for (int i = 0; i < l; i++)
             perm[i] = i;
-        for (i = 0; i < l; i++) {
+        for (int i = 0; i < l; i++) {
             int j = i + utils.getRandom().nextInt(l - i);
             utils.swap(perm, i, j);
         }
-        for (i = 0; i <= nr_fold; i++)
-            fold_start[i] = i * l / nr_fold;
+        return perm;
+    }
 
-        for (i = 0; i < nr_fold; i++) {
-            int begin = fold_start[i];
-            int end = fold_start[i + 1];
-            int j, k;
-            Problem subprob = new Problem();
-
-            subprob.bias = prob.bias;
-            subprob.n = prob.n;
-            subprob.l = l - (end - begin);
-            subprob.x = new Feature[subprob.l][];
-            subprob.y = new int[subprob.l];
-
-            k = 0;
-            for (j = 0; j < begin; j++) {
-                subprob.x[k] = prob.x[perm[j]];
-                subprob.y[k] = prob.y[perm[j]];
-                ++k;
-            }
-            for (j = end; j < l; j++) {
-                subprob.x[k] = prob.x[perm[j]];
-                subprob.y[k] = prob.y[perm[j]];
-                ++k;
-            }
-            Model submodel = train(subprob, param);
-            for (j = begin; j < end; j++)
-                target[perm[j]] = predict(submodel, prob.x[perm[j]]);
+    /** @return the instances <code>perm[j]</code> except <code>begin &lt;= j &lt; end</code> */
+    private static int[] foldRows(int[] perm, int begin, int end) {
+        int[] rows = new int[perm.length - (end - begin)];
+        System.arraycopy(perm, 0, rows, 0, begin);
+        System.arraycopy(perm, end, rows, begin, perm.length - end);
+        return rows;
+    }
+
+    /** @return the problem of the instances <code>rows</code> */
+    private static Problem foldProblem(Problem prob, SparseRows x, RowStatistics statistics, int[] rows) {
+        Problem subprob = new Problem();
+
+        subprob.bias = prob.bias;
+        subprob.n = prob.n;
+        subprob.l = rows.length;
+        subprob.y = new int[subprob.l];
+        if (prob.W != null) subprob.W = new double[subprob.l];
+
+        for (int k = 0; k < subprob.l; k++) {
+            subprob.y[k] = prob.y[rows[k]];
+            if (prob.W != null) subprob.W[k] = prob.W[rows[k]];
+        }
+        subprob.rows = new RowSubset(x, rows);
+        subprob.setRowStatistics(statistics.select(rows));
+        return subprob;
+    }
+
+    /** predicts the instances <code>perm[j]</code> with <code>begin &lt;= j &lt; end</code> into target */
+    private void predictFold(Model submodel, SparseRows x, int[] perm, int begin, int end, int xi_length, int[] target) {
+        double[] dec_values = new double[submodel.nr_class];
+        int[] xi_index = new int[xi_length];
+        double[] xi_value = new double[xi_length];
+        for (int j = begin; j < end; j++) {
+            int length = x.copy(perm[j], xi_index, xi_value);
+            target[perm[j]] = predictValues(submodel, xi_index, xi_value, length, dec_values);
+        }
+    }
+
+    /**
+     * runs the tasks on a pool of <code>numThreads</code> threads
+     *
+     * @param what the description of the tasks for the error message
+     */
+    private static void invokeAll(List<Callable<Void>> tasks, int numThreads, String what) {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            Utils.invokeAll(executor, tasks, what);
+        }
+        finally {
+            executor.shutdownNow();
         }
     }
 
@@ -200,6 +372,8 @@ public class Linear {
      * It uses {@link java.util.Locale#ENGLISH} for number formatting.
      *
      * <p><b>Note: The inputReader is closed after reading or in case of an exception.</b></p>
+     *
+     * @throws IllegalArgumentException if the feature hashing of the model is malformed
      */
     public static Model loadModel(Reader inputReader) throws IOException {
         Model model = new Model();
@@ -236,6 +410,12 @@ public class Linear {
                     model.nr_feature = atoi(split[1]);
                 } else if (split[0].equals("bias")) {
                     model.bias = atof(split[1]);
+                } else if (split[0].equals("feature_hashing")) {
+                    if (split.length != 3 || !split[2].equals("signed") && !split[2].equals("unsigned")) {
+                        throw new IllegalArgumentException("invalid feature hashing in model file, expected 'feature_hashing <bits> signed|unsigned': ["
+                            + line + "]");
+                    }
+                    model.featureHasher = new FeatureHasher(atoi(split[1]), split[2].equals("signed"));
                 } else if (split[0].equals("w")) {
                     break;
                 } else if (split[0].equals("label")) {
@@ -310,6 +490,28 @@ public class Linear {
         if (!model.isProbabilityModel()) {
             throw new IllegalArgumentException("probability output is only supported for logistic regression");
         }
+        int label = predictValues(model, x, prob_estimates);
+        toProbabilities(model, prob_estimates);
+        return label;
+    }
+
+    /**
+     * same as {@link #predictProbability(Model, Feature[], double[])} for an instance given as
+     * the first <code>length</code> entries of <code>index</code> and <code>value</code>
+     */
+    int predictProbability(Model model, int[] index, double[] value, int length, double[] prob_estimates) {
+        if (!model.isProbabilityModel()) {
+            throw new IllegalArgumentException("probability output is only supported for logistic regression");
+        }
+        int label = predictValues(model, index, value, length, prob_estimates);
+        toProbabilities(model, prob_estimates);
+        return label;
+    }
+
+    /**
+     * turns the decision values of a logistic regression model into probability estimates
+     */
+    private void toProbabilities(Model model, double[] prob_estimates) {
         int nr_class = model.nr_class;
         int nr_w;
         if (nr_class == 2)
@@ -317,7 +519,6 @@ public class Linear {
         else
             nr_w = nr_class;
 
-        int label = predictValues(model, x, prob_estimates);
         for (int i = 0; i < nr_w; i++)
             prob_estimates[i] = 1 / (1 + Math.exp(-prob_estimates[i]));
 
@@ -331,8 +532,6 @@ public class Linear {
             for (int i = 0; i < nr_class; i++)
                 prob_estimates[i] = prob_estimates[i] / sum;
         }
-
-        return label;
     }
 
     public  int predictValues(Model model, Feature[] x, double[] dec_values) {
@@ -363,6 +562,98 @@ public class Linear {
             }
         }
 
+        return decisionLabel(model, dec_values);
+    }
+
+
+    /**
+     * predicts the class of a binary instance, see {@link #predictValues(Model, int[], double[])}
+     *
+     * @since 1.9
+     */
+    public int predict(Model model, int[] x) {
+        double[] dec_values = new double[model.nr_class];
+        return predictValues(model, x, dec_values);
+    }
+
+    /**
+     * Same as {@link #predictValues(Model, Feature[], double[])} for a binary instance:
+     * <code>x</code> holds the (ascending) indices of the features with value 1.
+     * The bias feature must not be part of <code>x</code>, it is added automatically if the model has one.
+     *
+     * @since 1.9
+     */
+    public int predictValues(Model model, int[] x, double[] dec_values) {
+        int n;
+        if (model.bias >= 0)
+            n = model.nr_feature + 1;
+        else
+            n = model.nr_feature;
+
+        double[] w = model.w;
+
+        int nr_w;
+        if (model.nr_class == 2 && model.solverType != SolverType.MCSVM_CS)
+            nr_w = 1;
+        else
+            nr_w = model.nr_class;
+
+        for (int i = 0; i < nr_w; i++)
+            dec_values[i] = 0;
+
+        for (int idx : x) {
+            // the dimension of testing data may exceed that of training
+            if (idx <= model.nr_feature) {
+                for (int i = 0; i < nr_w; i++) {
+                    dec_values[i] += w[(idx - 1) * nr_w + i];
+                }
+            }
+        }
+        if (model.bias >= 0) {
+            for (int i = 0; i < nr_w; i++) {
+                dec_values[i] += w[(n - 1) * nr_w + i] * model.bias;
+            }
+        }
+
+        return decisionLabel(model, dec_values);
+    }
+
+    /**
+     * same as {@link #predictValues(Model, Feature[], double[])} for an instance given as
+     * the first <code>length</code> entries of <code>index</code> and <code>value</code>
+     */
+    int predictValues(Model model, int[] index, double[] value, int length, double[] dec_values) {
+        int n;
+        if (model.bias >= 0)
+            n = model.nr_feature + 1;
+        else
+            n = model.nr_feature;
+
+        double[] w = model.w;
+
+        int nr_w;
+        if (model.nr_class == 2 && model.solverType != SolverType.MCSVM_CS)
+            nr_w = 1;
+        else
+            nr_w = model.nr_class;
+
+        for (int i = 0; i < nr_w; i++)
+            dec_values[i] = 0;
+
+        for (int k = 0; k < length; k++) {
+            int idx = index[k];
+            // the dimension of testing data may exceed that of training
+            if (idx <= n) {
+                for (int i = 0; i < nr_w; i++) {
+                    dec_values[i] += w[(idx - 1) * nr_w + i] * value[k];
+                }
+            }
+        }
+
+        return decisionLabel(model, dec_values);
+    }
+
+    private int decisionLabel(Model model, double[] dec_values) {
         if (model.nr_class == 2)
             return (dec_values[0] > 0) ? model.label[0] : model.label[1];
         else {
@@ -408,6 +699,10 @@ public class Linear {
 
             printf(formatter, "nr_feature %d\n", nr_feature);
             printf(formatter, "bias %.16g\n", model.bias);
+            if (model.featureHasher != null) {
+                FeatureHasher hasher = model.featureHasher;
+                printf(formatter, "feature_hashing %d %s\n", hasher.getBits(), hasher.isSigned() ? "signed" : "unsigned");
+            }
 
             printf(formatter, "w\n");
             for (int i = 0; i < w_size; i++) {
@@ -442,12 +737,19 @@ public class Linear {
         saveModel(modelOutput, model);
     }
 
-    /*
-     * this method corresponds to the following define in the C version:
-     * #define GETI(i) (y[i]+1)
+    /**
+     * replaces the <code>C[GETI(i)]</code> of the C version: the cost of every instance is
+     * Cp or Cn depending on its label, multiplied by its weight (see {@link Problem#W})
+     *
+     * @return the {@link SolverWorkspace#COSTS} array of the workspace
      */
-    private  int GETI(byte[] y, int i) {
-        return y[i] + 1;
+    static double[] instanceCosts(Problem prob, double Cp, double Cn, SolverWorkspace workspace) {
+        double[] C = workspace.doubles(SolverWorkspace.COSTS, prob.l);
+        for (int i = 0; i < prob.l; i++) {
+            C[i] = prob.y[i] > 0 ? Cp : Cn;
+            if (prob.W != null) C[i] *= prob.W[i];
+        }
+        return C;
     }
 
     /**
@@ -468,6 +770,7 @@ public class Linear {
      *      upper_bound_i = INF
      *      D_ii = 1/(2*Cp) if y_i = 1
      *      D_ii = 1/(2*Cn) if y_i = -1
+     * Cp and Cn are multiplied by the instance weights W_i
      *
      * Given:
      * x, y, Cp, Cn
@@ -476,18 +779,26 @@ public class Linear {
      * solution will be put in w
      *
      * See Algorithm 3 of Hsieh et al., ICML 2008
+     *
+     * A non-zero w on entry is a warm start: alpha_i = 2 C_i max(0, 1 - y_i w^T x_i),
+     * which is the optimal alpha of w in the L2-loss case, clipped to upper_bound_i.
+     * In the L1-loss case this is only a guess for the instances on the margin.
+     *
+     * If the parameter asks for it, large problems are solved by {@link ParallelDualCoordinateDescent}
+     * with several threads, otherwise the solver is sequential and deterministic
      *</pre>
      */
-    private  void solve_l2r_l1l2_svc(Problem prob, double[] w, double eps, double Cp, double Cn, SolverType solver_type) {
+    private  void solve_l2r_l1l2_svc(Problem prob, double[] w, double eps, double Cp, double Cn, SolverType solver_type, Random random,
+        TrainingBudget budget, int numThreads, boolean asynchronous, SolverWorkspace workspace) {
         int l = prob.l;
         int w_size = prob.n;
         int i, s, iter = 0;
         double C, d, G;
-        double[] QD = new double[l];
-        int max_iter = 1000;
-        int[] index = new int[l];
-        double[] alpha = new double[l];
-        byte[] y = new byte[l];
+        double[] QD = workspace.doubles(SolverWorkspace.DUAL_QD, l);
+        int max_iter = budget.maxIterations(1000);
+        int[] index = workspace.ints(SolverWorkspace.DUAL_INDEX, l);
+        double[] alpha = workspace.doubles(SolverWorkspace.DUAL_ALPHA, l);
+        byte[] y = workspace.bytes(SolverWorkspace.DUAL_Y, l);
         int active_size = l;
 
         // PG: projected gradient, for shrinking and stopping
@@ -497,109 +808,127 @@ public class Linear {
         double PGmax_new, PGmin_new;
 
         // default solver_type: L2R_L2LOSS_SVC_DUAL
-        double diag[] = new double[] {0.5 / Cn, 0, 0.5 / Cp};
-        double upper_bound[] = new double[] {Double.POSITIVE_INFINITY, 0, Double.POSITIVE_INFINITY};
-        if (solver_type == SolverType.L2R_L1LOSS_SVC_DUAL) {
-            diag[0] = 0;
-            diag[2] = 0;
-            upper_bound[0] = Cn;
-            upper_bound[2] = Cp;
+        double[] costs = instanceCosts(prob, Cp, Cn, workspace);
+        double diag[] = workspace.doubles(SolverWorkspace.DUAL_DIAG, l);
+        double upper_bound[] = workspace.doubles(SolverWorkspace.DUAL_UPPER, l);
+        for (i = 0; i < l; i++) {
+            if (solver_type == SolverType.L2R_L1LOSS_SVC_DUAL) {
+                diag[i] = 0;
+                upper_bound[i] = costs[i];
+            } else {
+                diag[i] = 0.5 / costs[i];
+                upper_bound[i] = Double.POSITIVE_INFINITY;
+            }
         }
 
-        for (i = 0; i < w_size; i++)
-            w[i] = 0;
+        SparseRows x = prob.rows();
+        double[] xTx = prob.rowStatistics().squaredNorm;
+
+        // a warm start recovers alpha from the initial w, w is then made consistent with alpha
+        boolean warm_start = !isZero(w);
         for (i = 0; i < l; i++) {
-            alpha[i] = 0;
             if (prob.y[i] > 0) {
                 y[i] = +1;
             } else {
                 y[i] = -1;
             }
-            QD[i] = diag[GETI(y, i)];
-
-            for (Feature xi : prob.x[i]) {
-                QD[i] += xi.getValue() * xi.getValue();
+            if (warm_start) {
+                double loss = Math.max(0, 1 - y[i] * x.dot(i, w));
+                alpha[i] = Math.min(2 * costs[i] * loss, upper_bound[i]);
+            } else {
+                alpha[i] = 0;
             }
+            QD[i] = diag[i] + xTx[i];
             index[i] = i;
         }
+        for (i = 0; i < w_size; i++)
+            w[i] = 0;
+        if (warm_start) {
+            for (i = 0; i < l; i++)
+                if (alpha[i] != 0) x.axpy(i, y[i] * alpha[i], w);
+        }
 
-        while (iter < max_iter) {
-            PGmax_new = Double.NEGATIVE_INFINITY;
-            PGmin_new = Double.POSITIVE_INFINITY;
+        long nnz = 0;
+        if (asynchronous && numThreads > 1) {
+            for (i = 0; i < l; i++)
+                nnz += x.length(i);
+        }
+        if (nnz >= RowKernels.MIN_PARALLEL_NNZ) {
+            iter = new ParallelDualCoordinateDescent(x, y, alpha, QD, diag, upper_bound, numThreads).solve(w, eps, max_iter, random, budget);
+        } else {
+            while (iter < max_iter && !budget.shouldStop()) {
+                PGmax_new = Double.NEGATIVE_INFINITY;
+                PGmin_new = Double.POSITIVE_INFINITY;
 
-            for (i = 0; i < active_size; i++) {
-                int j = i + utils.getRandom().nextInt(active_size - i);
-                utils.swap(index, i, j);
-            }
+                for (i = 0; i < active_size; i++) {
+                    int j = i + random.nextInt(active_size - i);
+                    utils.swap(index, i, j);
+                }
 
-            for (s = 0; s < active_size; s++) {
-                i = index[s];
-                G = 0;
-                byte yi = y[i];
+                for (s = 0; s < active_size; s++) {
+                    i = index[s];
+                    byte yi = y[i];
 
-                for (Feature xi : prob.x[i]) {
-                    G += w[xi.getIndex() - 1] * xi.getValue();
-                }
-                G = G * yi - 1;
+                    G = x.dot(i, w);
+                    G = G * yi - 1;
 
-                C = upper_bound[GETI(y, i)];
-                G += alpha[i] * diag[GETI(y, i)];
+                    C = upper_bound[i];
+                    G += alpha[i] * diag[i];
 
-                PG = 0;
-                if (alpha[i] == 0) {
-                    if (G > PGmax_old) {
-                        active_size--;
-                        utils.swap(index, s, active_size);
-                        s--;
-                        continue;
-                    } else if (G < 0) {
-                        PG = G;
-                    }
-                } else if (alpha[i] == C) {
-                    if (G < PGmin_old) {
-                        active_size--;
-                        utils.swap(index, s, active_size);
-                        s--;
-                        continue;
-                    } else if (G > 0) {
+                    PG = 0;
+                    if (alpha[i] == 0) {
+                        if (G > PGmax_old) {
+                            active_size--;
+                            utils.swap(index, s, active_size);
+                            s--;
+                            continue;
+                        } else if (G < 0) {
+                            PG = G;
+                        }
+                    } else if (alpha[i] == C) {
+                        if (G < PGmin_old) {
+                            active_size--;
+                            utils.swap(index, s, active_size);
+                            s--;
+                            continue;
+                        } else if (G > 0) {
+                            PG = G;
+                        }
+                    } else {
                         PG = G;
                     }
-                } else {
-                    PG = G;
-                }
 
-                PGmax_new = Math.max(PGmax_new, PG);
-                PGmin_new = Math.min(PGmin_new, PG);
+                    PGmax_new = Math.max(PGmax_new, PG);
+                    PGmin_new = Math.min(PGmin_new, PG);
 
-                if (Math.abs(PG) > 1.0e-12) {
-                    double alpha_old = alpha[i];
-                    alpha[i] = Math.min(Math.max(alpha[i] - G / QD[i], 0.0), C);
-                    d = (alpha[i] - alpha_old) * yi;
+                    if (Math.abs(PG) > 1.0e-12) {
+                        double alpha_old = alpha[i];
+                        alpha[i] = Math.min(Math.max(alpha[i] - G / QD[i], 0.0), C);
+                        d = (alpha[i] - alpha_old) * yi;
 
-                    for (Feature xi : prob.x[i]) {
-                        w[xi.getIndex() - 1] += d * xi.getValue();
+                        x.axpy(i, d, w);
                     }
                 }
-            }
 
-            iter++;
-            if (iter % 10 == 0) utils.info(".");
+                iter++;
+                if (iter % 10 == 0) utils.info(".");
 
-            if (PGmax_new - PGmin_new <= eps) {
-                if (active_size == l)
-                    break;
-                else {
-                    active_size = l;
-                    utils.info("*");
-                    PGmax_old = Double.POSITIVE_INFINITY;
-                    PGmin_old = Double.NEGATIVE_INFINITY;
-                    continue;
+                if (PGmax_new - PGmin_new <= eps) {
+                    if (active_size == l)
+                        break;
+                    else {
+                        active_size = l;
+                        utils.info("*");
+                        PGmax_old = Double.POSITIVE_INFINITY;
+                        PGmin_old = Double.NEGATIVE_INFINITY;
+                        continue;
+                    }
                 }
+                PGmax_old = PGmax_new;
+                PGmin_old = PGmin_new;
+                if (PGmax_old <= 0) PGmax_old = Double.POSITIVE_INFINITY;
+                if (PGmin_old >= 0) PGmin_old = Double.NEGATIVE_INFINITY;
             }
-            PGmax_old = PGmax_new;
-            PGmin_old = PGmin_new;
-            if (PGmax_old <= 0) PGmax_old = Double.POSITIVE_INFINITY;
-            if (PGmin_old >= 0) PGmin_old = Double.NEGATIVE_INFINITY;
         }
 
         utils.info(NL + "optimization finished, #iter = %d" + NL, iter);
@@ -612,7 +941,7 @@ public class Linear {
         for (i = 0; i < w_size; i++)
             v += w[i] * w[i];
         for (i = 0; i < l; i++) {
-            v += alpha[i] * (alpha[i] * diag[GETI(y, i)] - 2);
+            v += alpha[i] * (alpha[i] * diag[i] - 2);
             if (alpha[i] > 0) ++nSV;
         }
         utils.info("Objective value = %f" + NL, v / 2);
@@ -629,6 +958,7 @@ public class Linear {
      *  where Qij = yi yj xi^T xj and
      *  upper_bound_i = Cp if y_i = 1
      *  upper_bound_i = Cn if y_i = -1
+     *  (multiplied by the instance weight W_i)
      *
      * Given:
      * x, y, Cp, Cn
@@ -637,46 +967,56 @@ public class Linear {
      * solution will be put in w
      *
      * See Algorithm 5 of Yu et al., MLJ 2010
+     *
+     * A non-zero w on entry is a warm start: alpha_i = upper_bound_i / (1 + exp(y_i w^T x_i)),
+     * which is the optimal alpha of w
      *</pre>
      *
      * @since 1.7
      */
-    private  void solve_l2r_lr_dual(Problem prob, double w[], double eps, double Cp, double Cn) {
+    private  void solve_l2r_lr_dual(Problem prob, double w[], double eps, double Cp, double Cn, Random random,
+        TrainingBudget budget, SolverWorkspace workspace) {
         int l = prob.l;
         int w_size = prob.n;
         int i, s, iter = 0;
-        double xTx[] = new double[l];
-        int max_iter = 1000;
-        int index[] = new int[l];
-        double alpha[] = new double[2 * l]; // store alpha and C - alpha
-        byte y[] = new byte[l];
+        double xTx[] = prob.rowStatistics().squaredNorm;
+        int max_iter = budget.maxIterations(1000);
+        int index[] = workspace.ints(SolverWorkspace.DUAL_INDEX, l);
+        double alpha[] = workspace.doubles(SolverWorkspace.DUAL_ALPHA, 2 * l); // store alpha and C - alpha
+        byte y[] = workspace.bytes(SolverWorkspace.DUAL_Y, l);
         int max_inner_iter = 100; // for inner Newton
         double innereps = 1e-2;
         double innereps_min = Math.min(1e-8, eps);
-        double upper_bound[] = new double[] {Cn, 0, Cp};
+        double upper_bound[] = instanceCosts(prob, Cp, Cn, workspace);
+        SparseRows x = prob.rows();
 
-        for (i = 0; i < w_size; i++)
-            w[i] = 0;
+        boolean warm_start = !isZero(w);
         for (i = 0; i < l; i++) {
             if (prob.y[i] > 0) {
                 y[i] = +1;
             } else {
                 y[i] = -1;
             }
-            alpha[2 * i] = Math.min(0.001 * upper_bound[GETI(y, i)], 1e-8);
-            alpha[2 * i + 1] = upper_bound[GETI(y, i)] - alpha[2 * i];
-
-            xTx[i] = 0;
-            for (Feature xi : prob.x[i]) {
-                xTx[i] += (xi.getValue()) * (xi.getValue());
-                w[xi.getIndex() - 1] += y[i] * alpha[2 * i] * xi.getValue();
+            // alpha must stay strictly between 0 and upper_bound
+            double min_alpha = Math.min(0.001 * upper_bound[i], 1e-8);
+            if (warm_start) {
+                double a = upper_bound[i] / (1 + Math.exp(y[i] * x.dot(i, w)));
+                alpha[2 * i] = Math.min(Math.max(a, min_alpha), upper_bound[i] - min_alpha);
+            } else {
+                alpha[2 * i] = min_alpha;
             }
+            alpha[2 * i + 1] = upper_bound[i] - alpha[2 * i];
+
             index[i] = i;
         }
+        for (i = 0; i < w_size; i++)
+            w[i] = 0;
+        for (i = 0; i < l; i++)
+            x.axpy(i, y[i] * alpha[2 * i], w);
 
-        while (iter < max_iter) {
+        while (iter < max_iter && !budget.shouldStop()) {
             for (i = 0; i < l; i++) {
-                int j = i + utils.getRandom().nextInt(l - i);
+                int j = i + random.nextInt(l - i);
                 utils.swap(index, i, j);
             }
             int newton_iter = 0;
@@ -684,11 +1024,8 @@ public class Linear {
             for (s = 0; s < l; s++) {
                 i = index[s];
                 byte yi = y[i];
-                double C = upper_bound[GETI(y, i)];
-                double ywTx = 0, xisq = xTx[i];
-                for (Feature xi : prob.x[i]) {
-                    ywTx += w[xi.getIndex() - 1] * xi.getValue();
-                }
+                double C = upper_bound[i];
+                double ywTx = x.dot(i, w), xisq = xTx[i];
                 ywTx *= y[i];
                 double a = xisq, b = ywTx;
 
@@ -728,9 +1065,7 @@ public class Linear {
                 {
                     alpha[ind1] = z;
                     alpha[ind2] = C - z;
-                    for (Feature xi : prob.x[i]) {
-                        w[xi.getIndex() - 1] += sign * (z - alpha_old) * yi * xi.getValue();
-                    }
+                    x.axpy(i, sign * (z - alpha_old) * yi, w);
                 }
             }
 
@@ -755,8 +1090,8 @@ public class Linear {
             v += w[i] * w[i];
         v *= 0.5;
         for (i = 0; i < l; i++)
-            v += alpha[2 * i] * Math.log(alpha[2 * i]) + alpha[2 * i + 1] * Math.log(alpha[2 * i + 1]) - upper_bound[GETI(y, i)]
-                * Math.log(upper_bound[GETI(y, i)]);
+            v += alpha[2 * i] * Math.log(alpha[2 * i]) + alpha[2 * i + 1] * Math.log(alpha[2 * i + 1]) - upper_bound[i]
+                * Math.log(upper_bound[i]);
         utils.info("Objective value = %f%n", v);
     }
 
@@ -774,15 +1109,19 @@ public class Linear {
      * solution will be put in w
      *
      * See Yuan et al. (2010) and appendix of LIBLINEAR paper, Fan et al. (2008)
+     *
+     * If the parameter asks for it, large problems are solved by {@link ShotgunCoordinateDescent}
+     * with several threads, otherwise the solver is sequential and deterministic
      *</pre>
      *
      * @since 1.5
      */
-    private  void solve_l1r_l2_svc(Problem prob_col, double[] w, double eps, double Cp, double Cn) {
-        int l = prob_col.l;
-        int w_size = prob_col.n;
+    private  void solve_l1r_l2_svc(Problem prob, FeatureColumns prob_col, double[] w, double eps, double Cp, double Cn, Random random,
+        TrainingBudget budget, int numThreads, boolean asynchronous, SolverWorkspace workspace) {
+        int l = prob.l;
+        int w_size = prob.n;
         int j, s, iter = 0;
-        int max_iter = 1000;
+        int max_iter = budget.maxIterations(1000);
         int active_size = w_size;
         int max_num_linesearch = 20;
 
@@ -796,179 +1135,197 @@ public class Linear {
         double loss_new;
         double appxcond, cond;
 
-        int[] index = new int[w_size];
-        byte[] y = new byte[l];
-        double[] b = new double[l]; // b = 1-ywTx
-        double[] xj_sq = new double[w_size];
+        int[] index = workspace.ints(SolverWorkspace.L1_INDEX, w_size);
+        byte[] y = workspace.bytes(SolverWorkspace.L1_Y, l);
+        double[] b = workspace.doubles(SolverWorkspace.L1_B, l); // b = 1-ywTx
+        double[] xj_sq = workspace.doubles(SolverWorkspace.L1_XJ_SQ, w_size);
 
-        double[] C = new double[] {Cn, 0, Cp};
+        double[] C = instanceCosts(prob, Cp, Cn, workspace);
+
+        int[] col_ptr = prob_col.col_ptr;
+        int[] row_index = prob_col.row_index;
+        double[] x_value = prob_col.x_value;
+        int[] rowOf = prob_col.rowOf;
 
         for (j = 0; j < l; j++) {
             b[j] = 1;
-            if (prob_col.y[j] > 0)
+            if (prob.y[j] > 0)
                 y[j] = 1;
             else
                 y[j] = -1;
         }
+        // w on entry is the starting point
         for (j = 0; j < w_size; j++) {
-            w[j] = 0;
             index[j] = j;
             xj_sq[j] = 0;
-            for (Feature xi : prob_col.x[j]) {
-                int ind = xi.getIndex() - 1;
-                double val = xi.getValue();
-                xi.setValue(xi.getValue() * y[ind]); // x->value stores yi*xij
-                xj_sq[j] += C[GETI(y, ind)] * val * val;
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                int ind = rowOf[row_index[k] - 1];
+                if (ind < 0) continue;
+                double val = x_value[k];
+                b[ind] -= w[j] * y[ind] * val;
+                xj_sq[j] += C[ind] * val * val;
             }
         }
 
-        while (iter < max_iter) {
-            Gmax_new = 0;
-            Gnorm1_new = 0;
-
-            for (j = 0; j < active_size; j++) {
-                int i = j + utils.getRandom().nextInt(active_size - j);
-                utils.swap(index, i, j);
-            }
+        ShotgunCoordinateDescent shotgun = null;
+        if (asynchronous && numThreads > 1 && prob_col.nnz() >= RowKernels.MIN_PARALLEL_NNZ) {
+            shotgun = new ShotgunCoordinateDescent(prob_col, l, w_size, numThreads);
+        }
+        if (shotgun != null && shotgun.getNumThreads() > 1) {
+            iter = shotgun.solveL2Svc(y, w, b, C, xj_sq, eps, max_iter, random, budget);
+        } else {
+            while (iter < max_iter && !budget.shouldStop()) {
+                Gmax_new = 0;
+                Gnorm1_new = 0;
 
-            for (s = 0; s < active_size; s++) {
-                j = index[s];
-                G_loss = 0;
-                H = 0;
-
-                for (Feature xi : prob_col.x[j]) {
-                    int ind = xi.getIndex() - 1;
-                    if (b[ind] > 0) {
-                        double val = xi.getValue();
-                        double tmp = C[GETI(y, ind)] * val;
-                        G_loss -= tmp * b[ind];
-                        H += tmp * val;
-                    }
+                for (j = 0; j < active_size; j++) {
+                    int i = j + random.nextInt(active_size - j);
+                    utils.swap(index, i, j);
                 }
-                G_loss *= 2;
-
-                G = G_loss;
-                H *= 2;
-                H = Math.max(H, 1e-12);
 
-                double Gp = G + 1;
-                double Gn = G - 1;
-                double violation = 0;
-                if (w[j] == 0) {
-                    if (Gp < 0)
-                        violation = -Gp;
-                    else if (Gn > 0)
-                        violation = Gn;
-                    else if (Gp > Gmax_old / l && Gn < -Gmax_old / l) {
-                        active_size--;
-                        utils.swap(index, s, active_size);
-                        s--;
-                        continue;
+                for (s = 0; s < active_size; s++) {
+                    j = index[s];
+                    G_loss = 0;
+                    H = 0;
+
+                    for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                        int ind = rowOf[row_index[k] - 1];
+                        if (ind >= 0 && b[ind] > 0) {
+                            double val = y[ind] * x_value[k];
+                            double tmp = C[ind] * val;
+                            G_loss -= tmp * b[ind];
+                            H += tmp * val;
+                        }
                     }
-                } else if (w[j] > 0)
-                    violation = Math.abs(Gp);
-                else
-                    violation = Math.abs(Gn);
+                    G_loss *= 2;
 
-                Gmax_new = Math.max(Gmax_new, violation);
-                Gnorm1_new += violation;
-
-                // obtain Newton direction d
-                if (Gp <= H * w[j])
-                    d = -Gp / H;
-                else if (Gn >= H * w[j])
-                    d = -Gn / H;
-                else
-                    d = -w[j];
+                    G = G_loss;
+                    H *= 2;
+                    H = Math.max(H, 1e-12);
 
-                if (Math.abs(d) < 1.0e-12) continue;
+                    double Gp = G + 1;
+                    double Gn = G - 1;
+                    double violation = 0;
+                    if (w[j] == 0) {
+                        if (Gp < 0)
+                            violation = -Gp;
+                        else if (Gn > 0)
+                            violation = Gn;
+                        else if (Gp > Gmax_old / l && Gn < -Gmax_old / l) {
+                            active_size--;
+                            utils.swap(index, s, active_size);
+                            s--;
+                            continue;
+                        }
+                    } else if (w[j] > 0)
+                        violation = Math.abs(Gp);
+                    else
+                        violation = Math.abs(Gn);
 
-                double delta = Math.abs(w[j] + d) - Math.abs(w[j]) + G * d;
-                d_old = 0;
-                int num_linesearch;
-                for (num_linesearch = 0; num_linesearch < max_num_linesearch; num_linesearch++) {
-                    d_diff = d_old - d;
-                    cond = Math.abs(w[j] + d) - Math.abs(w[j]) - sigma * delta;
+                    Gmax_new = Math.max(Gmax_new, violation);
+                    Gnorm1_new += violation;
 
-                    appxcond = xj_sq[j] * d * d + G_loss * d + cond;
-                    if (appxcond <= 0) {
-                        for (Feature x : prob_col.x[j]) {
-                            b[x.getIndex() - 1] += d_diff * x.getValue();
+                    // obtain Newton direction d
+                    if (Gp <= H * w[j])
+                        d = -Gp / H;
+                    else if (Gn >= H * w[j])
+                        d = -Gn / H;
+                    else
+                        d = -w[j];
+
+                    if (Math.abs(d) < 1.0e-12) continue;
+
+                    double delta = Math.abs(w[j] + d) - Math.abs(w[j]) + G * d;
+                    d_old = 0;
+                    int num_linesearch;
+                    for (num_linesearch = 0; num_linesearch < max_num_linesearch; num_linesearch++) {
+                        d_diff = d_old - d;
+                        cond = Math.abs(w[j] + d) - Math.abs(w[j]) - sigma * delta;
+
+                        appxcond = xj_sq[j] * d * d + G_loss * d + cond;
+                        if (appxcond <= 0) {
+                            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                                int ind = rowOf[row_index[k] - 1];
+                                if (ind >= 0) b[ind] += d_diff * y[ind] * x_value[k];
+                            }
+                            break;
                         }
-                        break;
-                    }
 
-                    if (num_linesearch == 0) {
-                        loss_old = 0;
-                        loss_new = 0;
-                        for (Feature x : prob_col.x[j]) {
-                            int ind = x.getIndex() - 1;
-                            if (b[ind] > 0) {
-                                loss_old += C[GETI(y, ind)] * b[ind] * b[ind];
+                        if (num_linesearch == 0) {
+                            loss_old = 0;
+                            loss_new = 0;
+                            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                                int ind = rowOf[row_index[k] - 1];
+                                if (ind < 0) continue;
+                                if (b[ind] > 0) {
+                                    loss_old += C[ind] * b[ind] * b[ind];
+                                }
+                                double b_new = b[ind] + d_diff * y[ind] * x_value[k];
+                                b[ind] = b_new;
+                                if (b_new > 0) {
+                                    loss_new += C[ind] * b_new * b_new;
+                                }
                             }
-                            double b_new = b[ind] + d_diff * x.getValue();
-                            b[ind] = b_new;
-                            if (b_new > 0) {
-                                loss_new += C[GETI(y, ind)] * b_new * b_new;
+                        } else {
+                            loss_new = 0;
+                            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                                int ind = rowOf[row_index[k] - 1];
+                                if (ind < 0) continue;
+                                double b_new = b[ind] + d_diff * y[ind] * x_value[k];
+                                b[ind] = b_new;
+                                if (b_new > 0) {
+                                    loss_new += C[ind] * b_new * b_new;
+                                }
                             }
                         }
-                    } else {
-                        loss_new = 0;
-                        for (Feature x : prob_col.x[j]) {
-                            int ind = x.getIndex() - 1;
-                            double b_new = b[ind] + d_diff * x.getValue();
-                            b[ind] = b_new;
-                            if (b_new > 0) {
-                                loss_new += C[GETI(y, ind)] * b_new * b_new;
-                            }
+
+                        cond = cond + loss_new - loss_old;
+                        if (cond <= 0)
+                            break;
+                        else {
+                            d_old = d;
+                            d *= 0.5;
+                            delta *= 0.5;
                         }
                     }
 
-                    cond = cond + loss_new - loss_old;
-                    if (cond <= 0)
-                        break;
-                    else {
-                        d_old = d;
-                        d *= 0.5;
-                        delta *= 0.5;
-                    }
-                }
+                    w[j] += d;
 
-                w[j] += d;
+                    // recompute b[] if line search takes too many steps
+                    if (num_linesearch >= max_num_linesearch) {
+                    	utils.info("#");
+                        for (int i = 0; i < l; i++)
+                            b[i] = 1;
 
-                // recompute b[] if line search takes too many steps
-                if (num_linesearch >= max_num_linesearch) {
-                	utils.info("#");
-                    for (int i = 0; i < l; i++)
-                        b[i] = 1;
-
-                    for (int i = 0; i < w_size; i++) {
-                        if (w[i] == 0) continue;
-                        for (Feature x : prob_col.x[i]) {
-                            b[x.getIndex() - 1] -= w[i] * x.getValue();
+                        for (int i = 0; i < w_size; i++) {
+                            if (w[i] == 0) continue;
+                            for (int k = col_ptr[i]; k < col_ptr[i + 1]; k++) {
+                                int ind = rowOf[row_index[k] - 1];
+                                if (ind >= 0) b[ind] -= w[i] * y[ind] * x_value[k];
+                            }
                         }
                     }
                 }
-            }
 
-            if (iter == 0) {
-                Gnorm1_init = Gnorm1_new;
-            }
-            iter++;
-            if (iter % 10 == 0) utils.info(".");
+                if (iter == 0) {
+                    Gnorm1_init = Gnorm1_new;
+                }
+                iter++;
+                if (iter % 10 == 0) utils.info(".");
 
-            if (Gmax_new <= eps * Gnorm1_init) {
-                if (active_size == w_size)
-                    break;
-                else {
-                    active_size = w_size;
-                    utils.info("*");
-                    Gmax_old = Double.POSITIVE_INFINITY;
-                    continue;
+                if (Gmax_new <= eps * Gnorm1_init) {
+                    if (active_size == w_size)
+                        break;
+                    else {
+                        active_size = w_size;
+                        utils.info("*");
+                        Gmax_old = Double.POSITIVE_INFINITY;
+                        continue;
+                    }
                 }
-            }
 
-            Gmax_old = Gmax_new;
+                Gmax_old = Gmax_new;
+            }
         }
 
         utils.info("%noptimization finished, #iter = %d%n", iter);
@@ -979,16 +1336,13 @@ public class Linear {
         double v = 0;
         int nnz = 0;
         for (j = 0; j < w_size; j++) {
-            for (Feature x : prob_col.x[j]) {
-                x.setValue(x.getValue() * prob_col.y[x.getIndex() - 1]); // restore x->value
-            }
             if (w[j] != 0) {
                 v += Math.abs(w[j]);
                 nnz++;
             }
         }
         for (j = 0; j < l; j++)
-            if (b[j] > 0) v += C[GETI(y, j)] * b[j] * b[j];
+            if (b[j] > 0) v += C[j] * b[j] * b[j];
 
         utils.info("Objective value = %f%n", v);
         utils.info("#nonzeros/#features = %d/%d%n", nnz, w_size);
@@ -1008,15 +1362,19 @@ public class Linear {
      * solution will be put in w
      *
      * See Yuan et al. (2011) and appendix of LIBLINEAR paper, Fan et al. (2008)
+     *
+     * If the parameter asks for it, the sub-problems of large problems are solved by
+     * {@link ShotgunCoordinateDescent} with several threads, otherwise the solver is sequential and deterministic
      *</pre>
      *
      * @since 1.5
      */
-    private  void solve_l1r_lr(Problem prob_col, double[] w, double eps, double Cp, double Cn) {
-        int l = prob_col.l;
-        int w_size = prob_col.n;
+    private  void solve_l1r_lr(Problem prob, FeatureColumns prob_col, double[] w, double eps, double Cp, double Cn, Random random,
+        TrainingBudget budget, int numThreads, boolean asynchronous, SolverWorkspace workspace) {
+        int l = prob.l;
+        int w_size = prob.n;
         int j, s, newton_iter = 0, iter = 0;
-        int max_newton_iter = 100;
+        int max_newton_iter = budget.maxIterations(100);
         int max_iter = 1000;
         int max_num_linesearch = 20;
         int active_size;
@@ -1034,43 +1392,60 @@ public class Linear {
         double QP_Gmax_new, QP_Gnorm1_new;
         double delta, negsum_xTd, cond;
 
-        int[] index = new int[w_size];
-        byte[] y = new byte[l];
-        double[] Hdiag = new double[w_size];
-        double[] Grad = new double[w_size];
-        double[] wpd = new double[w_size];
-        double[] xjneg_sum = new double[w_size];
-        double[] xTd = new double[l];
-        double[] exp_wTx = new double[l];
-        double[] exp_wTx_new = new double[l];
-        double[] tau = new double[l];
-        double[] D = new double[l];
-
-        double[] C = {Cn, 0, Cp};
+        int[] index = workspace.ints(SolverWorkspace.L1_INDEX, w_size);
+        byte[] y = workspace.bytes(SolverWorkspace.L1_Y, l);
+        double[] Hdiag = workspace.doubles(SolverWorkspace.L1_HDIAG, w_size);
+        // the decrease of the line search sums Grad over all features, also those shrunken in the first iteration
+        double[] Grad = workspace.zeros(SolverWorkspace.L1_GRAD, w_size);
+        double[] wpd = workspace.doubles(SolverWorkspace.L1_WPD, w_size);
+        double[] xjneg_sum = workspace.doubles(SolverWorkspace.L1_XJNEG_SUM, w_size);
+        double[] xTd = workspace.doubles(SolverWorkspace.L1_XTD, l);
+        double[] exp_wTx = workspace.doubles(SolverWorkspace.L1_EXP_WTX, l);
+        double[] exp_wTx_new = workspace.doubles(SolverWorkspace.L1_EXP_NEW, l);
+        double[] tau = workspace.doubles(SolverWorkspace.L1_TAU, l);
+        double[] D = workspace.doubles(SolverWorkspace.L1_D, l);
+
+        double[] C = instanceCosts(prob, Cp, Cn, workspace);
+
+        int[] col_ptr = prob_col.col_ptr;
+        int[] row_index = prob_col.row_index;
+        double[] x_value = prob_col.x_value;
+        int[] rowOf = prob_col.rowOf;
 
         for (j = 0; j < l; j++) {
-            if (prob_col.y[j] > 0)
+            if (prob.y[j] > 0)
                 y[j] = 1;
             else
                 y[j] = -1;
 
-            // assume initial w is 0
-            exp_wTx[j] = 1;
-            tau[j] = C[GETI(y, j)] * 0.5;
-            D[j] = C[GETI(y, j)] * 0.25;
+            exp_wTx[j] = 0;
         }
+        // w on entry is the starting point
         for (j = 0; j < w_size; j++) {
-            w[j] = 0;
+            w_norm += Math.abs(w[j]);
             wpd[j] = w[j];
             index[j] = j;
             xjneg_sum[j] = 0;
-            for (Feature x : prob_col.x[j]) {
-                int ind = x.getIndex() - 1;
-                if (y[ind] == -1) xjneg_sum[j] += C[GETI(y, ind)] * x.getValue();
+            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                int ind = rowOf[row_index[k] - 1];
+                if (ind < 0) continue;
+                exp_wTx[ind] += w[j] * x_value[k];
+                if (y[ind] == -1) xjneg_sum[j] += C[ind] * x_value[k];
             }
         }
+        for (j = 0; j < l; j++) {
+            exp_wTx[j] = Math.exp(exp_wTx[j]);
+            double tau_tmp = 1 / (1 + exp_wTx[j]);
+            tau[j] = C[j] * tau_tmp;
+            D[j] = C[j] * exp_wTx[j] * tau_tmp * tau_tmp;
+        }
 
-        while (newton_iter < max_newton_iter) {
+        ShotgunCoordinateDescent shotgun = null;
+        if (asynchronous && numThreads > 1 && prob_col.nnz() >= RowKernels.MIN_PARALLEL_NNZ) {
+            shotgun = new ShotgunCoordinateDescent(prob_col, l, w_size, numThreads);
+        }
+
+        while (newton_iter < max_newton_iter && !budget.shouldStop()) {
             Gmax_new = 0;
             Gnorm1_new = 0;
             active_size = w_size;
@@ -1081,10 +1456,11 @@ public class Linear {
                 Grad[j] = 0;
 
                 double tmp = 0;
-                for (Feature x : prob_col.x[j]) {
-                    int ind = x.getIndex() - 1;
-                    Hdiag[j] += x.getValue() * x.getValue() * D[ind];
-                    tmp += x.getValue() * tau[ind];
+                for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                    int ind = rowOf[row_index[k] - 1];
+                    if (ind < 0) continue;
+                    Hdiag[j] += x_value[k] * x_value[k] * D[ind];
+                    tmp += x_value[k] * tau[ind];
                 }
                 Grad[j] = -tmp + xjneg_sum[j];
 
@@ -1124,82 +1500,87 @@ public class Linear {
                 xTd[i] = 0;
 
             // optimize QP over wpd
-            while (iter < max_iter) {
-                QP_Gmax_new = 0;
-                QP_Gnorm1_new = 0;
-
-                for (j = 0; j < QP_active_size; j++) {
-                    int i = utils.getRandom().nextInt(QP_active_size - j);
-                    utils.swap(index, i, j);
-                }
-
-                for (s = 0; s < QP_active_size; s++) {
-                    j = index[s];
-                    H = Hdiag[j];
+            if (shotgun != null && shotgun.getNumThreads() > 1) {
+                iter = shotgun.solveL1rLrQP(index, active_size, w, wpd, Grad, Hdiag, D, xTd, nu, inner_eps * Gnorm1_init, max_iter,
+                    random);
+            } else {
+                while (iter < max_iter) {
+                    QP_Gmax_new = 0;
+                    QP_Gnorm1_new = 0;
 
-                    G = Grad[j] + (wpd[j] - w[j]) * nu;
-                    for (Feature x : prob_col.x[j]) {
-                        int ind = x.getIndex() - 1;
-                        G += x.getValue() * D[ind] * xTd[ind];
+                    for (j = 0; j < QP_active_size; j++) {
+                        int i = random.nextInt(QP_active_size - j);
+                        utils.swap(index, i, j);
                     }
 
-                    double Gp = G + 1;
-                    double Gn = G - 1;
-                    double violation = 0;
-                    if (wpd[j] == 0) {
-                        if (Gp < 0)
-                            violation = -Gp;
-                        else if (Gn > 0)
-                            violation = Gn;
-                        //inner-level shrinking
-                        else if (Gp > QP_Gmax_old / l && Gn < -QP_Gmax_old / l) {
-                            QP_active_size--;
-                            utils.swap(index, s, QP_active_size);
-                            s--;
-                            continue;
-                        }
-                    } else if (wpd[j] > 0)
-                        violation = Math.abs(Gp);
-                    else
-                        violation = Math.abs(Gn);
-
-                    QP_Gmax_new = Math.max(QP_Gmax_new, violation);
-                    QP_Gnorm1_new += violation;
-
-                    // obtain solution of one-variable problem
-                    if (Gp <= H * wpd[j])
-                        z = -Gp / H;
-                    else if (Gn >= H * wpd[j])
-                        z = -Gn / H;
-                    else
-                        z = -wpd[j];
-
-                    if (Math.abs(z) < 1.0e-12) continue;
-                    z = Math.min(Math.max(z, -10.0), 10.0);
+                    for (s = 0; s < QP_active_size; s++) {
+                        j = index[s];
+                        H = Hdiag[j];
 
-                    wpd[j] += z;
+                        G = Grad[j] + (wpd[j] - w[j]) * nu;
+                        for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                            int ind = rowOf[row_index[k] - 1];
+                            if (ind >= 0) G += x_value[k] * D[ind] * xTd[ind];
+                        }
 
-                    for (Feature x : prob_col.x[j]) {
-                        int ind = x.getIndex() - 1;
-                        xTd[ind] += x.getValue() * z;
+                        double Gp = G + 1;
+                        double Gn = G - 1;
+                        double violation = 0;
+                        if (wpd[j] == 0) {
+                            if (Gp < 0)
+                                violation = -Gp;
+                            else if (Gn > 0)
+                                violation = Gn;
+                            //inner-level shrinking
+                            else if (Gp > QP_Gmax_old / l && Gn < -QP_Gmax_old / l) {
+                                QP_active_size--;
+                                utils.swap(index, s, QP_active_size);
+                                s--;
+                                continue;
+                            }
+                        } else if (wpd[j] > 0)
+                            violation = Math.abs(Gp);
+                        else
+                            violation = Math.abs(Gn);
+
+                        QP_Gmax_new = Math.max(QP_Gmax_new, violation);
+                        QP_Gnorm1_new += violation;
+
+                        // obtain solution of one-variable problem
+                        if (Gp <= H * wpd[j])
+                            z = -Gp / H;
+                        else if (Gn >= H * wpd[j])
+                            z = -Gn / H;
+                        else
+                            z = -wpd[j];
+
+                        if (Math.abs(z) < 1.0e-12) continue;
+                        z = Math.min(Math.max(z, -10.0), 10.0);
+
+                        wpd[j] += z;
+
+                        for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                            int ind = rowOf[row_index[k] - 1];
+                            if (ind >= 0) xTd[ind] += x_value[k] * z;
+                        }
                     }
-                }
 
-                iter++;
+                    iter++;
 
-                if (QP_Gnorm1_new <= inner_eps * Gnorm1_init) {
-                    //inner stopping
-                    if (QP_active_size == active_size)
-                        break;
-                    //active set reactivation
-                    else {
-                        QP_active_size = active_size;
-                        QP_Gmax_old = Double.POSITIVE_INFINITY;
-                        continue;
+                    if (QP_Gnorm1_new <= inner_eps * Gnorm1_init) {
+                        //inner stopping
+                        if (QP_active_size == active_size)
+                            break;
+                        //active set reactivation
+                        else {
+                            QP_active_size = active_size;
+                            QP_Gmax_old = Double.POSITIVE_INFINITY;
+                            continue;
+                        }
                     }
-                }
 
-                QP_Gmax_old = QP_Gmax_new;
+                    QP_Gmax_old = QP_Gmax_new;
+                }
             }
 
             if (iter >= max_iter) utils.info("WARNING: reaching max number of inner iterations\n");
@@ -1214,7 +1595,7 @@ public class Linear {
 
             negsum_xTd = 0;
             for (int i = 0; i < l; i++)
-                if (y[i] == -1) negsum_xTd += C[GETI(y, i)] * xTd[i];
+                if (y[i] == -1) negsum_xTd += C[i] * xTd[i];
 
             int num_linesearch;
             for (num_linesearch = 0; num_linesearch < max_num_linesearch; num_linesearch++) {
@@ -1223,7 +1604,7 @@ public class Linear {
                 for (int i = 0; i < l; i++) {
                     double exp_xTd = Math.exp(xTd[i]);
                     exp_wTx_new[i] = exp_wTx[i] * exp_xTd;
-                    cond += C[GETI(y, i)] * Math.log((1 + exp_wTx_new[i]) / (exp_xTd + exp_wTx_new[i]));
+                    cond += C[i] * Math.log((1 + exp_wTx_new[i]) / (exp_xTd + exp_wTx_new[i]));
                 }
 
                 if (cond <= 0) {
@@ -1233,8 +1614,8 @@ public class Linear {
                     for (int i = 0; i < l; i++) {
                         exp_wTx[i] = exp_wTx_new[i];
                         double tau_tmp = 1 / (1 + exp_wTx[i]);
-                        tau[i] = C[GETI(y, i)] * tau_tmp;
-                        D[i] = C[GETI(y, i)] * exp_wTx[i] * tau_tmp * tau_tmp;
+                        tau[i] = C[i] * tau_tmp;
+                        D[i] = C[i] * exp_wTx[i] * tau_tmp * tau_tmp;
                     }
                     break;
                 } else {
@@ -1257,8 +1638,9 @@ public class Linear {
 
                 for (int i = 0; i < w_size; i++) {
                     if (w[i] == 0) continue;
-                    for (Feature x : prob_col.x[i]) {
-                        exp_wTx[x.getIndex() - 1] += w[i] * x.getValue();
+                    for (int k = col_ptr[i]; k < col_ptr[i + 1]; k++) {
+                        int ind = rowOf[row_index[k] - 1];
+                        if (ind >= 0) exp_wTx[ind] += w[i] * x_value[k];
                     }
                 }
 
@@ -1289,9 +1671,9 @@ public class Linear {
             }
         for (j = 0; j < l; j++)
             if (y[j] == 1)
-                v += C[GETI(y, j)] * Math.log(1 + 1 / exp_wTx[j]);
+                v += C[j] * Math.log(1 + 1 / exp_wTx[j]);
             else
-                v += C[GETI(y, j)] * Math.log(1 + exp_wTx[j]);
+                v += C[j] * Math.log(1 + exp_wTx[j]);
 
         utils.info("Objective value = %f%n", v);
         utils.info("#nonzeros/#features = %d/%d%n", nnz, w_size);
@@ -1301,7 +1683,7 @@ public class Linear {
      Problem transpose(Problem prob) {
         int l = prob.l;
         int n = prob.n;
-        int[] col_ptr = new int[n + 1];
+        CsrRows columns = transposeToColumns(prob);
         Problem prob_col = new Problem();
         prob_col.l = l;
         prob_col.n = n;
@@ -1311,27 +1693,65 @@ public class Linear {
         for (int i = 0; i < l; i++)
             prob_col.y[i] = prob.y[i];
 
-        for (int i = 0; i < l; i++) {
-            for (Feature x : prob.x[i]) {
-                col_ptr[x.getIndex()]++;
+        for (int j = 0; j < n; j++) {
+            prob_col.x[j] = new Feature[columns.length(j)];
+            for (int k = columns.rowPtr[j], m = 0; k < columns.rowPtr[j + 1]; k++, m++) {
+                prob_col.x[j][m] = new FeatureNode(columns.index[k], columns.value[k]);
             }
         }
 
-        for (int i = 0; i < n; i++) {
-            prob_col.x[i] = new Feature[col_ptr[i + 1]];
-            col_ptr[i] = 0; // reuse the array to count the nr of elements
+        return prob_col;
+    }
+
+    /**
+     * transposes the instances of prob into compressed sparse column format,
+     * i.e. row j of the returned matrix holds the (one-based instance index, value) pairs of feature j+1
+     */
+    CsrRows transposeToColumns(Problem prob) {
+        int l = prob.l;
+        int n = prob.n;
+        SparseRows x = prob.rows();
+        int[] col_ptr = new int[n + 1];
+
+        int max_length = 0;
+        for (int i = 0; i < l; i++)
+            max_length = Math.max(max_length, x.length(i));
+        int[] xi_index = new int[max_length];
+        double[] xi_value = new double[max_length];
+
+        for (int i = 0; i < l; i++) {
+            int length = x.copy(i, xi_index, xi_value);
+            for (int k = 0; k < length; k++)
+                col_ptr[xi_index[k]]++;
         }
+        for (int j = 0; j < n; j++)
+            col_ptr[j + 1] += col_ptr[j];
+
+        int nnz = col_ptr[n];
+        int[] row_index = new int[nnz];
+        double[] x_value = new double[nnz];
+        int[] pos = new int[n];
+        System.arraycopy(col_ptr, 0, pos, 0, n);
 
         for (int i = 0; i < l; i++) {
-            for (int j = 0; j < prob.x[i].length; j++) {
-                Feature x = prob.x[i][j];
-                int index = x.getIndex() - 1;
-                prob_col.x[index][col_ptr[index]] = new FeatureNode(i + 1, x.getValue());
-                col_ptr[index]++;
+            int length = x.copy(i, xi_index, xi_value);
+            for (int k = 0; k < length; k++) {
+                int index = xi_index[k] - 1;
+                row_index[pos[index]] = i + 1;
+                x_value[pos[index]] = xi_value[k];
+                pos[index]++;
             }
         }
 
-        return prob_col;
+        return new CsrRows(col_ptr, row_index, x_value);
+    }
+
+    /**
+     * @return the columns of prob if the solver of param needs them, null otherwise
+     */
+    private FeatureColumns columns(Problem prob, Parameter param) {
+        if (param.solverType != SolverType.L1R_L2LOSS_SVC && param.solverType != SolverType.L1R_LR) return null;
+        return new FeatureColumns(transposeToColumns(prob), prob.l);
     }
 
 
@@ -1339,17 +1759,74 @@ public class Linear {
      * @throws IllegalArgumentException if the feature nodes of prob are not sorted in ascending order
      */
     public  Model train(Problem prob, Parameter param) {
+        return train(prob, param, null, null, null, utils.getRandom(), param == null ? 1 : param.numThreads, null, null);
+    }
+
+    /**
+     * Trains a model starting from the weights of <code>initial</code> instead of zero (warm start), e.g. the model
+     * of a similar problem or of the same problem with a smaller C. The weights are matched by class label and
+     * feature index, classes and features that <code>initial</code> doesn't have start at zero. The primal solvers
+     * start from the weights, the dual solvers from the dual variables that are derived from the weights.
+     * {@link SolverType#MCSVM_CS} ignores the initial model.
+     *
+     * @throws IllegalArgumentException if the feature nodes of prob are not sorted in ascending order
+     * @since 1.9
+     */
+    public Model train(Problem prob, Parameter param, Model initial) {
+        if (initial == null) throw new IllegalArgumentException("initial model must not be null");
+        return train(prob, param, initial, null, null, utils.getRandom(), param == null ? 1 : param.numThreads, null, null);
+    }
+
+    /**
+     * Trains a model starting from the given weights instead of zero (warm start).
+     *
+     * @param initialWeights the weights in the layout of {@link Model#getFeatureWeights()} of a model trained on prob,
+     *            the classes are in the order of their first appearance in prob
+     * @throws IllegalArgumentException if the feature nodes of prob are not sorted in ascending order or if
+     *             initialWeights doesn't have the length of the weights of the model
+     * @see #train(Problem, Parameter, Model)
+     * @since 1.9
+     */
+    public Model train(Problem prob, Parameter param, double[] initialWeights) {
+        if (initialWeights == null) throw new IllegalArgumentException("initial weights must not be null");
+        return train(prob, param, null, initialWeights, null, utils.getRandom(), param == null ? 1 : param.numThreads, null, null);
+    }
+
+    /**
+     * @param initial the model to start from or null
+     * @param initial_w the weights to start from or null
+     * @param columns the columns of prob for the L1-regularized solvers or null to transpose prob if the solver needs
+     *            them
+     * @param random the random generator of the solvers
+     * @param numThreads the number of threads for the classes of a one-vs-rest model and the primal solvers
+     * @param budget the budget that is shared with other trainings or null for a budget of this training
+     * @param workspaces the workspaces that are shared with other trainings or null for the workspaces of this training
+     */
+    private Model train(Problem prob, Parameter param, Model initial, double[] initial_w, FeatureColumns columns, Random random,
+        int numThreads, TrainingBudget budget, SolverWorkspace.Pool workspaces) {
 
         if (prob == null) throw new IllegalArgumentException("problem must not be null");
         if (param == null) throw new IllegalArgumentException("parameter must not be null");
+        if (budget == null) budget = new TrainingBudget(param);
+        if (workspaces == null) workspaces = new SolverWorkspace.Pool();
 
-        for (Feature[] nodes : prob.x) {
-            int indexBefore = 0;
-            for (Feature n : nodes) {
-                if (n.getIndex() <= indexBefore) {
-                    throw new IllegalArgumentException("feature nodes must be sorted by index in ascending order");
+        if (prob.W != null) {
+            if (prob.W.length != prob.l) throw new IllegalArgumentException("W must have l elements");
+            for (double weight : prob.W) {
+                if (!(weight > 0)) throw new IllegalArgumentException("instance weights must be positive: " + weight);
+            }
+        }
+
+        // the primitive storage backends validate their rows on construction
+        if (prob.rows == null) {
+            for (Feature[] nodes : prob.x) {
+                int indexBefore = 0;
+                for (Feature n : nodes) {
+                    if (n.getIndex() <= indexBefore) {
+                        throw new IllegalArgumentException("feature nodes must be sorted by index in ascending order");
+                    }
+                    indexBefore = n.getIndex();
                 }
-                indexBefore = n.getIndex();
             }
         }
 
@@ -1364,6 +1841,7 @@ public class Linear {
             model.nr_feature = n;
         model.solverType = param.solverType;
         model.bias = prob.bias;
+        model.featureHasher = prob.featureHasher;
 
         int[] perm = new int[l];
         // group training data of the same class
@@ -1393,25 +1871,35 @@ public class Linear {
             weighted_C[j] *= param.weight[i];
         }
 
-        // constructing the subproblem
-        Feature[][] x = new Feature[l][];
-        for (int i = 0; i < l; i++)
-            x[i] = prob.x[perm[i]];
+        // the columns are built once and shared by all classes
+        FeatureColumns sub_columns = null;
+        if (columns == null) columns = columns(prob, param);
+        if (columns != null) sub_columns = columns.select(perm);
 
+        // constructing the subproblem
         Problem sub_prob = new Problem();
         sub_prob.l = l;
         sub_prob.n = n;
-        sub_prob.x = new Feature[sub_prob.l][];
+        sub_prob.rows = new RowSubset(prob.rows(), perm);
+        // the statistics are computed once and shared by all classes
+        sub_prob.setRowStatistics(prob.rowStatistics().select(perm));
         sub_prob.y = new int[sub_prob.l];
-
-        for (int k = 0; k < sub_prob.l; k++)
-            sub_prob.x[k] = x[k];
+        if (prob.W != null) {
+            sub_prob.W = new double[l];
+            for (int i = 0; i < l; i++)
+                sub_prob.W[i] = prob.W[perm[i]];
+        }
 
         // verify the size and throw an exception early if the problem is too large
         if (n >= Integer.MAX_VALUE / nr_class || n * nr_class < 0) {
             throw new IllegalArgumentException("'number of classes' * 'number of instances' is too large: " + nr_class + "*" + n);
         }
 
+        int nr_w = nr_class == 2 && param.solverType != SolverType.MCSVM_CS ? 1 : nr_class;
+        if (initial != null) initial_w = initialWeights(initial, model, w_size, nr_w);
+        if (initial_w != null && initial_w.length != w_size * nr_w)
+            throw new IllegalArgumentException("initial weights must have " + w_size * nr_w + " elements: " + initial_w.length);
+
         // multi-class svm by Crammer and Singer
         if (param.solverType == SolverType.MCSVM_CS) {
             model.w = new double[n * nr_class];
@@ -1421,11 +1909,12 @@ public class Linear {
                 }
             }
 
-            SolverMCSVM_CS solver = new SolverMCSVM_CS(sub_prob, nr_class, weighted_C, param.eps);
+            SolverMCSVM_CS solver = new SolverMCSVM_CS(sub_prob, nr_class, weighted_C, param.eps, budget.maxIterations(100000), budget);
             solver.solve(model.w);
         } else {
             if (nr_class == 2) {
                 model.w = new double[w_size];
+                if (initial_w != null) System.arraycopy(initial_w, 0, model.w, 0, w_size);
 
                 int e0 = start[0] + count[0];
                 int k = 0;
@@ -1434,34 +1923,133 @@ public class Linear {
                 for (; k < sub_prob.l; k++)
                     sub_prob.y[k] = -1;
 
-                train_one(sub_prob, param, model.w, weighted_C[0], weighted_C[1]);
+                SolverWorkspace workspace = workspaces.acquire();
+                try {
+                    train_one(sub_prob, sub_columns, param, model.w, weighted_C[0], weighted_C[1], random, numThreads, budget, workspace);
+                }
+                finally {
+                    workspaces.release(workspace);
+                }
             } else {
                 model.w = new double[w_size * nr_class];
-                double[] w = new double[w_size];
-                for (int i = 0; i < nr_class; i++) {
-                    int si = start[i];
-                    int ei = si + count[i];
+                trainOneVsRest(sub_prob, sub_columns, param, model, start, count, weighted_C, initial_w, random, numThreads, budget,
+                    workspaces);
+            }
+
+        }
+        model.stoppedEarly = budget.isStoppedEarly();
+        return model;
+    }
+
+    /**
+     * @return the weights of initial in the layout of model, zero for the classes and features that initial doesn't
+     *         have
+     */
+    private static double[] initialWeights(Model initial, Model model, int w_size, int nr_w) {
+        double[] w = new double[w_size * nr_w];
+        int features = Math.min(initial.nr_feature, model.nr_feature);
+        for (int k = 0; k < nr_w; k++) {
+            int label = model.label[k];
+            for (int j = 0; j < features; j++)
+                w[j * nr_w + k] = initialWeight(initial, label, j);
+            if (model.bias > 0 && initial.bias >= 0) {
+                // the bias term contributes w_bias * bias to the decision value
+                w[model.nr_feature * nr_w + k] = initialWeight(initial, label, initial.nr_feature) * initial.bias / model.bias;
+            }
+        }
+        return w;
+    }
 
-                    int k = 0;
-                    for (; k < si; k++)
-                        sub_prob.y[k] = -1;
-                    for (; k < ei; k++)
-                        sub_prob.y[k] = +1;
-                    for (; k < sub_prob.l; k++)
-                        sub_prob.y[k] = -1;
+    /**
+     * @return the weight of the feature (0-based) for the class label in the one-vs-rest sense, 0 if the model
+     *         doesn't know the label
+     */
+    private static double initialWeight(Model initial, int label, int feature) {
+        if (initial.nr_class == 2 && initial.solverType != SolverType.MCSVM_CS) {
+            if (label == initial.label[0]) return initial.w[feature];
+            if (label == initial.label[1]) return -initial.w[feature];
+            return 0;
+        }
+        for (int k = 0; k < initial.nr_class; k++) {
+            if (initial.label[k] == label) return initial.w[feature * initial.nr_class + k];
+        }
+        return 0;
+    }
 
-                    train_one(sub_prob, param, w, weighted_C[i], param.C);
+    /**
+     * @return true if all weights are 0, the solvers start from the weights they are given
+     */
+    static boolean isZero(double[] w) {
+        for (double wi : w) {
+            if (wi != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Trains one binary problem per class (one-vs-rest) on up to <code>numThreads</code> threads.
+     * Every class has its own labels, weight vector and random generator. The seed of the generator only depends
+     * on <code>random</code> and the class, so the model is the same for any number of threads.
+     */
+    private void trainOneVsRest(final Problem sub_prob, final FeatureColumns sub_columns, final Parameter param, final Model model,
+        final int[] start, final int[] count, final double[] weighted_C, final double[] initial_w, Random random, int numThreads,
+        final TrainingBudget budget, final SolverWorkspace.Pool workspaces) {
+        final int nr_class = model.nr_class;
+        final int n = sub_prob.n;
+        final long seed = random.nextLong();
+        final int classThreads = Math.min(numThreads, nr_class);
+        // the threads that are left over go to the primal solvers
+        final int solverThreads = Math.max(1, numThreads / classThreads);
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(nr_class);
+        for (int c = 0; c < nr_class; c++) {
+            final int i = c;
+            tasks.add(new Callable<Void>() {
+
+                public Void call() {
+                    Problem class_prob = new Problem();
+                    class_prob.l = sub_prob.l;
+                    class_prob.n = n;
+                    class_prob.rows = sub_prob.rows;
+                    class_prob.setRowStatistics(sub_prob.rowStatistics());
+                    class_prob.W = sub_prob.W;
+                    class_prob.y = new int[sub_prob.l];
+                    for (int k = 0; k < sub_prob.l; k++)
+                        class_prob.y[k] = -1;
+                    for (int k = start[i]; k < start[i] + count[i]; k++)
+                        class_prob.y[k] = +1;
+
+                    double[] w = new double[n];
+                    if (initial_w != null) {
+                        for (int j = 0; j < n; j++)
+                            w[j] = initial_w[j * nr_class + i];
+                    }
+                    SolverWorkspace workspace = workspaces.acquire();
+                    try {
+                        train_one(class_prob, sub_columns, param, w, weighted_C[i], param.C, taskRandom(seed, i),
+                            solverThreads, budget, workspace);
+                    }
+                    finally {
+                        workspaces.release(workspace);
+                    }
 
                     for (int j = 0; j < n; j++)
                         model.w[j * nr_class + i] = w[j];
+                    return null;
                 }
-            }
-
+            });
         }
-        return model;
+
+        invokeAll(tasks, classThreads, "the one-vs-rest training");
     }
 
-    private  void train_one(Problem prob, Parameter param, double[] w, double Cp, double Cn) {
+    /**
+     * @param prob_col the columns of prob for the L1-regularized solvers, they are not modified
+     * @param numThreads the number of threads of the primal solvers, the L2R SVC dual solver and the L1-regularized solvers
+     * @param workspace the working arrays of the solvers
+     */
+    private  void train_one(Problem prob, FeatureColumns prob_col, Parameter param, double[] w, double Cp, double Cn, Random random,
+        int numThreads, TrainingBudget budget, SolverWorkspace workspace) {
         double eps = param.eps;
         int pos = 0;
         for (int i = 0; i < prob.l; i++)
@@ -1471,36 +2059,59 @@ public class Linear {
         Function fun_obj = null;
         switch (param.solverType) {
             case L2R_LR: {
-                fun_obj = new L2R_LrFunction(prob, Cp, Cn);
-                Tron tron_obj = new Tron(fun_obj, eps * Math.min(pos, neg) / prob.l);
+                fun_obj = new L2R_LrFunction(prob, Cp, Cn, numThreads, workspace);
+                Tron tron_obj = new Tron(fun_obj, eps * Math.min(pos, neg) / prob.l, budget.maxIterations(1000), budget, workspace,
+                    param.preconditioning);
                 tron_obj.tron(w);
                 break;
             }
             case L2R_L2LOSS_SVC: {
-                fun_obj = new L2R_L2_SvcFunction(prob, Cp, Cn);
-                Tron tron_obj = new Tron(fun_obj, eps * Math.min(pos, neg) / prob.l);
+                fun_obj = new L2R_L2_SvcFunction(prob, Cp, Cn, numThreads, workspace);
+                Tron tron_obj = new Tron(fun_obj, eps * Math.min(pos, neg) / prob.l, budget.maxIterations(1000), budget, workspace,
+                    param.preconditioning);
                 tron_obj.tron(w);
                 break;
             }
             case L2R_L2LOSS_SVC_DUAL:
-                solve_l2r_l1l2_svc(prob, w, eps, Cp, Cn, SolverType.L2R_L2LOSS_SVC_DUAL);
+                solve_l2r_l1l2_svc(prob, w, eps, Cp, Cn, SolverType.L2R_L2LOSS_SVC_DUAL, random, budget, numThreads,
+                    param.asynchronousDual, workspace);
                 break;
             case L2R_L1LOSS_SVC_DUAL:
-                solve_l2r_l1l2_svc(prob, w, eps, Cp, Cn, SolverType.L2R_L1LOSS_SVC_DUAL);
+                solve_l2r_l1l2_svc(prob, w, eps, Cp, Cn, SolverType.L2R_L1LOSS_SVC_DUAL, random, budget, numThreads,
+                    param.asynchronousDual, workspace);
                 break;
-            case L1R_L2LOSS_SVC: {
-                Problem prob_col = transpose(prob);
-                solve_l1r_l2_svc(prob_col, w, eps * Math.min(pos, neg) / prob.l, Cp, Cn);
+            case L1R_L2LOSS_SVC:
+                solve_l1r_l2_svc(prob, prob_col, w, eps * Math.min(pos, neg) / prob.l, Cp, Cn, random, budget, numThreads,
+                    param.asynchronousL1, workspace);
+                break;
+            case L1R_LR:
+                solve_l1r_lr(prob, prob_col, w, eps * Math.min(pos, neg) / prob.l, Cp, Cn, random, budget, numThreads,
+                    param.asynchronousL1, workspace);
+                break;
+            case L2R_LR_DUAL:
+                solve_l2r_lr_dual(prob, w, eps, Cp, Cn, random, budget, workspace);
+                break;
+            case L2R_LR_LBFGS: {
+                fun_obj = new L2R_LrFunction(prob, Cp, Cn, numThreads, workspace);
+                Lbfgs lbfgs = new Lbfgs(fun_obj, eps * Math.min(pos, neg) / prob.l, budget.maxIterations(1000), budget, workspace,
+                    false);
+                lbfgs.minimize(w);
                 break;
             }
-            case L1R_LR: {
-                Problem prob_col = transpose(prob);
-                solve_l1r_lr(prob_col, w, eps * Math.min(pos, neg) / prob.l, Cp, Cn);
+            case L2R_L2LOSS_SVC_LBFGS: {
+                fun_obj = new L2R_L2_SvcFunction(prob, Cp, Cn, numThreads, workspace);
+                Lbfgs lbfgs = new Lbfgs(fun_obj, eps * Math.min(pos, neg) / prob.l, budget.maxIterations(1000), budget, workspace,
+                    false);
+                lbfgs.minimize(w);
                 break;
             }
-            case L2R_LR_DUAL:
-                solve_l2r_lr_dual(prob, w, eps, Cp, Cn);
+            case L1R_LR_OWLQN: {
+                fun_obj = new L2R_LrFunction(prob, Cp, Cn, numThreads, workspace, false);
+                Lbfgs owlqn = new Lbfgs(fun_obj, eps * Math.min(pos, neg) / prob.l, budget.maxIterations(1000), budget, workspace,
+                    true);
+                owlqn.minimize(w);
                 break;
+            }
             default:
                 throw new IllegalStateException("unknown solver type: " + param.solverType);
         }
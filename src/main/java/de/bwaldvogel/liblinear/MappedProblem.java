@@ -0,0 +1,106 @@
+package de.bwaldvogel.liblinear;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>A {@link Problem} whose instances stay in a memory-mapped file instead of the heap.</p>
+ *
+ * The solvers read the instances directly from the mapped file, the operating system
+ * pages them in and out as needed. This way the training data can be much larger than the heap,
+ * only the labels (and the solver state, which is proportional to l and n) are kept in memory.
+ * Note that the L1-regularized solvers need a column-major copy of the instances on the heap.
+ *
+ * The file is written with {@link ProblemFileWriter}.
+ * {@link Problem#x} is <code>null</code> for this kind of problem.
+ *
+ * @since 1.9
+ */
+public class MappedProblem extends Problem {
+
+    static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final File file;
+
+    private MappedProblem( File file ) {
+        this.file = file;
+    }
+
+    /**
+     * maps the given file with the bias that was given to the {@link ProblemFileWriter}. The feature indices are
+     * validated, which reads the index section of the file once.
+     *
+     * @throws InvalidInputDataException if the file is not a valid binary problem file
+     */
+    public static MappedProblem open(File file) throws IOException, InvalidInputDataException {
+        return open(file, Double.NaN, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * maps the given file
+     *
+     * @param bias see {@link Problem#bias}, overrides the bias that is stored in the file
+     * @throws InvalidInputDataException if the file is not a valid binary problem file
+     */
+    public static MappedProblem open(File file, double bias) throws IOException, InvalidInputDataException {
+        return open(file, bias, DEFAULT_SEGMENT_SIZE);
+    }
+
+    static MappedProblem open(File file, double bias, int segmentSize) throws IOException, InvalidInputDataException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ProblemFileFormat format = ProblemFileFormat.readHeader(file, channel);
+
+            MappedProblem prob = new MappedProblem(file);
+            prob.l = format.l;
+            prob.bias = Double.isNaN(bias) ? format.bias : bias;
+            prob.n = format.n;
+            if (prob.bias >= 0) prob.n++;
+
+            prob.y = new int[format.l];
+            int pos = 0;
+            for (MappedByteBuffer segment : MappedRows.map(channel, format.labelOffset, 4L * format.l, segmentSize)) {
+                IntBuffer labels = segment.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+                int count = labels.remaining();
+                labels.get(prob.y, pos, count);
+                pos += count;
+            }
+
+            // the mappings stay valid after the file has been closed
+            MappedRows rows = new MappedRows(channel, format, segmentSize, prob.bias >= 0 ? prob.n : 0, prob.bias);
+            long ptrBefore = 0;
+            for (int i = 0; i <= format.l; i++) {
+                long ptr = rows.rowPtr(i);
+                if (ptr < ptrBefore || ptr > format.nnz || i == 0 && ptr != 0) {
+                    throw new InvalidInputDataException("corrupt row offsets in binary problem file", file, 0);
+                }
+                ptrBefore = ptr;
+            }
+            if (ptrBefore != format.nnz) throw new InvalidInputDataException("corrupt row offsets in binary problem file", file, 0);
+            // Linear.train trusts the rows of the storage backends, so the indices are checked once here
+            for (int i = 0; i < format.l; i++) {
+                if (!rows.hasValidIndices(i, format.n)) {
+                    throw new InvalidInputDataException("feature indices of instance " + (i + 1)
+                        + " are not sorted in ascending order or not in 1.." + format.n, file, 0);
+                }
+            }
+            prob.rows = rows;
+            return prob;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * @return the mapped file
+     */
+    public File getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,178 @@
+package de.bwaldvogel.liblinear;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>Compressed sparse rows which live in a memory-mapped {@link ProblemFileFormat binary problem file}.</p>
+ *
+ * A single {@link MappedByteBuffer} can't be larger than 2 GB, so each section of the file is mapped
+ * in segments of <code>segmentSize</code> bytes. The sections are 8 byte aligned and the segment size is a
+ * power of two, so no number straddles two segments, and entry k of a section is located in
+ * segment <code>k &gt;&gt;&gt; shift</code> at position <code>k &amp; mask</code>.
+ *
+ * The bias feature is not stored in the file, it is appended to every row on the fly.
+ */
+final class MappedRows implements SparseRows {
+
+    private final LongBuffer[]   rowPtr;
+    private final IntBuffer[]    index;
+    private final DoubleBuffer[] value;
+
+    private final int            intShift;
+    private final int            longShift;
+    private final long           intMask;
+    private final long           longMask;
+
+    private final int            biasIndex;
+    private final double         biasValue;
+
+    /**
+     * @param biasIndex the index of the bias feature or 0 if there is no bias feature
+     */
+    MappedRows( FileChannel channel, ProblemFileFormat format, int segmentSize, int biasIndex, double biasValue ) throws IOException {
+        if (Integer.bitCount(segmentSize) != 1 || segmentSize < 8) throw new IllegalArgumentException("segment size must be a power of two >= 8");
+        int shift = Integer.numberOfTrailingZeros(segmentSize);
+        intShift = shift - 2;
+        longShift = shift - 3;
+        intMask = (1L << intShift) - 1;
+        longMask = (1L << longShift) - 1;
+
+        MappedByteBuffer[] segments = map(channel, format.rowPtrOffset, 8L * (format.l + 1), segmentSize);
+        rowPtr = new LongBuffer[segments.length];
+        for (int s = 0; s < segments.length; s++)
+            rowPtr[s] = segments[s].asLongBuffer();
+
+        segments = map(channel, format.indexOffset, 4L * format.nnz, segmentSize);
+        index = new IntBuffer[segments.length];
+        for (int s = 0; s < segments.length; s++)
+            index[s] = segments[s].asIntBuffer();
+
+        segments = map(channel, format.valueOffset, 8L * format.nnz, segmentSize);
+        value = new DoubleBuffer[segments.length];
+        for (int s = 0; s < segments.length; s++)
+            value[s] = segments[s].asDoubleBuffer();
+
+        this.biasIndex = biasIndex;
+        this.biasValue = biasValue;
+    }
+
+    static MappedByteBuffer[] map(FileChannel channel, long offset, long size, int segmentSize) throws IOException {
+        int count = (int)((size + segmentSize - 1) / segmentSize);
+        MappedByteBuffer[] segments = new MappedByteBuffer[count];
+        for (int s = 0; s < count; s++) {
+            long position = (long)s * segmentSize;
+            segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, offset + position, Math.min(segmentSize, size - position));
+            segments[s].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return segments;
+    }
+
+    long rowPtr(int i) {
+        return rowPtr[i >>> longShift].get((int)(i & longMask));
+    }
+
+    /**
+     * @return true if the stored indices of row i are in <code>1 .. n</code> and in strictly ascending order
+     */
+    boolean hasValidIndices(int i, int n) {
+        long k = rowPtr(i);
+        long end = rowPtr(i + 1);
+        int indexBefore = 0;
+        while (k < end) {
+            long chunkEnd = Math.min(end, (k | intMask) + 1);
+            IntBuffer idx = index[(int)(k >>> intShift)];
+            for (int p = (int)(k & intMask), c = (int)(chunkEnd - k); c > 0; p++, c--) {
+                int j = idx.get(p);
+                if (j <= indexBefore || j > n) return false;
+                indexBefore = j;
+            }
+            k = chunkEnd;
+        }
+        return true;
+    }
+
+    public int length(int i) {
+        int length = (int)(rowPtr(i + 1) - rowPtr(i));
+        if (biasIndex > 0) length++;
+        return length;
+    }
+
+    public int copy(int i, int[] index, double[] value) {
+        long k = rowPtr(i);
+        long end = rowPtr(i + 1);
+        int j = 0;
+        while (k < end) {
+            // the value segments hold less entries than the index segments, so their boundaries are the relevant ones.
+            // only absolute gets are used, the buffers are shared between threads
+            long chunkEnd = Math.min(end, (k | longMask) + 1);
+            IntBuffer idx = this.index[(int)(k >>> intShift)];
+            DoubleBuffer val = this.value[(int)(k >>> longShift)];
+            for (int p = (int)(k & intMask), q = (int)(k & longMask), c = (int)(chunkEnd - k); c > 0; p++, q++, c--, j++) {
+                index[j] = idx.get(p);
+                value[j] = val.get(q);
+            }
+            k = chunkEnd;
+        }
+        if (biasIndex > 0) {
+            index[j] = biasIndex;
+            value[j] = biasValue;
+            j++;
+        }
+        return j;
+    }
+
+    public double dot(int i, double[] v) {
+        long k = rowPtr(i);
+        long end = rowPtr(i + 1);
+        double s = 0;
+        while (k < end) {
+            long chunkEnd = Math.min(end, (k | longMask) + 1);
+            IntBuffer idx = index[(int)(k >>> intShift)];
+            DoubleBuffer val = value[(int)(k >>> longShift)];
+            for (int p = (int)(k & intMask), q = (int)(k & longMask), c = (int)(chunkEnd - k); c > 0; p++, q++, c--) {
+                s += v[idx.get(p) - 1] * val.get(q);
+            }
+            k = chunkEnd;
+        }
+        if (biasIndex > 0) s += v[biasIndex - 1] * biasValue;
+        return s;
+    }
+
+    public void axpy(int i, double a, double[] v) {
+        long k = rowPtr(i);
+        long end = rowPtr(i + 1);
+        while (k < end) {
+            long chunkEnd = Math.min(end, (k | longMask) + 1);
+            IntBuffer idx = index[(int)(k >>> intShift)];
+            DoubleBuffer val = value[(int)(k >>> longShift)];
+            for (int p = (int)(k & intMask), q = (int)(k & longMask), c = (int)(chunkEnd - k); c > 0; p++, q++, c--) {
+                v[idx.get(p) - 1] += a * val.get(q);
+            }
+            k = chunkEnd;
+        }
+        if (biasIndex > 0) v[biasIndex - 1] += a * biasValue;
+    }
+
+    public double squaredNorm(int i) {
+        long k = rowPtr(i);
+        long end = rowPtr(i + 1);
+        double s = 0;
+        while (k < end) {
+            long chunkEnd = Math.min(end, (k | longMask) + 1);
+            DoubleBuffer val = value[(int)(k >>> longShift)];
+            for (int q = (int)(k & longMask), c = (int)(chunkEnd - k); c > 0; q++, c--) {
+                double d = val.get(q);
+                s += d * d;
+            }
+            k = chunkEnd;
+        }
+        if (biasIndex > 0) s += biasValue * biasValue;
+        return s;
+    }
+}
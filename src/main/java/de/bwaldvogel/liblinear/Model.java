@@ -38,6 +38,12 @@ public final class Model implements Serializable {
 	/** feature weight array */
 	double[] w;
 
+	/** the mapping of the feature keys or null if the features were not hashed */
+	FeatureHasher featureHasher;
+
+	/** whether the training hit the deadline or was cancelled, not saved */
+	transient boolean stoppedEarly;
+
 	/**
 	 * @return number of classes
 	 */
@@ -52,6 +58,15 @@ public final class Model implements Serializable {
 		return nr_feature;
 	}
 
+	/**
+	 * @return true if the training stopped at the deadline or was cancelled
+	 *         before the solvers converged (see
+	 *         {@link Parameter#setDeadline(long)})
+	 */
+	public boolean isStoppedEarly() {
+		return stoppedEarly;
+	}
+
 	public int[] getLabels() {
 		return copyOf(label, nr_class);
 	}
@@ -65,6 +80,15 @@ public final class Model implements Serializable {
 		return labelName;
 	}
 
+	/**
+	 * @return the hasher that mapped the feature keys of the training data to
+	 *         feature indices, or null if the features were not hashed
+	 * @since 1.9
+	 */
+	public FeatureHasher getFeatureHasher() {
+		return featureHasher;
+	}
+
 	/**
 	 * The nr_feature*nr_class array w gives feature weights. We use one against
 	 * the rest for multi-class classification, so each feature index
@@ -110,6 +134,8 @@ public final class Model implements Serializable {
 		sb.append(" nr_class=").append(nr_class);
 		sb.append(" nr_feature=").append(nr_feature);
 		sb.append(" solverType=").append(solverType);
+		if (featureHasher != null)
+			sb.append(" featureHasher=").append(featureHasher);
 		return sb.toString();
 	}
 
@@ -126,6 +152,8 @@ public final class Model implements Serializable {
 		result = prime * result
 				+ ((solverType == null) ? 0 : solverType.hashCode());
 		result = prime * result + Arrays.hashCode(w);
+		result = prime * result
+				+ ((featureHasher == null) ? 0 : featureHasher.hashCode());
 		return result;
 	}
 
@@ -154,6 +182,11 @@ public final class Model implements Serializable {
 			return false;
 		if (!equals(w, other.w))
 			return false;
+		if (featureHasher == null) {
+			if (other.featureHasher != null)
+				return false;
+		} else if (!featureHasher.equals(other.featureHasher))
+			return false;
 		return true;
 	}
 
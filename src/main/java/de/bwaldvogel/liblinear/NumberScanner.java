@@ -0,0 +1,119 @@
+package de.bwaldvogel.liblinear;
+
+import static de.bwaldvogel.liblinear.Linear.atof;
+import static de.bwaldvogel.liblinear.Linear.atoi;
+
+/**
+ * <p>Parses numbers straight from a character buffer without creating strings.</p>
+ *
+ * Only plain ASCII decimals are handled directly, e.g. <code>-12</code>, <code>0.25</code> or <code>1.5e-3</code>.
+ * Everything else (hexadecimal notation, suffixes like <code>1.0d</code>, too many significant digits, errors, ...)
+ * is handed over to {@link Linear#atoi(String)} and {@link Linear#atof(String)}, so the results and the exceptions
+ * are always exactly the same as the ones of these methods.
+ */
+final class NumberScanner {
+
+    /** the powers of ten which can be represented exactly as double */
+    private static final double[] POWERS_OF_TEN   = new double[23];
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    /** every integer up to 2^53 can be represented exactly as double */
+    private static final long     MAX_EXACT_LONG  = 1L << 53;
+
+    private NumberScanner() {}
+
+    /**
+     * @return <code>atoi(new String(s, begin, end - begin))</code>
+     * @throws NumberFormatException see {@link Linear#atoi(String)}
+     */
+    static int parseInt(char[] s, int begin, int end) {
+        int i = begin;
+        boolean negative = false;
+        if (i < end && (s[i] == '-' || s[i] == '+')) {
+            negative = s[i] == '-';
+            i++;
+        }
+        // at most 9 digits can't overflow
+        if (i == end || end - i > 9) return atoi(new String(s, begin, end - begin));
+
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = s[i] - '0';
+            if (digit < 0 || digit > 9) return atoi(new String(s, begin, end - begin));
+            result = result * 10 + digit;
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * @return <code>atof(new String(s, begin, end - begin))</code>
+     * @throws NumberFormatException see {@link Linear#atof(String)}
+     */
+    static double parseDouble(char[] s, int begin, int end) {
+        int i = begin;
+        boolean negative = false;
+        if (i < end && (s[i] == '-' || s[i] == '+')) {
+            negative = s[i] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean dot = false;
+        for (; i < end; i++) {
+            char c = s[i];
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (mantissa > 0 || c != '0') {
+                    // more than 18 digits could overflow the long
+                    if (++significantDigits > 18) return atof(new String(s, begin, end - begin));
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (dot) exponent--;
+            } else if (c == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) return atof(new String(s, begin, end - begin));
+
+        if (i < end) {
+            if (s[i] != 'e' && s[i] != 'E') return atof(new String(s, begin, end - begin));
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (s[i] == '-' || s[i] == '+')) {
+                negativeExponent = s[i] == '-';
+                i++;
+            }
+            if (i == end || end - i > 4) return atof(new String(s, begin, end - begin));
+            int e = 0;
+            for (; i < end; i++) {
+                int digit = s[i] - '0';
+                if (digit < 0 || digit > 9) return atof(new String(s, begin, end - begin));
+                e = e * 10 + digit;
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+
+        // Both the mantissa and the power of ten are exact, so a single multiplication or division
+        // is correctly rounded, which is the same result that Double.parseDouble computes.
+        double result;
+        if (mantissa == 0) {
+            result = 0;
+        } else if (mantissa > MAX_EXACT_LONG || exponent < -22 || exponent > 22) {
+            return atof(new String(s, begin, end - begin));
+        } else if (exponent < 0) {
+            result = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            result = mantissa * POWERS_OF_TEN[exponent];
+        }
+        return negative ? -result : result;
+    }
+}
@@ -0,0 +1,160 @@
+package de.bwaldvogel.liblinear;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Asynchronous parallel dual coordinate descent for the L2-regularized L1-loss and L2-loss SVM dual problems,
+ * see {@link Linear} <code>solve_l2r_l1l2_svc</code> (PASSCoDe, Hsieh et al., ICML 2015).</p>
+ *
+ * Every outer iteration shuffles the instances and gives each thread a contiguous shard of them. A thread owns the
+ * alpha_i of its shard and adds <code>d*x_i</code> to the shared w with compare-and-set on the bits of the doubles,
+ * so no update of w gets lost ("PASSCoDe-Atomic"). The gradient of an instance may be computed from a w that misses
+ * the updates of the other threads that are in progress, which converges as long as the threads are not too far
+ * apart. The threads meet after every outer iteration for the stopping condition on the projected gradients. There is
+ * no shrinking. The result depends on the scheduling of the threads, so it is not reproducible from run to run. The
+ * solver is therefore only used if it is asked for (see {@link Parameter#setAsynchronousDual(boolean)}).
+ */
+final class ParallelDualCoordinateDescent {
+
+    private final SparseRows x;
+    private final byte[]     y;
+    private final double[]   alpha;
+    private final double[]   QD;
+    private final double[]   diag;
+    private final double[]   upper_bound;
+    private final int        numThreads;
+
+    /**
+     * The arrays are those of <code>solve_l2r_l1l2_svc</code>, alpha is updated in place.
+     */
+    ParallelDualCoordinateDescent( SparseRows x, byte[] y, double[] alpha, double[] QD, double[] diag, double[] upper_bound,
+        int numThreads ) {
+        this.x = x;
+        this.y = y;
+        this.alpha = alpha;
+        this.QD = QD;
+        this.diag = diag;
+        this.upper_bound = upper_bound;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @param w the weights that belong to alpha on entry, the solution on return
+     * @return the number of outer iterations
+     */
+    int solve(double[] w, double eps, int max_iter, Random random, TrainingBudget budget) {
+        final int l = alpha.length;
+        final AtomicLongArray shared_w = new AtomicLongArray(w.length);
+        for (int j = 0; j < w.length; j++)
+            shared_w.set(j, Double.doubleToRawLongBits(w[j]));
+
+        int max_length = 0;
+        for (int i = 0; i < l; i++)
+            max_length = Math.max(max_length, x.length(i));
+
+        final int[] index = new int[l];
+        for (int i = 0; i < l; i++)
+            index[i] = i;
+        final double[] PGmax = new double[numThreads];
+        final double[] PGmin = new double[numThreads];
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numThreads);
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            final int begin = (int)((long)t * l / numThreads);
+            final int end = (int)((long)(t + 1) * l / numThreads);
+            final int[] xi_index = new int[max_length];
+            final double[] xi_value = new double[max_length];
+            tasks.add(new Callable<Void>() {
+
+                public Void call() {
+                    double PGmax_new = Double.NEGATIVE_INFINITY;
+                    double PGmin_new = Double.POSITIVE_INFINITY;
+                    for (int s = begin; s < end; s++) {
+                        int i = index[s];
+                        int length = x.copy(i, xi_index, xi_value);
+
+                        double G = 0;
+                        for (int k = 0; k < length; k++)
+                            G += Double.longBitsToDouble(shared_w.get(xi_index[k] - 1)) * xi_value[k];
+                        G = G * y[i] - 1;
+
+                        double C = upper_bound[i];
+                        G += alpha[i] * diag[i];
+
+                        double PG = 0;
+                        if (alpha[i] == 0) {
+                            if (G < 0) PG = G;
+                        } else if (alpha[i] == C) {
+                            if (G > 0) PG = G;
+                        } else {
+                            PG = G;
+                        }
+
+                        PGmax_new = Math.max(PGmax_new, PG);
+                        PGmin_new = Math.min(PGmin_new, PG);
+
+                        if (Math.abs(PG) > 1.0e-12) {
+                            double alpha_old = alpha[i];
+                            alpha[i] = Math.min(Math.max(alpha[i] - G / QD[i], 0.0), C);
+                            double d = (alpha[i] - alpha_old) * y[i];
+                            if (d != 0) {
+                                for (int k = 0; k < length; k++)
+                                    add(shared_w, xi_index[k] - 1, d * xi_value[k]);
+                            }
+                        }
+                    }
+                    PGmax[thread] = PGmax_new;
+                    PGmin[thread] = PGmin_new;
+                    return null;
+                }
+            });
+        }
+
+        int iter = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            while (iter < max_iter && !budget.shouldStop()) {
+                for (int i = 0; i < l; i++) {
+                    int j = i + random.nextInt(l - i);
+                    int tmp = index[i];
+                    index[i] = index[j];
+                    index[j] = tmp;
+                }
+
+                Utils.invokeAll(executor, tasks, "the dual coordinate descent");
+                iter++;
+
+                double PGmax_new = Double.NEGATIVE_INFINITY;
+                double PGmin_new = Double.POSITIVE_INFINITY;
+                for (int t = 0; t < numThreads; t++) {
+                    PGmax_new = Math.max(PGmax_new, PGmax[t]);
+                    PGmin_new = Math.min(PGmin_new, PGmin[t]);
+                }
+                if (PGmax_new - PGmin_new <= eps) break;
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        for (int j = 0; j < w.length; j++)
+            w[j] = Double.longBitsToDouble(shared_w.get(j));
+        return iter;
+    }
+
+    /** adds delta to w[j] without losing concurrent additions */
+    static void add(AtomicLongArray w, int j, double delta) {
+        while (true) {
+            long current = w.get(j);
+            long next = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + delta);
+            if (w.compareAndSet(j, current, next)) return;
+        }
+    }
+}
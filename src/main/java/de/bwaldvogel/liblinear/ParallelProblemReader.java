@@ -0,0 +1,345 @@
+package de.bwaldvogel.liblinear;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+/**
+ * <p>Reads a file in LibSVM format with several threads.</p>
+ *
+ * The file is split into chunks at line boundaries. The chunks are parsed on a thread pool into
+ * primitive buffers, then the buffers are copied into the final problem in the order of the chunks.
+ * For the compressed storage types, every chunk is compressed while it is parsed and the chunks are
+ * re-encoded into the final problem one after the other, so the uncompressed rows never exist as a whole.
+ * The result is exactly the same as the one of the single-threaded reader. Errors are reported with the
+ * line number in the whole file: only the line counts of the chunks before the first broken chunk are needed.
+ */
+final class ParallelProblemReader {
+
+    /** chunks are not made smaller than this, small files are not worth splitting */
+    static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    private ParallelProblemReader() {}
+
+    /** the parse result of the lines <code>begin .. end-1</code> (in bytes) of the file */
+    private static final class Chunk {
+
+        final long                begin;
+        final long                end;
+
+        CsrProblem                rows;
+        CompressedProblem         compressedRows;
+        int                       lines;
+        InvalidInputDataException error;
+
+        /** position of the first row and the first entry in the final problem */
+        int                       rowOffset;
+        int                       entryOffset;
+
+        Chunk( long begin, long end ) {
+            this.begin = begin;
+            this.end = end;
+        }
+
+        Problem parsed() {
+            return rows != null ? rows : compressedRows;
+        }
+    }
+
+    static Problem read(File file, double bias, StorageType storage, int numThreads, FeatureHasher hasher) throws IOException,
+        InvalidInputDataException {
+        return read(file, bias, storage, numThreads, hasher, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @param hasher maps the feature keys to indices, null if the file contains plain indices
+     */
+    static Problem read(final File file, final double bias, StorageType storage, int numThreads, final FeatureHasher hasher,
+        long minChunkSize) throws IOException, InvalidInputDataException {
+        final boolean compress = storage.isCompressed();
+        // a few more chunks than threads, so that a slow chunk doesn't keep the other threads waiting
+        List<Chunk> chunks = split(file, numThreads * 4L, minChunkSize);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(numThreads, chunks.size()));
+        try {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+            for (final Chunk chunk : chunks) {
+                tasks.add(new Callable<Void>() {
+
+                    public Void call() throws IOException {
+                        parse(file, chunk, hasher, compress);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor, tasks);
+
+            // the first error in the file is the first error of the first broken chunk
+            int lineOffset = 0;
+            int l = 0;
+            int nnz = 0;
+            int max_index = 0;
+            final int extra = bias >= 0 ? 1 : 0;
+            for (Chunk chunk : chunks) {
+                if (chunk.error != null) {
+                    InvalidInputDataException e = chunk.error;
+                    throw new InvalidInputDataException(e.getMessage(), file, lineOffset + e.getLine(), (Exception)e.getCause());
+                }
+                lineOffset += chunk.lines;
+
+                Problem rows = chunk.parsed();
+                chunk.rowOffset = l;
+                chunk.entryOffset = nnz;
+                l += rows.l;
+                max_index = Math.max(max_index, rows.n);
+                if (compress) continue;
+                long entries = (long)nnz + chunk.rows.getRowPtr()[rows.l] + (long)extra * rows.l;
+                if (entries > Integer.MAX_VALUE - 8) throw new InvalidInputDataException("too many non-zero entries", file, lineOffset);
+                nnz = (int)entries;
+            }
+
+            if (hasher != null) max_index = hasher.getDimension();
+            final int n = max_index + extra;
+            final int[] y = new int[l];
+            tasks.clear();
+
+            if (storage == StorageType.FEATURE_NODES) {
+                final Feature[][] x = new Feature[l][];
+                for (final Chunk chunk : chunks) {
+                    tasks.add(new Callable<Void>() {
+
+                        public Void call() {
+                            copyFeatures(chunk, y, x, n, bias);
+                            return null;
+                        }
+                    });
+                }
+                invokeAll(executor, tasks);
+
+                Problem prob = new Problem();
+                prob.l = l;
+                prob.n = n;
+                prob.y = y;
+                prob.x = x;
+                prob.bias = bias;
+                return prob;
+            }
+
+            if (compress) {
+                // the bias feature is appended by the compressed rows
+                CompressedRowsWriter writer = new CompressedRowsWriter(storage == StorageType.COMPRESSED_DICTIONARY);
+                for (Chunk chunk : chunks) {
+                    CompressedProblem rows = chunk.compressedRows;
+                    System.arraycopy(rows.y, 0, y, chunk.rowOffset, rows.l);
+                    writer.addRows(rows.rows(), rows.l, false);
+                    chunk.compressedRows = null;
+                }
+                return new CompressedProblem(writer.build(bias >= 0 ? n : 0, bias), y, n, bias);
+            }
+
+            final int[] rowPtr = new int[l + 1];
+            final int[] index = new int[nnz];
+            final double[] value = new double[nnz];
+            for (final Chunk chunk : chunks) {
+                tasks.add(new Callable<Void>() {
+
+                    public Void call() {
+                        copyRows(chunk, y, rowPtr, index, value, n, bias);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor, tasks);
+            return ProblemFileReader.createProblem(rowPtr, index, value, y, n, bias, storage);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) throws IOException {
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading the problem");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * splits the file into at most <code>maxChunks</code> chunks, every chunk ends after a <code>'\n'</code>
+     * or at the end of the file
+     */
+    private static List<Chunk> split(File file, long maxChunks, long minChunkSize) throws IOException {
+        long size = file.length();
+        int count = (int)Math.max(1, Math.min(maxChunks, size / minChunkSize));
+        List<Chunk> chunks = new ArrayList<Chunk>(count);
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] buffer = new byte[8192];
+            long begin = 0;
+            for (int c = 1; c < count && begin < size; c++) {
+                long end = Math.max(begin, c * size / count);
+                // move the end behind the next line feed
+                raf.seek(end);
+                boolean found = false;
+                int read;
+                while (!found && (read = raf.read(buffer)) > 0) {
+                    for (int k = 0; k < read; k++) {
+                        end++;
+                        if (buffer[k] == '\n') {
+                            found = true;
+                            break;
+                        }
+                    }
+                }
+                if (!found) break;
+                chunks.add(new Chunk(begin, end));
+                begin = end;
+            }
+            if (begin < size || chunks.isEmpty()) chunks.add(new Chunk(begin, size));
+        } finally {
+            raf.close();
+        }
+        return chunks;
+    }
+
+    /**
+     * @param compress keeps the rows as {@link StorageType#COMPRESSED} instead of CSR
+     */
+    private static void parse(File file, Chunk chunk, FeatureHasher hasher, boolean compress) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            long skip = chunk.begin;
+            while (skip > 0) {
+                long skipped = in.skip(skip);
+                if (skipped <= 0) throw new IOException("unexpected end of file " + file);
+                skip -= skipped;
+            }
+            // the same decoding as the FileReader in Train.readProblem
+            LineReader reader = new LineReader(new InputStreamReader(new RangeInputStream(in, chunk.end - chunk.begin)));
+
+            ProblemBuilder builder = new ProblemBuilder(-1, compress ? StorageType.COMPRESSED : StorageType.CSR);
+            LineParser parser = new LineParser(hasher);
+            while (reader.next()) {
+                chunk.lines++;
+                try {
+                    parser.parse(reader.buf, reader.start, reader.end, file, chunk.lines);
+                } catch (InvalidInputDataException e) {
+                    chunk.error = e;
+                    return;
+                }
+                builder.beginRow(parser.label);
+                for (int j = 0; j < parser.length; j++)
+                    builder.add(parser.indices[j], parser.values[j]);
+                builder.endRow();
+            }
+            if (compress)
+                chunk.compressedRows = builder.buildCompressed();
+            else
+                chunk.rows = builder.build();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void copyRows(Chunk chunk, int[] y, int[] rowPtr, int[] index, double[] value, int n, double bias) {
+        CsrProblem rows = chunk.rows;
+        int[] chunkPtr = rows.getRowPtr();
+        int[] chunkIndex = rows.getIndex();
+        double[] chunkValue = rows.getValue();
+
+        int k = chunk.entryOffset;
+        for (int r = 0; r < rows.l; r++) {
+            int i = chunk.rowOffset + r;
+            y[i] = rows.y[r];
+            int length = chunkPtr[r + 1] - chunkPtr[r];
+            System.arraycopy(chunkIndex, chunkPtr[r], index, k, length);
+            System.arraycopy(chunkValue, chunkPtr[r], value, k, length);
+            k += length;
+            if (bias >= 0) {
+                index[k] = n;
+                value[k] = bias;
+                k++;
+            }
+            rowPtr[i + 1] = k;
+        }
+    }
+
+    private static void copyFeatures(Chunk chunk, int[] y, Feature[][] x, int n, double bias) {
+        CsrProblem rows = chunk.rows;
+        int[] chunkPtr = rows.getRowPtr();
+        int[] chunkIndex = rows.getIndex();
+        double[] chunkValue = rows.getValue();
+
+        for (int r = 0; r < rows.l; r++) {
+            int i = chunk.rowOffset + r;
+            y[i] = rows.y[r];
+            int length = chunkPtr[r + 1] - chunkPtr[r];
+            x[i] = new Feature[bias >= 0 ? length + 1 : length];
+            for (int j = 0, k = chunkPtr[r]; j < length; j++, k++)
+                x[i][j] = new FeatureNode(chunkIndex[k], chunkValue[k]);
+            if (bias >= 0) x[i][length] = new FeatureNode(n, bias);
+        }
+    }
+
+    /** reads at most <code>remaining</code> bytes of the underlying stream */
+    private static final class RangeInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        RangeInputStream( InputStream in, long remaining ) {
+            super(in);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = super.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int read = super.read(b, off, (int)Math.min(len, remaining));
+            if (read > 0) remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int)Math.min(super.available(), remaining);
+        }
+    }
+}
@@ -12,6 +12,20 @@ public final class Parameter {
 	double[] weight = null;
 
 	int[] weightLabel = null;
+
+	int numThreads = 1;
+
+	int maxIterations = 0;
+
+	long deadline = 0;
+
+	CancellationToken cancellationToken;
+
+	boolean preconditioning = false;
+
+	boolean asynchronousDual = false;
+
+	boolean asynchronousL1 = false;
 	private Utils utils;
 
 	public Parameter(SolverType solverType, double C, double eps) {
@@ -109,4 +123,154 @@ public final class Parameter {
 	public SolverType getSolverType() {
 		return solverType;
 	}
+
+	/**
+	 * the number of threads that train the binary problems of a
+	 * one-vs-rest model (more than two classes, all solvers except
+	 * {@link SolverType#MCSVM_CS}) and that compute the matrix-vector
+	 * products of {@link SolverType#L2R_LR},
+	 * {@link SolverType#L2R_L2LOSS_SVC} and the quasi-Newton solvers
+	 * ({@link SolverType#L2R_LR_LBFGS},
+	 * {@link SolverType#L2R_L2LOSS_SVC_LBFGS} and
+	 * {@link SolverType#L1R_LR_OWLQN}). The products are summed up in a
+	 * different order with several threads, so the weights of these
+	 * solvers may differ in the last digits. The dual SVC solvers only use
+	 * the threads for binary problems if
+	 * {@link #setAsynchronousDual(boolean)} is set, the L1-regularized
+	 * coordinate descent solvers only if {@link #setAsynchronousL1(boolean)}
+	 * is set. (default 1)
+	 * 
+	 * @since 1.9
+	 */
+	public void setNumThreads(int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("numThreads must be positive");
+		this.numThreads = numThreads;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * the maximal number of outer iterations of the solvers, 0 for the
+	 * defaults of the solvers (1000 for most solvers, 100 Newton iterations
+	 * for {@link SolverType#L1R_LR} and 100000 for
+	 * {@link SolverType#MCSVM_CS})
+	 * 
+	 * @since 1.9
+	 */
+	public void setMaxIterations(int maxIterations) {
+		if (maxIterations < 0)
+			throw new IllegalArgumentException("maxIterations must not be < 0");
+		this.maxIterations = maxIterations;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * the time (see {@link System#currentTimeMillis()}) at which the
+	 * training stops and returns the weights reached so far, 0 for no
+	 * deadline. The model tells whether it stopped early (see
+	 * {@link Model#isStoppedEarly()}).
+	 * 
+	 * @since 1.9
+	 */
+	public void setDeadline(long deadline) {
+		if (deadline < 0)
+			throw new IllegalArgumentException("deadline must not be < 0");
+		this.deadline = deadline;
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * a token that stops the training like the deadline once it is
+	 * cancelled, null for none
+	 * 
+	 * @see #setDeadline(long)
+	 * @since 1.9
+	 */
+	public void setCancellationToken(CancellationToken cancellationToken) {
+		this.cancellationToken = cancellationToken;
+	}
+
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+
+	/**
+	 * solves the Newton steps of {@link SolverType#L2R_LR} and
+	 * {@link SolverType#L2R_L2LOSS_SVC} by conjugate gradient with a
+	 * diagonal preconditioner, which needs fewer Hessian-vector products on
+	 * badly scaled features (default false)
+	 * 
+	 * @since 1.9
+	 */
+	public void setPreconditioning(boolean preconditioning) {
+		this.preconditioning = preconditioning;
+	}
+
+	public boolean isPreconditioning() {
+		return preconditioning;
+	}
+
+	/**
+	 * solves large binary problems of {@link SolverType#L2R_L2LOSS_SVC_DUAL}
+	 * and {@link SolverType#L2R_L1LOSS_SVC_DUAL} by asynchronous parallel
+	 * coordinate descent on {@link #getNumThreads()} threads. It has no
+	 * shrinking and its result depends on the scheduling of the threads, so
+	 * the weights are not reproducible from run to run and differ from the
+	 * sequential solver within the stopping tolerance. (default false)
+	 * 
+	 * @since 1.9
+	 */
+	public void setAsynchronousDual(boolean asynchronousDual) {
+		this.asynchronousDual = asynchronousDual;
+	}
+
+	public boolean isAsynchronousDual() {
+		return asynchronousDual;
+	}
+
+	/**
+	 * solves large problems of {@link SolverType#L1R_L2LOSS_SVC} and
+	 * {@link SolverType#L1R_LR} by parallel coordinate descent over the
+	 * features (Shotgun) on up to {@link #getNumThreads()} threads, fewer if
+	 * the features are strongly correlated. The threads update the shared
+	 * per-instance vectors concurrently and there is no shrinking, so the
+	 * result depends on the scheduling of the threads: the weights are not
+	 * reproducible from run to run and differ from the sequential solver
+	 * within the stopping tolerance. (default false)
+	 * 
+	 * @since 1.9
+	 */
+	public void setAsynchronousL1(boolean asynchronousL1) {
+		this.asynchronousL1 = asynchronousL1;
+	}
+
+	public boolean isAsynchronousL1() {
+		return asynchronousL1;
+	}
+
+	/**
+	 * @return a copy of this parameter with another C
+	 */
+	Parameter withC(double C) {
+		Parameter copy = new Parameter(solverType, C, eps);
+		copy.weight = weight;
+		copy.weightLabel = weightLabel;
+		copy.numThreads = numThreads;
+		copy.maxIterations = maxIterations;
+		copy.deadline = deadline;
+		copy.cancellationToken = cancellationToken;
+		copy.preconditioning = preconditioning;
+		copy.asynchronousDual = asynchronousDual;
+		copy.asynchronousL1 = asynchronousL1;
+		return copy;
+	}
 }
@@ -1,13 +1,9 @@
 package de.bwaldvogel.liblinear;
 
-import static de.bwaldvogel.liblinear.Linear.atof;
 import static de.bwaldvogel.liblinear.Linear.atoi;
 import static de.bwaldvogel.liblinear.Linear.closeQuietly;
 import static de.bwaldvogel.liblinear.Linear.printf;
 
-import libsvm.svm.model.Feature;
-import libsvm.svm.model.FeatureNode;
-
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -17,20 +13,13 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
-import java.util.ArrayList;
 import java.util.Formatter;
-import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
-import java.util.regex.Pattern;
 
 
 public class Predict {
 
     private static boolean       flag_predict_probability = false;
 
-    private  final Pattern COLON                    = Pattern.compile(":");
-    
     private Linear linear;
     
     public Predict()
@@ -54,7 +43,11 @@ public class Predict {
         else
             n = nr_feature;
 
+        // the keys are hashed exactly like in the training data
+        FeatureHasher hasher = model.getFeatureHasher();
+
         Formatter out = new Formatter(writer);
+        double[] dec_values = new double[nr_class];
 
         if (flag_predict_probability) {
             if (!model.isProbabilityModel()) {
@@ -71,57 +64,78 @@ public class Predict {
         }
 
 
-        String line = null;
-        while ((line = reader.readLine()) != null) {
-            List<Feature> x = new ArrayList<Feature>();
-            StringTokenizer st = new StringTokenizer(line, " \t\n");
-            int target_label;
-            try {
-                String label = st.nextToken();
-                target_label = atoi(label);
-            } catch (NoSuchElementException e) {
-                throw new RuntimeException("Wrong input format at line " + (total + 1), e);
-            }
+        // the features of the current line, the bias feature is appended
+        int[] index = new int[16];
+        double[] value = new double[16];
+
+        LineReader lines = new LineReader(reader);
+        while (lines.next()) {
+            char[] line = lines.buf;
+            int end = lines.end;
 
-            while (st.hasMoreTokens()) {
-                String[] split = COLON.split(st.nextToken(), 2);
-                if (split == null || split.length < 2) {
+            int i = skipWhitespace(line, lines.start, end);
+            if (i == end) {
+                throw new RuntimeException("Wrong input format at line " + (total + 1));
+            }
+            int tokenEnd = tokenEnd(line, i, end);
+            int target_label = NumberScanner.parseInt(line, i, tokenEnd);
+
+            int length = 0;
+            i = skipWhitespace(line, tokenEnd, end);
+            while (i < end) {
+                tokenEnd = tokenEnd(line, i, end);
+                int colon = i;
+                while (colon < tokenEnd && line[colon] != ':')
+                    colon++;
+                if (colon == tokenEnd) {
                     throw new RuntimeException("Wrong input format at line " + (total + 1));
                 }
 
                 try {
-                    int idx = atoi(split[0]);
-                    double val = atof(split[1]);
+                    int idx;
+                    double val = NumberScanner.parseDouble(line, colon + 1, tokenEnd);
+                    if (hasher != null) {
+                        // colliding keys simply add up in the decision values
+                        long hash = FeatureHasher.hash(line, i, colon);
+                        idx = hasher.indexOf(hash);
+                        val *= hasher.signOf(hash);
+                    } else {
+                        idx = NumberScanner.parseInt(line, i, colon);
+                    }
 
                     // feature indices larger than those in training are not used
                     if (idx <= nr_feature) {
-                        Feature node = new FeatureNode(idx, val);
-                        x.add(node);
+                        if (length + 1 >= index.length) {
+                            index = copyOf(index, index.length * 2);
+                            value = copyOf(value, value.length * 2);
+                        }
+                        index[length] = idx;
+                        value[length] = val;
+                        length++;
                     }
                 } catch (NumberFormatException e) {
                     throw new RuntimeException("Wrong input format at line " + (total + 1), e);
                 }
+                i = skipWhitespace(line, tokenEnd, end);
             }
 
             if (model.bias >= 0) {
-                Feature node = new FeatureNode(n, model.bias);
-                x.add(node);
+                index[length] = n;
+                value[length] = model.bias;
+                length++;
             }
 
-            Feature[] nodes = new Feature[x.size()];
-            nodes = x.toArray(nodes);
-
             int predict_label;
 
             if (flag_predict_probability) {
                 assert prob_estimates != null;
-                predict_label = linear.predictProbability(model, nodes, prob_estimates);
+                predict_label = linear.predictProbability(model, index, value, length, prob_estimates);
                 printf(out, "%d", predict_label);
                 for (int j = 0; j < model.nr_class; j++)
                     printf(out, " %g", prob_estimates[j]);
                 printf(out, "\n");
             } else {
-                predict_label = linear.predict(model, nodes);
+                predict_label = linear.predictValues(model, index, value, length, dec_values);
                 printf(out, "%d\n", predict_label);
             }
 
@@ -133,6 +147,35 @@ public class Predict {
         System.out.printf("Accuracy = %g%% (%d/%d)%n", (double)correct / total * 100, correct, total);
     }
 
+    /** the tokens of a line are separated like by <code>new StringTokenizer(line, " \t\n")</code> */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n';
+    }
+
+    private static int skipWhitespace(char[] line, int i, int end) {
+        while (i < end && isWhitespace(line[i]))
+            i++;
+        return i;
+    }
+
+    private static int tokenEnd(char[] line, int i, int end) {
+        while (i < end && !isWhitespace(line[i]))
+            i++;
+        return i;
+    }
+
+    private static int[] copyOf(int[] original, int newLength) {
+        int[] copy = new int[newLength];
+        System.arraycopy(original, 0, copy, 0, original.length);
+        return copy;
+    }
+
+    private static double[] copyOf(double[] original, int newLength) {
+        double[] copy = new double[newLength];
+        System.arraycopy(original, 0, copy, 0, original.length);
+        return copy;
+    }
+
     private static  void exit_with_help() {
         System.out.printf("Usage: predict [options] test_file model_file output_file%n" + "options:%n"
             + "-b probability_estimates: whether to output probability estimates, 0 or 1 (default 0)%n");
@@ -53,6 +53,89 @@ public class Problem {
      */
     public double      bias;
 
+    /**
+     * the mapping of the feature keys to the indices <code>1 .. 2^bits</code> if the features were hashed, it is
+     * stored in the trained {@link Model}
+     *
+     * @since 1.9
+     */
+    public FeatureHasher featureHasher;
+
+    /**
+     * Instance weights or null if every instance has the weight 1. The cost C of instance i is multiplied by W[i],
+     * so an instance with the weight k is the same as k copies of the instance.
+     *
+     * @see #collapseDuplicates(Problem)
+     * @since 1.9
+     */
+    public double[]    W;
+
+    /**
+     * alternative storage of the instances, takes precedence over {@link #x} if set
+     *
+     * @see CsrProblem
+     */
+    SparseRows         rows;
+
+    /**
+     * @return row-wise access to the instances, either backed by {@link #x} or by the primitive storage
+     */
+    SparseRows rows() {
+        if (rows != null) return rows;
+        return new FeatureArrayRows(x);
+    }
+
+    /**
+     * the cached statistics of the instances and the {@link #rows}, {@link #l} and {@link #bias} they belong to
+     *
+     * @see #rowStatistics()
+     */
+    private RowStatistics statistics;
+    private SparseRows    statisticsRows;
+    private int           statisticsL;
+    private double        statisticsBias;
+
+    /**
+     * The statistics are computed on first use and cached until {@link #rows}, {@link #l} or {@link #bias} change.
+     * They are not cached for the feature nodes of {@link #x}, because those may be modified in place between two
+     * trainings.
+     *
+     * @return the label-independent statistics of the instances
+     */
+    RowStatistics rowStatistics() {
+        RowStatistics s = statistics;
+        if (s != null && rows != null && rows == statisticsRows && l == statisticsL && Double.compare(bias, statisticsBias) == 0) {
+            return s;
+        }
+        s = RowStatistics.compute(rows(), l);
+        setRowStatistics(s);
+        return s;
+    }
+
+    /**
+     * caches statistics that are already known for the current {@link #rows}, e.g. collected while the rows were built
+     */
+    void setRowStatistics(RowStatistics s) {
+        statistics = rows != null ? s : null;
+        statisticsRows = rows;
+        statisticsL = l;
+        statisticsBias = bias;
+    }
+
+    /**
+     * Merges instances with the same label and the same features into one instance whose weight (see {@link #W})
+     * is the sum of their weights. The solvers minimize the same objective on the result, but visit every distinct
+     * instance only once per pass. The instances are not copied, the result shares the storage of prob.
+     * In {@link Linear#crossValidation(Problem, Parameter, int, int[])} all copies of an instance end up in the same fold.
+     *
+     * @return a problem with the distinct instances in the order of their first occurrence,
+     *         or prob itself if there are no duplicates
+     * @since 1.9
+     */
+    public static Problem collapseDuplicates(Problem prob) {
+        return DuplicateRows.collapse(prob);
+    }
+
     /**
      * see {@link Train#readProblem(File, double)}
      */
@@ -0,0 +1,478 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * <p>Builds a {@link CsrProblem} or a {@link CompressedProblem} instance by instance, e.g. while consuming a stream of training data.</p>
+ *
+ * The instances are appended to growable primitive buffers, there are no {@link libsvm.svm.model.Feature}
+ * objects or boxed labels. The bias feature is handled like in {@link Train#readProblem(java.io.File, double)}:
+ * if bias &gt;= 0, one slot is reserved at the end of every instance which is filled with the feature
+ * <code>(max_index + 1, bias)</code> once the largest index is known. So {@link #build()} can hand
+ * the buffers over to the problem without copying them. The compressed storage types encode every instance
+ * as soon as it is finished and append the bias feature on the fly.
+ *
+ * <pre>
+ * ProblemBuilder builder = new ProblemBuilder(1.0);
+ * builder.beginRow(label);
+ * builder.add(index, value); // for every feature, in ascending order of the indices
+ * builder.endRow();
+ * ...
+ * CsrProblem prob = builder.build();
+ * </pre>
+ *
+ * The compressed storage types are built with {@link #buildCompressed()} instead.
+ *
+ * With a {@link FeatureHasher}, the features are given as keys ({@link #addHashed(String, double)},
+ * {@link #addHashed(long, double)}) in any order. They are mapped to the indices <code>1 .. 2^bits</code>
+ * and sorted when the instance is finished, colliding keys are added up.
+ *
+ * A builder is not thread-safe and can only build one problem.
+ *
+ * @since 1.9
+ */
+public final class ProblemBuilder {
+
+    private final double      bias;
+    private final StorageType storage;
+    private final FeatureHasher hasher;
+    /** false if the indices have already been hashed, e.g. by the {@link LineParser} */
+    private final boolean     hashIndices;
+
+    private int               l          = 0;
+    private int               nnz        = 0;
+    private int               max_index  = 0;
+    private int               indexBefore;
+    private boolean           inRow      = false;
+    private boolean           built      = false;
+
+    private int[]             y          = new int[16];
+    private int[]             rowPtr     = new int[17];
+    // the statistics of the rows without the bias feature, see RowStatistics
+    private double[]          squaredNorm = new double[16];
+    private int[]             rowLength  = new int[16];
+    private int[]             index      = new int[64];
+    private double[]          value;
+    private float[]           floatValue;
+
+    // StorageType.CSR_BINARY: values of the current row and of all non-binary rows
+    private double[]          rowValue;
+    private int[]             valuePtr;
+    private int               valueCount = 0;
+
+    // StorageType.COMPRESSED*: index and value only hold the current row
+    private CompressedRowsWriter compressed;
+
+    // feature hashing: the hashed features of the current row
+    private int[]             hashedIndex;
+    private double[]          hashedValue;
+    private int               hashedLength;
+
+    /**
+     * creates a builder for a problem with double precision values, see {@link StorageType#CSR}
+     *
+     * @param bias see {@link Problem#bias}
+     */
+    public ProblemBuilder( double bias ) {
+        this(bias, StorageType.CSR);
+    }
+
+    /**
+     * @param bias see {@link Problem#bias}
+     * @param storage {@link StorageType#CSR}, {@link StorageType#CSR_FLOAT}, {@link StorageType#CSR_BINARY},
+     *            {@link StorageType#COMPRESSED} or {@link StorageType#COMPRESSED_DICTIONARY}
+     * @throws IllegalArgumentException if the storage type is {@link StorageType#FEATURE_NODES}
+     */
+    public ProblemBuilder( double bias, StorageType storage ) {
+        this(bias, storage, null);
+    }
+
+    /**
+     * creates a builder that hashes the features of every instance with the given hasher.
+     * The problem has <code>2^bits</code> features (plus the bias feature) and records the hasher.
+     *
+     * @param bias see {@link Problem#bias}
+     * @param storage see {@link #ProblemBuilder(double, StorageType)}
+     * @param hasher maps the feature keys to indices, null for no hashing
+     * @throws IllegalArgumentException if the storage type is {@link StorageType#FEATURE_NODES}
+     */
+    public ProblemBuilder( double bias, StorageType storage, FeatureHasher hasher ) {
+        this(bias, storage, hasher, true);
+    }
+
+    /**
+     * @param hashIndices false if the given indices are already hashed, the hasher then only determines the
+     *            number of features
+     */
+    ProblemBuilder( double bias, StorageType storage, FeatureHasher hasher, boolean hashIndices ) {
+        this.bias = bias;
+        this.storage = storage;
+        this.hasher = hasher;
+        this.hashIndices = hasher != null && hashIndices;
+        if (this.hashIndices) {
+            hashedIndex = new int[16];
+            hashedValue = new double[16];
+        }
+        switch (storage) {
+            case CSR:
+                value = new double[index.length];
+                break;
+            case CSR_FLOAT:
+                floatValue = new float[index.length];
+                break;
+            case CSR_BINARY:
+                rowValue = new double[16];
+                valuePtr = new int[16];
+                value = new double[0];
+                break;
+            case COMPRESSED:
+            case COMPRESSED_DICTIONARY:
+                value = new double[index.length];
+                compressed = new CompressedRowsWriter(storage == StorageType.COMPRESSED_DICTIONARY);
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported storage type: " + storage);
+        }
+    }
+
+    /**
+     * starts a new instance with the given label
+     *
+     * @throws IllegalStateException if the previous instance hasn't been finished
+     */
+    public void beginRow(int label) {
+        checkNotBuilt();
+        if (inRow) throw new IllegalStateException("the previous instance hasn't been finished");
+        inRow = true;
+        if (l == y.length) {
+            y = grow(y, l + 1);
+            rowPtr = grow(rowPtr, l + 2);
+            squaredNorm = grow(squaredNorm, l + 1);
+            rowLength = grow(rowLength, l + 1);
+        }
+        if (valuePtr != null && l == valuePtr.length) valuePtr = grow(valuePtr, l + 1);
+        y[l] = label;
+        squaredNorm[l] = 0;
+        rowLength[l] = 0;
+        indexBefore = 0;
+        hashedLength = 0;
+    }
+
+    /**
+     * appends a feature to the current instance. With a {@link FeatureHasher}, the index is hashed like a long key,
+     * so any index is accepted and the features can be given in any order.
+     *
+     * @throws IllegalArgumentException without a {@link FeatureHasher}, if the index is not larger than the previous
+     *             index of the instance
+     * @throws IllegalStateException if no instance has been started
+     */
+    public void add(int featureIndex, double featureValue) {
+        if (!inRow) throw new IllegalStateException("no instance has been started");
+        if (hashIndices) {
+            addHash(FeatureHasher.hash(featureIndex), featureValue);
+            return;
+        }
+        append(featureIndex, featureValue);
+    }
+
+    /**
+     * appends a feature with a string key to the current instance
+     *
+     * @throws IllegalStateException if no instance has been started or if the builder has no {@link FeatureHasher}
+     */
+    public void addHashed(String key, double featureValue) {
+        checkHashing();
+        addHash(FeatureHasher.hash(key), featureValue);
+    }
+
+    /**
+     * appends a feature with a long key to the current instance
+     *
+     * @throws IllegalStateException if no instance has been started or if the builder has no {@link FeatureHasher}
+     */
+    public void addHashed(long key, double featureValue) {
+        checkHashing();
+        addHash(FeatureHasher.hash(key), featureValue);
+    }
+
+    private void checkHashing() {
+        if (!inRow) throw new IllegalStateException("no instance has been started");
+        if (!hashIndices) throw new IllegalStateException("the builder has no feature hasher");
+    }
+
+    private void addHash(long hash, double featureValue) {
+        if (hashedLength == hashedIndex.length) {
+            hashedIndex = grow(hashedIndex, hashedLength + 1);
+            hashedValue = grow(hashedValue, hashedLength + 1);
+        }
+        hashedIndex[hashedLength] = hasher.indexOf(hash);
+        hashedValue[hashedLength] = hasher.signOf(hash) * featureValue;
+        hashedLength++;
+    }
+
+    private void append(int featureIndex, double featureValue) {
+        if (featureIndex <= indexBefore) throw new IllegalArgumentException("feature nodes must be sorted by index in ascending order");
+        indexBefore = featureIndex;
+        ensureCapacity(nnz + 1);
+        index[nnz] = featureIndex;
+        switch (storage) {
+            case CSR:
+            case COMPRESSED:
+            case COMPRESSED_DICTIONARY:
+                value[nnz] = featureValue;
+                break;
+            case CSR_FLOAT:
+                floatValue[nnz] = (float)featureValue;
+                // the statistics must match the stored value
+                featureValue = floatValue[nnz];
+                break;
+            default:
+                int k = nnz - rowPtr[l];
+                if (k + 1 >= rowValue.length) rowValue = grow(rowValue, k + 2);
+                rowValue[k] = featureValue;
+        }
+        nnz++;
+        max_index = Math.max(max_index, featureIndex);
+        squaredNorm[l] += featureValue * featureValue;
+        rowLength[l]++;
+    }
+
+    /**
+     * finishes the current instance
+     *
+     * @throws IllegalStateException if no instance has been started
+     */
+    public void endRow() {
+        if (!inRow) throw new IllegalStateException("no instance has been started");
+        if (hashIndices) {
+            int length = FeatureHasher.sortAndMerge(hashedIndex, hashedValue, hashedLength);
+            for (int k = 0; k < length; k++)
+                append(hashedIndex[k], hashedValue[k]);
+            hashedLength = 0;
+        }
+        inRow = false;
+        if (compressed != null) {
+            compressed.addRow(index, value, 0, nnz);
+            nnz = 0;
+            l++;
+            rowPtr[l] = nnz;
+            return;
+        }
+        if (bias >= 0) {
+            // reserve the slot for the bias feature, see build()
+            ensureCapacity(nnz + 1);
+            nnz++;
+        }
+        if (storage == StorageType.CSR_BINARY) {
+            endBinaryRow();
+        }
+        l++;
+        rowPtr[l] = nnz;
+    }
+
+    private void endBinaryRow() {
+        int length = nnz - rowPtr[l];
+        int features = bias >= 0 ? length - 1 : length;
+        boolean binary = true;
+        for (int k = 0; k < features; k++) {
+            if (rowValue[k] != 1) {
+                binary = false;
+                break;
+            }
+        }
+        if (binary) {
+            valuePtr[l] = -1;
+            return;
+        }
+
+        if (valueCount + length > value.length || valueCount + length < 0) {
+            value = grow(value, valueCount + length);
+        }
+        System.arraycopy(rowValue, 0, value, valueCount, features);
+        valuePtr[l] = valueCount;
+        valueCount += length;
+    }
+
+    /**
+     * appends the instance given by the first <code>length</code> entries of <code>index</code> and <code>value</code>
+     *
+     * @throws IllegalArgumentException if the indices are not sorted in ascending order
+     */
+    public void addRow(int label, int[] index, double[] value, int length) {
+        int maxIndexBefore = max_index;
+        beginRow(label);
+        try {
+            for (int j = 0; j < length; j++)
+                add(index[j], value[j]);
+        } catch (IllegalArgumentException e) {
+            // drop the broken instance
+            nnz = rowPtr[l];
+            max_index = maxIndexBefore;
+            squaredNorm[l] = 0;
+            rowLength[l] = 0;
+            inRow = false;
+            throw e;
+        }
+        endRow();
+    }
+
+    /**
+     * @return the number of finished instances
+     */
+    public int size() {
+        return l;
+    }
+
+    /**
+     * @return the largest feature index seen so far (without the bias feature)
+     */
+    public int getMaxIndex() {
+        return max_index;
+    }
+
+    /**
+     * Creates the problem. The buffers are handed over to the problem, so the builder can't be used anymore.
+     *
+     * @throws IllegalStateException if the storage type is compressed, if the current instance hasn't been finished
+     *             or if the problem has already been built
+     */
+    public CsrProblem build() {
+        if (compressed != null) throw new IllegalStateException("the problem is compressed, use buildCompressed()");
+        int max_index_seen = finish();
+        return complete(createCsrProblem(), max_index_seen);
+    }
+
+    /**
+     * Creates the problem for {@link StorageType#COMPRESSED} or {@link StorageType#COMPRESSED_DICTIONARY}.
+     * The builder can't be used anymore.
+     *
+     * @throws IllegalStateException if the storage type isn't compressed, if the current instance hasn't been finished
+     *             or if the problem has already been built
+     */
+    public CompressedProblem buildCompressed() {
+        if (compressed == null) throw new IllegalStateException("the problem isn't compressed, use build()");
+        int max_index_seen = finish();
+        int[] labels = y.length == l ? y : copyOf(y, l);
+        int n = bias >= 0 ? max_index + 1 : max_index;
+        return complete(new CompressedProblem(compressed.build(bias >= 0 ? n : 0, bias), labels, n, bias), max_index_seen);
+    }
+
+    /**
+     * @return the largest index that occurred, max_index becomes the number of features
+     */
+    private int finish() {
+        checkNotBuilt();
+        if (inRow) throw new IllegalStateException("the current instance hasn't been finished");
+        built = true;
+        int max_index_seen = max_index;
+        // the number of features doesn't depend on the data
+        if (hasher != null) max_index = hasher.getDimension();
+        return max_index_seen;
+    }
+
+    private <P extends Problem> P complete(P prob, int max_index_seen) {
+        prob.featureHasher = hasher;
+        prob.setRowStatistics(createStatistics(max_index_seen, prob.n));
+        return prob;
+    }
+
+    /**
+     * @param max_index_seen the largest index that occurred, also with a {@link FeatureHasher}
+     * @param n the number of features of the problem
+     * @return the statistics that were collected while the rows were added, plus the bias feature
+     */
+    private RowStatistics createStatistics(int max_index_seen, int n) {
+        double[] norms = squaredNorm.length == l ? squaredNorm : copyOf(squaredNorm, l);
+        int[] lengths = rowLength.length == l ? rowLength : copyOf(rowLength, l);
+        // the largest index that occurs, like in RowStatistics.compute
+        int maxIndex = max_index_seen;
+        if (bias >= 0) {
+            double b = storage == StorageType.CSR_FLOAT ? (float)bias : bias;
+            for (int i = 0; i < l; i++) {
+                norms[i] += b * b;
+                lengths[i]++;
+            }
+            // every row ends with the bias feature n
+            if (l > 0) maxIndex = n;
+        }
+        return new RowStatistics(norms, lengths, maxIndex);
+    }
+
+    private CsrProblem createCsrProblem() {
+        int[] labels = y.length == l ? y : copyOf(y, l);
+        int n = max_index;
+        if (bias >= 0) {
+            n++;
+            for (int i = 0; i < l; i++) {
+                int last = rowPtr[i + 1] - 1;
+                index[last] = n;
+                switch (storage) {
+                    case CSR:
+                        value[last] = bias;
+                        break;
+                    case CSR_FLOAT:
+                        floatValue[last] = (float)bias;
+                        break;
+                    default:
+                        if (valuePtr[i] >= 0) value[valuePtr[i] + last - rowPtr[i]] = bias;
+                }
+            }
+        }
+
+        int[] offsets = rowPtr.length == l + 1 ? rowPtr : copyOf(rowPtr, l + 1);
+        switch (storage) {
+            case CSR:
+                return new CsrProblem(offsets, index, value, labels, n, bias);
+            case CSR_FLOAT:
+                return new CsrProblem(offsets, index, floatValue, labels, n, bias);
+            default:
+                if (valueCount == 0) return new CsrProblem(offsets, index, labels, n, bias);
+                double[] values = value.length == valueCount ? value : copyOf(value, valueCount);
+                return new CsrProblem(offsets, index, valuePtr, values, labels, n, bias);
+        }
+    }
+
+    private void checkNotBuilt() {
+        if (built) throw new IllegalStateException("the problem has already been built");
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= index.length) return;
+        index = grow(index, capacity);
+        if (value != null && storage != StorageType.CSR_BINARY) {
+            double[] newValue = new double[index.length];
+            System.arraycopy(value, 0, newValue, 0, nnz);
+            value = newValue;
+        } else if (floatValue != null) {
+            float[] newValue = new float[index.length];
+            System.arraycopy(floatValue, 0, newValue, 0, nnz);
+            floatValue = newValue;
+        }
+    }
+
+    private static int newCapacity(int length, int minCapacity) {
+        int capacity = length + (length >> 1) + 16;
+        if (capacity < minCapacity || capacity < 0) capacity = minCapacity;
+        return capacity;
+    }
+
+    private static int[] grow(int[] array, int minCapacity) {
+        return copyOf(array, newCapacity(array.length, minCapacity));
+    }
+
+    private static double[] grow(double[] array, int minCapacity) {
+        double[] copy = new double[newCapacity(array.length, minCapacity)];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static double[] copyOf(double[] original, int newLength) {
+        double[] copy = new double[newLength];
+        System.arraycopy(original, 0, copy, 0, Math.min(original.length, newLength));
+        return copy;
+    }
+
+    private static int[] copyOf(int[] original, int newLength) {
+        int[] copy = new int[newLength];
+        System.arraycopy(original, 0, copy, 0, Math.min(original.length, newLength));
+        return copy;
+    }
+}
@@ -0,0 +1,105 @@
+package de.bwaldvogel.liblinear;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * header and section offsets of a binary problem file, the layout is described in {@link ProblemFileWriter}
+ */
+final class ProblemFileFormat {
+
+    static final int  MAGIC       = 0x50424c4c; // "LLBP" in little-endian order
+    static final int  VERSION     = 1;
+    static final int  HEADER_SIZE = 64;
+
+    final int         l;
+    final int         n;
+    final long        nnz;
+    final double      bias;
+
+    final long        labelOffset;
+    final long        rowPtrOffset;
+    final long        indexOffset;
+    final long        valueOffset;
+    final long        fileSize;
+
+    ProblemFileFormat( int l, int n, long nnz, double bias ) {
+        if (l < 0 || n < 0 || nnz < 0) throw new IllegalArgumentException("l, n and nnz must not be negative");
+        this.l = l;
+        this.n = n;
+        this.nnz = nnz;
+        this.bias = bias;
+
+        labelOffset = HEADER_SIZE;
+        rowPtrOffset = align(labelOffset + 4L * l);
+        indexOffset = rowPtrOffset + 8L * (l + 1);
+        valueOffset = align(indexOffset + 4L * nnz);
+        fileSize = valueOffset + 8L * nnz;
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * @return true if the file starts with the magic number of a binary problem file
+     */
+    static boolean isProblemFile(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < HEADER_SIZE) return false;
+            byte[] magic = new byte[4];
+            raf.readFully(magic);
+            return ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+        } finally {
+            raf.close();
+        }
+    }
+
+    void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(l);
+        header.putInt(n);
+        header.putLong(nnz);
+        header.putDouble(bias);
+        header.clear();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    /**
+     * @throws InvalidInputDataException if the file does not start with a valid header or has the wrong size
+     */
+    static ProblemFileFormat readHeader(File file, FileChannel channel) throws IOException, InvalidInputDataException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new InvalidInputDataException("file is too short for a binary problem header", file, 0);
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) throw new InvalidInputDataException("not a binary problem file", file, 0);
+        int version = header.getInt();
+        if (version != VERSION) throw new InvalidInputDataException("unsupported binary problem version: " + version, file, 0);
+
+        int l = header.getInt();
+        int n = header.getInt();
+        long nnz = header.getLong();
+        double bias = header.getDouble();
+        if (l < 0 || n < 0 || nnz < 0) throw new InvalidInputDataException("corrupt binary problem header", file, 0);
+
+        ProblemFileFormat format = new ProblemFileFormat(l, n, nnz, bias);
+        if (channel.size() != format.fileSize) {
+            throw new InvalidInputDataException("file size " + channel.size() + " does not match the header (expected " + format.fileSize
+                + " bytes)", file, 0);
+        }
+        return format;
+    }
+}
@@ -0,0 +1,198 @@
+package de.bwaldvogel.liblinear;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+/**
+ * <p>Loads a binary problem file (see {@link ProblemFileWriter}) into the heap.</p>
+ *
+ * The sections are read with bulk NIO transfers straight into the primitive arrays of the
+ * problem, there is no parsing involved. Use {@link MappedProblem} if the problem doesn't fit into the heap.
+ *
+ * @since 1.9
+ */
+public final class ProblemFileReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private ProblemFileReader() {}
+
+    /**
+     * @param bias see {@link Problem#bias}, the bias stored in the file is ignored
+     * @throws InvalidInputDataException if the file is not a valid binary problem file
+     */
+    public static Problem read(File file, double bias, StorageType storage) throws IOException, InvalidInputDataException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ProblemFileFormat format = ProblemFileFormat.readHeader(file, channel);
+            int l = format.l;
+            int extra = bias >= 0 ? 1 : 0;
+            if (format.nnz + (long)extra * l > Integer.MAX_VALUE - 8) {
+                throw new InvalidInputDataException("too many non-zero entries (" + format.nnz + ") for an in-memory problem, use MappedProblem instead",
+                    file, 0);
+            }
+            int n = format.n + extra;
+            int nnz = (int)format.nnz;
+            if (storage.isCompressed()) return readCompressed(file, bias, storage);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int[] y = new int[l];
+            readInts(channel, buffer, format.labelOffset, y, l);
+            long[] offsets = new long[l + 1];
+            readLongs(channel, buffer, format.rowPtrOffset, offsets, l + 1);
+            // one slot per row is left free for the bias feature
+            int[] index = new int[nnz + extra * l];
+            readInts(channel, buffer, format.indexOffset, index, nnz);
+            double[] value = new double[nnz + extra * l];
+            readDoubles(channel, buffer, format.valueOffset, value, nnz);
+
+            if (offsets[0] != 0 || offsets[l] != nnz) throw new InvalidInputDataException("corrupt row offsets in binary problem file", file, 0);
+            int[] rowPtr = new int[l + 1];
+            for (int i = 1; i <= l; i++) {
+                if (offsets[i] < offsets[i - 1] || offsets[i] > nnz) {
+                    throw new InvalidInputDataException("corrupt row offsets in binary problem file", file, 0);
+                }
+                rowPtr[i] = (int)offsets[i] + extra * i;
+            }
+
+            if (extra > 0) {
+                // move the rows to their final position, starting with the last one so that nothing gets overwritten
+                for (int i = l - 1; i >= 0; i--) {
+                    int length = (int)(offsets[i + 1] - offsets[i]);
+                    System.arraycopy(index, (int)offsets[i], index, rowPtr[i], length);
+                    System.arraycopy(value, (int)offsets[i], value, rowPtr[i], length);
+                    index[rowPtr[i + 1] - 1] = n;
+                    value[rowPtr[i + 1] - 1] = bias;
+                }
+            }
+
+            try {
+                return createProblem(rowPtr, index, value, y, n, bias, storage);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidInputDataException(e.getMessage(), file, 0, e);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * encodes the rows of the mapped file one by one, so that the uncompressed rows never have to be in the heap
+     */
+    private static CompressedProblem readCompressed(File file, double bias, StorageType storage) throws IOException,
+        InvalidInputDataException {
+        MappedProblem mapped = MappedProblem.open(file, bias);
+        // the bias feature is appended by the compressed rows
+        CompressedRowsWriter writer = new CompressedRowsWriter(storage == StorageType.COMPRESSED_DICTIONARY);
+        writer.addRows(mapped.rows(), mapped.l, bias >= 0);
+        return new CompressedProblem(writer.build(bias >= 0 ? mapped.n : 0, bias), mapped.y, mapped.n, bias);
+    }
+
+    /**
+     * creates the problem for the given kind of storage from CSR arrays which already contain the bias feature,
+     * the compressed storage types encode the rows while they are read instead
+     */
+    static Problem createProblem(int[] rowPtr, int[] index, double[] value, int[] y, int n, double bias, StorageType storage) {
+        int l = y.length;
+        switch (storage) {
+            case CSR:
+                return new CsrProblem(rowPtr, index, value, y, n, bias);
+            case CSR_FLOAT: {
+                float[] floatValue = new float[value.length];
+                for (int k = 0; k < value.length; k++)
+                    floatValue[k] = (float)value[k];
+                return new CsrProblem(rowPtr, index, floatValue, y, n, bias);
+            }
+            case CSR_BINARY: {
+                // keep only the values of rows that are not binary
+                int[] valuePtr = new int[l];
+                int valueCount = 0;
+                for (int i = 0; i < l; i++) {
+                    int features = bias >= 0 ? rowPtr[i + 1] - 1 : rowPtr[i + 1];
+                    valuePtr[i] = -1;
+                    for (int k = rowPtr[i]; k < features; k++) {
+                        if (value[k] != 1) {
+                            valuePtr[i] = valueCount;
+                            break;
+                        }
+                    }
+                    if (valuePtr[i] >= 0) {
+                        int length = rowPtr[i + 1] - rowPtr[i];
+                        System.arraycopy(value, rowPtr[i], value, valueCount, length);
+                        valueCount += length;
+                    }
+                }
+                if (valueCount == 0) return new CsrProblem(rowPtr, index, y, n, bias);
+                // the values of the binary rows were dropped, so most of the array is unused
+                return new CsrProblem(rowPtr, index, valuePtr, Arrays.copyOf(value, valueCount), y, n, bias);
+            }
+            case FEATURE_NODES: {
+                CsrProblem.checkRows(rowPtr, index, n);
+                Problem prob = new Problem();
+                prob.l = l;
+                prob.n = n;
+                prob.y = y;
+                prob.bias = bias;
+                prob.x = new Feature[l][];
+                for (int i = 0; i < l; i++) {
+                    prob.x[i] = new Feature[rowPtr[i + 1] - rowPtr[i]];
+                    for (int k = rowPtr[i], j = 0; k < rowPtr[i + 1]; k++, j++)
+                        prob.x[i][j] = new FeatureNode(index[k], value[k]);
+                }
+                return prob;
+            }
+            default:
+                throw new IllegalArgumentException("unsupported storage type: " + storage);
+        }
+    }
+
+    /**
+     * reads the next <code>min(bytes, BUFFER_SIZE)</code> bytes into the buffer
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, long position, long bytes) throws IOException {
+        buffer.clear();
+        buffer.limit((int)Math.min(bytes, buffer.capacity()));
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) throw new EOFException();
+        }
+        buffer.flip();
+    }
+
+    private static void readInts(FileChannel channel, ByteBuffer buffer, long position, int[] dst, int count) throws IOException {
+        for (int off = 0; off < count;) {
+            fill(channel, buffer, position + 4L * off, 4L * (count - off));
+            int len = Math.min(count - off, buffer.remaining() / 4);
+            buffer.asIntBuffer().get(dst, off, len);
+            off += len;
+        }
+    }
+
+    private static void readLongs(FileChannel channel, ByteBuffer buffer, long position, long[] dst, int count) throws IOException {
+        for (int off = 0; off < count;) {
+            fill(channel, buffer, position + 8L * off, 8L * (count - off));
+            int len = Math.min(count - off, buffer.remaining() / 8);
+            buffer.asLongBuffer().get(dst, off, len);
+            off += len;
+        }
+    }
+
+    private static void readDoubles(FileChannel channel, ByteBuffer buffer, long position, double[] dst, int count) throws IOException {
+        for (int off = 0; off < count;) {
+            fill(channel, buffer, position + 8L * off, 8L * (count - off));
+            int len = Math.min(count - off, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().get(dst, off, len);
+            off += len;
+        }
+    }
+}
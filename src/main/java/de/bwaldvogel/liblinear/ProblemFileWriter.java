@@ -0,0 +1,247 @@
+package de.bwaldvogel.liblinear;
+
+import static de.bwaldvogel.liblinear.Linear.closeQuietly;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>Writes the instances of a problem row by row into a binary problem file which
+ * can be opened with {@link MappedProblem#open(File)} or loaded with {@link Train#readProblem(File, double)}.
+ * Loading such a file is much faster than parsing the same problem in LibSVM format.</p>
+ *
+ * All numbers are stored in little-endian byte order, every section starts at a multiple of 8 bytes:
+ * <pre>
+ *  offset         content
+ *  ------         -------
+ *  0              magic number, the ASCII characters "LLBP"
+ *  4              int: version (1)
+ *  8              int: l, the number of instances
+ *  12             int: n, the number of features (without the bias feature)
+ *  16             long: nnz, the total number of non-zero entries
+ *  24             double: bias (default for {@link MappedProblem#open(File)})
+ *  32             zero padding up to 64 bytes
+ *  64             labels: l ints
+ *  align8         row offsets: l+1 longs, the entries of instance i are rowPtr[i] .. rowPtr[i+1]-1
+ *  align8         indices: nnz ints, one-based and sorted in ascending order within each instance
+ *  align8         values: nnz doubles
+ * </pre>
+ *
+ * For the example given in {@link Problem} the sections are:
+ * <pre>
+ *  l = 5, n = 5, nnz = 14, bias = 1
+ *  labels  -&gt; 1 2 1 2 3
+ *  rowPtr  -&gt; 0 2 5 6 9 14
+ *  indices -&gt; 2   3   2   3   4    1   2   4   5   1    2    3   4   5
+ *  values  -&gt; 0.1 0.2 0.1 0.3 -1.2 0.4 0.1 1.4 0.5 -0.1 -0.2 0.1 1.1 0.1
+ * </pre>
+ *
+ * The instances do <b>not</b> contain the bias feature, it is added when the file is read.
+ *
+ * The number of instances and non-zero entries has to be known in advance, because
+ * every section of the file starts at a fixed offset. Only a few small buffers are kept
+ * in memory, so the problem can be much larger than the heap.
+ *
+ * @since 1.9
+ */
+public final class ProblemFileWriter implements Closeable {
+
+    private static final int        BUFFER_SIZE = 1 << 16;
+
+    private final ProblemFileFormat format;
+    private final RandomAccessFile  file;
+    private final FileChannel       channel;
+
+    private final ByteBuffer        labels      = newBuffer();
+    private final ByteBuffer        rowPtr      = newBuffer();
+    private final ByteBuffer        index       = newBuffer();
+    private final ByteBuffer        value       = newBuffer();
+    private long                    labelPos;
+    private long                    rowPtrPos;
+    private long                    indexPos;
+    private long                    valuePos;
+
+    private int                     rows        = 0;
+    private long                    nnz         = 0;
+    private int                     max_index   = 0;
+
+    private final int               n;
+
+    /**
+     * @param l the number of instances that will be written
+     * @param nnz the total number of non-zero entries of all instances
+     * @param bias the bias that {@link MappedProblem#open(File)} uses for this file
+     */
+    public ProblemFileWriter( File file, int l, long nnz, double bias ) throws IOException {
+        this(file, l, nnz, 0, bias);
+    }
+
+    /**
+     * @param n the number of features (without the bias feature), the largest index is used if it is larger than n
+     * @see #ProblemFileWriter(File, int, long, double)
+     */
+    public ProblemFileWriter( File file, int l, long nnz, int n, double bias ) throws IOException {
+        format = new ProblemFileFormat(l, 0, nnz, bias);
+        this.n = n;
+        this.file = new RandomAccessFile(file, "rw");
+        channel = this.file.getChannel();
+        channel.truncate(0);
+
+        labelPos = format.labelOffset;
+        rowPtrPos = format.rowPtrOffset;
+        indexPos = format.indexOffset;
+        valuePos = format.valueOffset;
+        rowPtr.putLong(0);
+    }
+
+    /**
+     * writes the instances of prob into a binary problem file, the bias feature is left out
+     */
+    public static void write(Problem prob, File file) throws IOException {
+        SparseRows x = prob.rows();
+        boolean hasBias = prob.bias >= 0;
+        long nnz = 0;
+        int max_length = 0;
+        for (int i = 0; i < prob.l; i++) {
+            int length = x.length(i);
+            max_length = Math.max(max_length, length);
+            nnz += length;
+        }
+        if (hasBias) nnz -= prob.l;
+
+        int[] index = new int[max_length];
+        double[] value = new double[max_length];
+        ProblemFileWriter writer = new ProblemFileWriter(file, prob.l, nnz, hasBias ? prob.n - 1 : prob.n, prob.bias);
+        boolean written = false;
+        try {
+            for (int i = 0; i < prob.l; i++) {
+                int length = x.copy(i, index, value);
+                if (hasBias) {
+                    if (length == 0 || index[length - 1] != prob.n) throw new IllegalArgumentException("instance " + i + " has no bias feature");
+                    length--;
+                }
+                writer.writeRow(prob.y[i], index, value, length);
+            }
+            written = true;
+        } finally {
+            if (!written) closeQuietly(writer.file);
+        }
+        writer.close();
+    }
+
+    /**
+     * Converts a problem from LibSVM format into a binary problem file.
+     * The text file is read twice, the first pass validates it and counts the entries.
+     *
+     * @param bias the bias that is stored in the file, see {@link MappedProblem#open(File)}
+     * @throws InvalidInputDataException if the input file is not correctly formatted
+     */
+    public static void convert(File libsvmFile, File problemFile, double bias) throws IOException, InvalidInputDataException {
+        LineParser parser = new LineParser();
+        int l = 0;
+        long nnz = 0;
+        Reader in = new FileReader(libsvmFile);
+        try {
+            LineReader reader = new LineReader(in);
+            while (reader.next()) {
+                l++;
+                parser.parse(reader.buf, reader.start, reader.end, libsvmFile, l);
+                nnz += parser.length;
+            }
+        } finally {
+            in.close();
+        }
+
+        ProblemFileWriter writer = new ProblemFileWriter(problemFile, l, nnz, bias);
+        boolean written = false;
+        try {
+            in = new FileReader(libsvmFile);
+            LineReader reader = new LineReader(in);
+            int lineNr = 0;
+            while (reader.next()) {
+                parser.parse(reader.buf, reader.start, reader.end, libsvmFile, ++lineNr);
+                writer.writeRow(parser.label, parser.indices, parser.values, parser.length);
+            }
+            written = true;
+        } finally {
+            closeQuietly(in);
+            if (!written) closeQuietly(writer.file);
+        }
+        writer.close();
+    }
+
+    private static ByteBuffer newBuffer() {
+        return ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * appends an instance
+     *
+     * @throws IllegalArgumentException if the indices are not sorted in ascending order
+     * @throws IllegalStateException if more instances or entries are written than announced
+     */
+    public void writeRow(int label, int[] indices, double[] values, int length) throws IOException {
+        if (rows == format.l) throw new IllegalStateException("all " + format.l + " instances have already been written");
+        if (nnz + length > format.nnz) throw new IllegalStateException("more than " + format.nnz + " non-zero entries");
+
+        int indexBefore = 0;
+        for (int j = 0; j < length; j++) {
+            if (indices[j] <= indexBefore) throw new IllegalArgumentException("feature nodes must be sorted by index in ascending order");
+            indexBefore = indices[j];
+
+            if (!index.hasRemaining()) indexPos = flush(index, indexPos);
+            index.putInt(indices[j]);
+            if (!value.hasRemaining()) valuePos = flush(value, valuePos);
+            value.putDouble(values[j]);
+        }
+        max_index = Math.max(max_index, indexBefore);
+        nnz += length;
+        rows++;
+
+        if (!labels.hasRemaining()) labelPos = flush(labels, labelPos);
+        labels.putInt(label);
+        if (!rowPtr.hasRemaining()) rowPtrPos = flush(rowPtr, rowPtrPos);
+        rowPtr.putLong(nnz);
+    }
+
+    private long flush(ByteBuffer buffer, long position) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        buffer.clear();
+        return position;
+    }
+
+    /**
+     * writes the header and closes the file
+     *
+     * @throws IllegalStateException if less instances or entries than announced have been written
+     */
+    public void close() throws IOException {
+        try {
+            if (rows != format.l) throw new IllegalStateException("only " + rows + " of " + format.l + " instances have been written");
+            if (nnz != format.nnz) throw new IllegalStateException("only " + nnz + " of " + format.nnz + " non-zero entries have been written");
+
+            flush(labels, labelPos);
+            flush(rowPtr, rowPtrPos);
+            flush(index, indexPos);
+            flush(value, valuePos);
+            channel.truncate(format.fileSize);
+            if (channel.size() < format.fileSize) {
+                // the last section is empty if there are no entries
+                channel.write(ByteBuffer.allocate(1), format.fileSize - 1);
+            }
+            new ProblemFileFormat(format.l, Math.max(n, max_index), format.nnz, format.bias).writeHeader(channel);
+        } finally {
+            file.close();
+        }
+    }
+}
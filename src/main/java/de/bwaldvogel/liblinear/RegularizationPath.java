@@ -0,0 +1,57 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * The models and cross validation accuracies of a sequence of C values, see
+ * {@link Linear#trainPath(Problem, Parameter, double[], int)}.
+ *
+ * @since 1.9
+ */
+public final class RegularizationPath {
+
+    private final double[] C;
+    private final Model[]  models;
+    private final double[] accuracy;
+
+    RegularizationPath( double[] C, Model[] models, double[] accuracy ) {
+        this.C = C.clone();
+        this.models = models;
+        this.accuracy = accuracy;
+    }
+
+    /**
+     * @return the number of C values
+     */
+    public int size() {
+        return C.length;
+    }
+
+    public double getC(int k) {
+        return C[k];
+    }
+
+    /**
+     * @return the model trained on the whole problem with the k-th C
+     */
+    public Model getModel(int k) {
+        return models[k];
+    }
+
+    /**
+     * @return the fraction of the instances that the cross validation with the k-th C predicted correctly, weighted
+     *         by {@link Problem#W}
+     */
+    public double getAccuracy(int k) {
+        return accuracy[k];
+    }
+
+    /**
+     * @return the position of the C with the best accuracy, the smallest C of equally good ones
+     */
+    public int getBestIndex() {
+        int best = 0;
+        for (int k = 1; k < accuracy.length; k++) {
+            if (accuracy[k] > accuracy[best]) best = k;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,293 @@
+package de.bwaldvogel.liblinear;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Computes <code>X*v</code> and <code>X^T*v</code> for all rows or a subset of the rows on several threads.</p>
+ *
+ * The rows are split into one block per thread, so that every block has about the same number of non-zero
+ * entries. <code>X*v</code> writes disjoint parts of the result. The sums over the rows (<code>X^T*v</code>, the
+ * fused products and the diagonal of <code>X^T D X</code>) visit every row once. For the sums every block adds up
+ * into its own buffer, then the buffers are summed in the order of the blocks. The result therefore depends on the
+ * number of threads, but not on the scheduling. Small sets of rows are computed in the calling thread, exactly like
+ * the single-threaded loops.
+ *
+ * The pool threads are daemon threads that end after a second without work, so the kernels don't need to be closed.
+ */
+final class RowKernels {
+
+    /** sets of rows with fewer non-zero entries are not worth the synchronization */
+    static final long        MIN_PARALLEL_NNZ = 1 << 16;
+
+    private final SparseRows x;
+    private final int        l;
+    private final int        n;
+    private final int        numThreads;
+
+    /** nnzBefore[i] is the number of non-zero entries of the rows 0 .. i-1, null for a single thread */
+    private final long[]     nnzBefore;
+    /** the block boundaries of all rows */
+    private final int[]      allRows;
+
+    /** one buffer of length n per block except the first one, which adds up into the result */
+    private double[][]       buffers;
+    /** the entries of the current row of every block, for the sums over the squared values */
+    private int[][]          indices;
+    private double[][]       values;
+
+    private ThreadPoolExecutor executor;
+
+    /** the work of a block of rows <code>begin .. end-1</code> */
+    private interface Block {
+
+        void run(int block, int begin, int end);
+    }
+
+    /** the contribution of row i at position k to the sum of a block */
+    private interface RowTerm {
+
+        void add(int block, int k, int i, double[] sum);
+    }
+
+    /** the factor of a row in a sum over the rows, computed when the row is visited */
+    interface Coefficients {
+
+        /**
+         * @param k the position of the row in the sum
+         * @param i the row
+         * @return the factor of x_i, the method is called once per row and may be called on several threads
+         */
+        double get(int k, int i);
+    }
+
+    RowKernels( SparseRows x, int l, int n, int numThreads ) {
+        if (numThreads < 1) throw new IllegalArgumentException("numThreads must be positive");
+        this.x = x;
+        this.l = l;
+        this.n = n;
+        this.numThreads = numThreads;
+        if (numThreads > 1) {
+            nnzBefore = new long[l + 1];
+            for (int i = 0; i < l; i++)
+                nnzBefore[i + 1] = nnzBefore[i] + x.length(i);
+        } else {
+            nnzBefore = null;
+        }
+        allRows = split(null, l);
+    }
+
+    /**
+     * @return true if these are the kernels of the given rows and threads
+     */
+    boolean isFor(SparseRows x, int l, int n, int numThreads) {
+        return this.x == x && this.l == l && this.n == n && this.numThreads == numThreads;
+    }
+
+    /**
+     * <code>Xv[k] = x_rows[k] * v</code> for <code>k = 0 .. m-1</code>
+     *
+     * @param rows the rows, null for the rows <code>0 .. m-1</code>
+     */
+    void Xv(final int[] rows, int m, final double[] v, final double[] Xv) {
+        run(rows == null ? allRows : split(rows, m), new Block() {
+
+            public void run(int block, int begin, int end) {
+                for (int k = begin; k < end; k++)
+                    Xv[k] = x.dot(rows == null ? k : rows[k], v);
+            }
+        });
+    }
+
+    /**
+     * <code>XTv = sum(v[k] * x_rows[k])</code> for <code>k = 0 .. m-1</code>
+     *
+     * @param rows the rows, null for the rows <code>0 .. m-1</code>
+     */
+    void XTv(final int[] rows, int m, final double[] v, final double[] XTv) {
+        XTv(rows, m, new Coefficients() {
+
+            public double get(int k, int i) {
+                return v[k];
+            }
+        }, XTv);
+    }
+
+    /**
+     * <code>XTv = sum(v.get(k, i) * x_i)</code> with <code>i = rows[k]</code> for <code>k = 0 .. m-1</code>, i.e. the
+     * coefficients are computed in the same pass over the rows
+     *
+     * @param rows the rows, null for the rows <code>0 .. m-1</code>
+     */
+    void XTv(final int[] rows, int m, final Coefficients v, final double[] XTv) {
+        sum(rows, m, new RowTerm() {
+
+            public void add(int block, int k, int i, double[] sum) {
+                x.axpy(i, v.get(k, i), sum);
+            }
+        }, XTv);
+    }
+
+    /**
+     * <code>Hs = sum(D[i] * (x_i^T s) * x_i)</code> with <code>i = rows[k]</code> for <code>k = 0 .. m-1</code>,
+     * i.e. <code>X^T D X s</code> with one visit per row instead of a pass for <code>X*s</code> and another one for
+     * the sum
+     *
+     * @param rows the rows, null for the rows <code>0 .. m-1</code>
+     * @param D the factors of the rows, indexed by the row
+     */
+    void XTDXv(final int[] rows, int m, final double[] D, final double[] s, final double[] Hs) {
+        XTv(rows, m, new Coefficients() {
+
+            public double get(int k, int i) {
+                return D[i] * x.dot(i, s);
+            }
+        }, Hs);
+    }
+
+    /**
+     * <code>diag[j] = sum(D[i] * x_ij^2)</code> with <code>i = rows[k]</code> for <code>k = 0 .. m-1</code>, i.e. the
+     * diagonal of <code>X^T D X</code>
+     *
+     * @param rows the rows, null for the rows <code>0 .. m-1</code>
+     * @param D the factors of the rows, indexed by the row
+     */
+    void diagXTDX(final int[] rows, int m, final double[] D, final double[] diag) {
+        if (indices == null) {
+            indices = new int[numThreads][0];
+            values = new double[numThreads][0];
+        }
+        sum(rows, m, new RowTerm() {
+
+            public void add(int block, int k, int i, double[] sum) {
+                if (indices[block].length < x.length(i)) {
+                    indices[block] = new int[x.length(i)];
+                    values[block] = new double[x.length(i)];
+                }
+                int[] index = indices[block];
+                double[] value = values[block];
+                int len = x.copy(i, index, value);
+                for (int t = 0; t < len; t++)
+                    sum[index[t] - 1] += D[i] * value[t] * value[t];
+            }
+        }, diag);
+    }
+
+    /**
+     * <code>result = sum(term(k, rows[k]))</code> for <code>k = 0 .. m-1</code>, every block adds up into its own
+     * buffer, the buffers are summed in the order of the blocks
+     */
+    private void sum(final int[] rows, int m, final RowTerm term, final double[] result) {
+        final int[] bounds = rows == null ? allRows : split(rows, m);
+        final int blocks = bounds.length - 1;
+        if (blocks > 1 && buffers == null) buffers = new double[numThreads - 1][n];
+
+        run(bounds, new Block() {
+
+            public void run(int block, int begin, int end) {
+                double[] sum = block == 0 ? result : buffers[block - 1];
+                for (int j = 0; j < n; j++)
+                    sum[j] = 0;
+                for (int k = begin; k < end; k++)
+                    term.add(block, k, rows == null ? k : rows[k], sum);
+            }
+        });
+        if (blocks == 1) return;
+
+        // the reduction is split by features
+        int[] features = new int[blocks + 1];
+        for (int b = 0; b <= blocks; b++)
+            features[b] = (int)((long)b * n / blocks);
+        run(features, new Block() {
+
+            public void run(int block, int begin, int end) {
+                for (int b = 1; b < blocks; b++) {
+                    double[] buffer = buffers[b - 1];
+                    for (int j = begin; j < end; j++)
+                        result[j] += buffer[j];
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the boundaries of the blocks of <code>0 .. m-1</code>, which index into rows if it isn't null
+     */
+    private int[] split(int[] rows, int m) {
+        if (nnzBefore == null) return new int[] {0, m};
+
+        long nnz = 0;
+        if (rows == null) {
+            nnz = nnzBefore[m];
+        } else {
+            for (int k = 0; k < m; k++)
+                nnz += nnzBefore[rows[k] + 1] - nnzBefore[rows[k]];
+        }
+        if (nnz < MIN_PARALLEL_NNZ) return new int[] {0, m};
+
+        int[] bounds = new int[numThreads + 1];
+        int b = 1;
+        long sum = 0;
+        for (int k = 0; k < m && b < numThreads; k++) {
+            int i = rows == null ? k : rows[k];
+            sum += nnzBefore[i + 1] - nnzBefore[i];
+            while (b < numThreads && sum >= nnz * b / numThreads)
+                bounds[b++] = k + 1;
+        }
+        while (b <= numThreads)
+            bounds[b++] = m;
+        return bounds;
+    }
+
+    /** runs the first block in the calling thread and the others on the pool */
+    private void run(int[] bounds, final Block task) {
+        int blocks = bounds.length - 1;
+        if (blocks == 1) {
+            task.run(0, bounds[0], bounds[1]);
+            return;
+        }
+
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(blocks - 1);
+        ThreadPoolExecutor pool = executor();
+        for (int b = 1; b < blocks; b++) {
+            final int block = b;
+            final int begin = bounds[b];
+            final int end = bounds[b + 1];
+            futures.add(pool.submit(new Callable<Void>() {
+
+                public Void call() {
+                    task.run(block, begin, end);
+                    return null;
+                }
+            }));
+        }
+        try {
+            task.run(0, bounds[0], bounds[1]);
+        }
+        finally {
+            Utils.join(futures, "the row kernels");
+        }
+    }
+
+    private synchronized ThreadPoolExecutor executor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(numThreads - 1, numThreads - 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "liblinear-row-kernel");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
@@ -0,0 +1,72 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * <p>Label-independent statistics of the instances of a problem: the squared norms, the number of non-zero entries
+ * and the largest feature index.</p>
+ *
+ * They are computed once per problem (see {@link Problem#rowStatistics()}), by {@link ProblemBuilder} even while
+ * the instances are parsed, and shared by all solves on the same rows, i.e. by every class of a one-vs-rest model
+ * and by every cross-validation fold. The arrays must not be modified.
+ */
+final class RowStatistics {
+
+    /** <code>x_i^T x_i</code> */
+    final double[] squaredNorm;
+    /** the number of non-zero entries of x_i */
+    final int[]    length;
+    /** the largest length */
+    final int      maxLength;
+    /** the largest feature index of all instances, including the bias feature */
+    final int      maxIndex;
+
+    RowStatistics( double[] squaredNorm, int[] length, int maxIndex ) {
+        this.squaredNorm = squaredNorm;
+        this.length = length;
+        this.maxIndex = maxIndex;
+        int max_length = 0;
+        for (int len : length)
+            max_length = Math.max(max_length, len);
+        this.maxLength = max_length;
+    }
+
+    /**
+     * computes the statistics of the first l rows of x with one pass over the rows
+     */
+    static RowStatistics compute(SparseRows x, int l) {
+        double[] squaredNorm = new double[l];
+        int[] length = new int[l];
+        int max_length = 0;
+        for (int i = 0; i < l; i++) {
+            length[i] = x.length(i);
+            max_length = Math.max(max_length, length[i]);
+        }
+
+        int[] xi_index = new int[max_length];
+        double[] xi_value = new double[max_length];
+        int maxIndex = 0;
+        for (int i = 0; i < l; i++) {
+            int len = x.copy(i, xi_index, xi_value);
+            double s = 0;
+            for (int k = 0; k < len; k++)
+                s += xi_value[k] * xi_value[k];
+            squaredNorm[i] = s;
+            // the indices are sorted in ascending order
+            if (len > 0) maxIndex = Math.max(maxIndex, xi_index[len - 1]);
+        }
+        return new RowStatistics(squaredNorm, length, maxIndex);
+    }
+
+    /**
+     * @param rows row i of the sub-problem is row <code>rows[i]</code> of this problem
+     * @return the statistics of the sub-problem, its largest index is the one of this problem
+     */
+    RowStatistics select(int[] rows) {
+        double[] subSquaredNorm = new double[rows.length];
+        int[] subLength = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            subSquaredNorm[i] = squaredNorm[rows[i]];
+            subLength[i] = length[rows[i]];
+        }
+        return new RowStatistics(subSquaredNorm, subLength, maxIndex);
+    }
+}
@@ -0,0 +1,36 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * read-only view on the rows <code>rows[0], rows[1], ...</code> of another {@link SparseRows}.
+ * Used to build the permuted and cross-validation sub-problems without copying any instance.
+ */
+final class RowSubset implements SparseRows {
+
+    private final SparseRows base;
+    private final int[]      rows;
+
+    RowSubset( SparseRows base, int[] rows ) {
+        this.base = base;
+        this.rows = rows;
+    }
+
+    public int length(int i) {
+        return base.length(rows[i]);
+    }
+
+    public int copy(int i, int[] index, double[] value) {
+        return base.copy(rows[i], index, value);
+    }
+
+    public double dot(int i, double[] v) {
+        return base.dot(rows[i], v);
+    }
+
+    public void axpy(int i, double a, double[] v) {
+        base.axpy(rows[i], a, v);
+    }
+
+    public double squaredNorm(int i) {
+        return base.squaredNorm(rows[i]);
+    }
+}
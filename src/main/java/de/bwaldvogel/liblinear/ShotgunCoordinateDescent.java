@@ -0,0 +1,343 @@
+package de.bwaldvogel.liblinear;
+
+import static de.bwaldvogel.liblinear.ParallelDualCoordinateDescent.add;
+import static de.bwaldvogel.liblinear.Utils.invokeAll;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Parallel coordinate descent over the feature columns for the L1-regularized solvers, see {@link Linear}
+ * <code>solve_l1r_l2_svc</code> and <code>solve_l1r_lr</code> (Shotgun, Bradley et al., ICML 2011).</p>
+ *
+ * Every outer iteration shuffles the features and gives each thread a contiguous shard of them. A thread owns the
+ * weights of its shard and adds its changes to the shared per-instance vector (<code>b</code> or <code>xTd</code>)
+ * with compare-and-set on the bits of the doubles. Concurrent updates of correlated features can overshoot, so the
+ * number of threads starts at about <code>n / rho</code>, where <code>rho</code> is the spectral radius of
+ * <code>X^T X</code> with normalized columns, and is halved whenever an outer iteration increases the objective.
+ * There is no shrinking. The result depends on the scheduling of the threads, so it is not reproducible from run to
+ * run. The solver is therefore only used if it is asked for (see {@link Parameter#setAsynchronousL1(boolean)}).
+ *
+ * All calls of one instance, e.g. the sub-problems of the Newton iterations of <code>solve_l1r_lr</code>, share one
+ * pool. Its threads are daemon threads that end after a second without work, so the solver doesn't need to be closed.
+ */
+final class ShotgunCoordinateDescent {
+
+    private static final int MAX_NUM_LINESEARCH = 20;
+
+    private final int[]      col_ptr;
+    private final int[]      row_index;
+    private final double[]   x_value;
+    private final int[]      rowOf;
+    private final int        l;
+    private final int        w_size;
+    private int              numThreads;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * @param prob_col the columns of the problem
+     * @param numThreads the maximal number of threads
+     */
+    ShotgunCoordinateDescent( FeatureColumns prob_col, int l, int w_size, int numThreads ) {
+        this.col_ptr = prob_col.col_ptr;
+        this.row_index = prob_col.row_index;
+        this.x_value = prob_col.x_value;
+        this.rowOf = prob_col.rowOf;
+        this.l = l;
+        this.w_size = w_size;
+        double rho = prob_col.spectralRadius();
+        this.numThreads = (int)Math.max(1, Math.min(numThreads, w_size / rho));
+    }
+
+    /**
+     * @return the number of threads that the next outer iteration uses
+     */
+    int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * The outer iterations of <code>solve_l1r_l2_svc</code>, the arguments are its arrays.
+     *
+     * @param y the labels, +1 or -1
+     * @param b <code>1 - y_i w^T x_i</code> of the w on entry, updated in place
+     * @return the number of outer iterations
+     */
+    int solveL2Svc(final byte[] y, final double[] w, double[] b, final double[] C, final double[] xj_sq, double eps, int max_iter, Random random,
+        TrainingBudget budget) {
+        final AtomicLongArray shared_b = share(b);
+        final double sigma = 0.01;
+        final double[] Gmax = new double[numThreads];
+        final double[] Gnorm1 = new double[numThreads];
+        final int[] index = identity(w_size);
+
+        double Gnorm1_init = 0;
+        double objective_old = l1r_l2_svc_objective(w, shared_b, C);
+        int iter = 0;
+        while (iter < max_iter && !budget.shouldStop()) {
+            shuffle(index, w_size, random);
+
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numThreads);
+            for (int t = 0; t < numThreads; t++) {
+                final int thread = t;
+                final int begin = (int)((long)t * w_size / numThreads);
+                final int end = (int)((long)(t + 1) * w_size / numThreads);
+                tasks.add(new Callable<Void>() {
+
+                    public Void call() {
+                        double Gmax_new = 0;
+                        double Gnorm1_new = 0;
+                        for (int s = begin; s < end; s++) {
+                            int j = index[s];
+                            double G_loss = 0;
+                            double H = 0;
+                            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                                int ind = rowOf[row_index[k] - 1];
+                                if (ind < 0) continue;
+                                double b_ind = Double.longBitsToDouble(shared_b.get(ind));
+                                if (b_ind > 0) {
+                                    double val = y[ind] * x_value[k];
+                                    double tmp = C[ind] * val;
+                                    G_loss -= tmp * b_ind;
+                                    H += tmp * val;
+                                }
+                            }
+                            G_loss *= 2;
+
+                            double G = G_loss;
+                            H *= 2;
+                            H = Math.max(H, 1e-12);
+
+                            double Gp = G + 1;
+                            double Gn = G - 1;
+                            double violation = 0;
+                            if (w[j] == 0) {
+                                if (Gp < 0)
+                                    violation = -Gp;
+                                else if (Gn > 0) violation = Gn;
+                            } else if (w[j] > 0)
+                                violation = Math.abs(Gp);
+                            else
+                                violation = Math.abs(Gn);
+
+                            Gmax_new = Math.max(Gmax_new, violation);
+                            Gnorm1_new += violation;
+
+                            // obtain Newton direction d
+                            double d;
+                            if (Gp <= H * w[j])
+                                d = -Gp / H;
+                            else if (Gn >= H * w[j])
+                                d = -Gn / H;
+                            else
+                                d = -w[j];
+
+                            if (Math.abs(d) < 1.0e-12) continue;
+
+                            // only the bound on the loss decides the step, the shared b may change meanwhile
+                            double delta = Math.abs(w[j] + d) - Math.abs(w[j]) + G * d;
+                            int num_linesearch;
+                            for (num_linesearch = 0; num_linesearch < MAX_NUM_LINESEARCH; num_linesearch++) {
+                                double cond = Math.abs(w[j] + d) - Math.abs(w[j]) - sigma * delta;
+                                if (xj_sq[j] * d * d + G_loss * d + cond <= 0) break;
+                                d *= 0.5;
+                                delta *= 0.5;
+                            }
+                            if (num_linesearch >= MAX_NUM_LINESEARCH) continue;
+
+                            w[j] += d;
+                            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                                int ind = rowOf[row_index[k] - 1];
+                                if (ind >= 0) add(shared_b, ind, -d * y[ind] * x_value[k]);
+                            }
+                        }
+                        Gmax[thread] = Gmax_new;
+                        Gnorm1[thread] = Gnorm1_new;
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor(), tasks, "the parallel coordinate descent");
+
+            double Gmax_new = 0;
+            double Gnorm1_new = 0;
+            for (int t = 0; t < tasks.size(); t++) {
+                Gmax_new = Math.max(Gmax_new, Gmax[t]);
+                Gnorm1_new += Gnorm1[t];
+            }
+            if (iter == 0) Gnorm1_init = Gnorm1_new;
+            iter++;
+
+            if (Gmax_new <= eps * Gnorm1_init) break;
+
+            double objective = l1r_l2_svc_objective(w, shared_b, C);
+            if (objective > objective_old) numThreads = Math.max(1, numThreads / 2);
+            objective_old = objective;
+        }
+
+        for (int i = 0; i < l; i++)
+            b[i] = Double.longBitsToDouble(shared_b.get(i));
+        return iter;
+    }
+
+    private double l1r_l2_svc_objective(double[] w, AtomicLongArray b, double[] C) {
+        double v = 0;
+        for (int j = 0; j < w_size; j++)
+            v += Math.abs(w[j]);
+        for (int i = 0; i < l; i++) {
+            double b_i = Double.longBitsToDouble(b.get(i));
+            if (b_i > 0) v += C[i] * b_i * b_i;
+        }
+        return v;
+    }
+
+    /**
+     * The coordinate descent on the quadratic sub-problem of a Newton iteration of <code>solve_l1r_lr</code>, the
+     * arguments are its arrays. Only the features <code>index[0 .. active_size-1]</code> are updated.
+     *
+     * @param xTd <code>X^T (wpd - w)</code>, updated in place
+     * @return the number of iterations
+     */
+    int solveL1rLrQP(final int[] index, final int active_size, final double[] w, final double[] wpd, final double[] Grad,
+        final double[] Hdiag, final double[] D, double[] xTd, final double nu, double eps, int max_iter, Random random) {
+        final AtomicLongArray shared_xTd = share(xTd);
+        final double[] Gnorm1 = new double[numThreads];
+
+        double objective_old = l1r_lr_qp_objective(w, wpd, Grad, D, shared_xTd, nu);
+        int iter = 0;
+        while (iter < max_iter) {
+            shuffle(index, active_size, random);
+
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numThreads);
+            for (int t = 0; t < numThreads; t++) {
+                final int thread = t;
+                final int begin = (int)((long)t * active_size / numThreads);
+                final int end = (int)((long)(t + 1) * active_size / numThreads);
+                tasks.add(new Callable<Void>() {
+
+                    public Void call() {
+                        double Gnorm1_new = 0;
+                        for (int s = begin; s < end; s++) {
+                            int j = index[s];
+                            double H = Hdiag[j];
+
+                            double G = Grad[j] + (wpd[j] - w[j]) * nu;
+                            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                                int ind = rowOf[row_index[k] - 1];
+                                if (ind >= 0) G += x_value[k] * D[ind] * Double.longBitsToDouble(shared_xTd.get(ind));
+                            }
+
+                            double Gp = G + 1;
+                            double Gn = G - 1;
+                            if (wpd[j] == 0) {
+                                if (Gp < 0)
+                                    Gnorm1_new -= Gp;
+                                else if (Gn > 0) Gnorm1_new += Gn;
+                            } else if (wpd[j] > 0)
+                                Gnorm1_new += Math.abs(Gp);
+                            else
+                                Gnorm1_new += Math.abs(Gn);
+
+                            // obtain solution of one-variable problem
+                            double z;
+                            if (Gp <= H * wpd[j])
+                                z = -Gp / H;
+                            else if (Gn >= H * wpd[j])
+                                z = -Gn / H;
+                            else
+                                z = -wpd[j];
+
+                            if (Math.abs(z) < 1.0e-12) continue;
+                            z = Math.min(Math.max(z, -10.0), 10.0);
+
+                            wpd[j] += z;
+                            for (int k = col_ptr[j]; k < col_ptr[j + 1]; k++) {
+                                int ind = rowOf[row_index[k] - 1];
+                                if (ind >= 0) add(shared_xTd, ind, x_value[k] * z);
+                            }
+                        }
+                        Gnorm1[thread] = Gnorm1_new;
+                        return null;
+                    }
+                });
+            }
+            invokeAll(executor(), tasks, "the parallel coordinate descent");
+            iter++;
+
+            double Gnorm1_new = 0;
+            for (int t = 0; t < tasks.size(); t++)
+                Gnorm1_new += Gnorm1[t];
+            if (Gnorm1_new <= eps) break;
+
+            double objective = l1r_lr_qp_objective(w, wpd, Grad, D, shared_xTd, nu);
+            if (objective > objective_old) numThreads = Math.max(1, numThreads / 2);
+            objective_old = objective;
+        }
+
+        for (int i = 0; i < l; i++)
+            xTd[i] = Double.longBitsToDouble(shared_xTd.get(i));
+        return iter;
+    }
+
+    /** the quadratic model of the Newton iteration plus the L1 norm of wpd */
+    private double l1r_lr_qp_objective(double[] w, double[] wpd, double[] Grad, double[] D, AtomicLongArray xTd, double nu) {
+        double v = 0;
+        for (int j = 0; j < w_size; j++) {
+            double d = wpd[j] - w[j];
+            v += Grad[j] * d + 0.5 * nu * d * d + Math.abs(wpd[j]);
+        }
+        for (int i = 0; i < l; i++) {
+            double xTd_i = Double.longBitsToDouble(xTd.get(i));
+            v += 0.5 * D[i] * xTd_i * xTd_i;
+        }
+        return v;
+    }
+
+    private static AtomicLongArray share(double[] v) {
+        AtomicLongArray shared = new AtomicLongArray(v.length);
+        for (int i = 0; i < v.length; i++)
+            shared.set(i, Double.doubleToRawLongBits(v[i]));
+        return shared;
+    }
+
+    private static int[] identity(int n) {
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++)
+            index[i] = i;
+        return index;
+    }
+
+    /** shuffles <code>index[0 .. n-1]</code> */
+    private static void shuffle(int[] index, int n, Random random) {
+        for (int i = 0; i < n; i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = index[i];
+            index[i] = index[j];
+            index[j] = tmp;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor executor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(numThreads, numThreads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "liblinear-shotgun");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+}
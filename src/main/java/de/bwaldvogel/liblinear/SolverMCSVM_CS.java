@@ -1,7 +1,5 @@
 package de.bwaldvogel.liblinear;
 
-import libsvm.svm.model.Feature;
-import libsvm.svm.model.FeatureNode;
 /**
  * A coordinate descent algorithm for
  * multi-class support vector machines by Crammer and Singer
@@ -12,7 +10,7 @@ import libsvm.svm.model.FeatureNode;
  *
  * where e^m_i = 0 if y_i = m,
  * e^m_i = 1 if y_i != m,
- * C^m_i = C if m = y_i,
+ * C^m_i = C W_i if m = y_i (W_i is the instance weight),
  * C^m_i = 0 if m != y_i,
  * and w_m(\alpha) = \sum_i \alpha^m_i x_i
  *
@@ -32,9 +30,11 @@ class SolverMCSVM_CS {
     private final double   eps;
     private final double[] G;
     private final int      max_iter;
+    private final TrainingBudget budget;
     private final int      w_size, l;
     private final int      nr_class;
     private final Problem  prob;
+    private final SparseRows x;
     private Utils utils;
     private ArraySorter arraySorter;
 
@@ -48,12 +48,21 @@ class SolverMCSVM_CS {
 
 
     public SolverMCSVM_CS( Problem prob, int nr_class, double[] weighted_C, double eps, int max_iter ) {
+        this(prob, nr_class, weighted_C, eps, max_iter, null);
+    }
+
+    /**
+     * @param budget stops the iterations at its deadline, null for no limit
+     */
+    SolverMCSVM_CS( Problem prob, int nr_class, double[] weighted_C, double eps, int max_iter, TrainingBudget budget ) {
+        this.budget = budget;
         this.w_size = prob.n;
         this.l = prob.l;
         this.nr_class = nr_class;
         this.eps = eps;
         this.max_iter = max_iter;
         this.prob = prob;
+        this.x = prob.rows();
         this.C = weighted_C;
         this.B = new double[nr_class];
         this.G = new double[nr_class];
@@ -65,9 +74,15 @@ class SolverMCSVM_CS {
         return prob.y[i];
     }
 
+    /** the upper bound of alpha^{y_i}_i */
+    private double upperBound(int i) {
+        if (prob.W == null) return C[GETI(i)];
+        return C[GETI(i)] * prob.W[i];
+    }
+
     private boolean be_shrunk(int i, int m, int yi, double alpha_i, double minG) {
         double bound = 0;
-        if (m == yi) bound = C[GETI(i)];
+        if (m == yi) bound = upperBound(i);
         if (alpha_i == bound && G[m] < minG) return true;
         return false;
     }
@@ -78,7 +93,6 @@ class SolverMCSVM_CS {
         double[] alpha = new double[l * nr_class];
         double[] alpha_new = new double[nr_class];
         int[] index = new int[l];
-        double[] QD = new double[l];
         int[] d_ind = new int[nr_class];
         double[] d_val = new double[nr_class];
         int[] alpha_index = new int[nr_class * l];
@@ -87,6 +101,9 @@ class SolverMCSVM_CS {
         int[] active_size_i = new int[l];
         double eps_shrink = Math.max(10.0 * eps, 1.0); // stopping tolerance for shrinking
         boolean start_from_all = true;
+        RowStatistics statistics = prob.rowStatistics();
+        double[] QD = statistics.squaredNorm;
+        int max_length = statistics.maxLength;
         // initial
         for (i = 0; i < l * nr_class; i++)
             alpha[i] = 0;
@@ -95,19 +112,19 @@ class SolverMCSVM_CS {
         for (i = 0; i < l; i++) {
             for (m = 0; m < nr_class; m++)
                 alpha_index[i * nr_class + m] = m;
-            QD[i] = 0;
-            for (Feature xi : prob.x[i]) {
-                QD[i] += xi.getValue() * xi.getValue();
-            }
             active_size_i[i] = nr_class;
             y_index[i] = prob.y[i];
             index[i] = i;
         }
 
+        // buffer for the row which is currently optimized
+        int[] xi_index = new int[max_length];
+        double[] xi_value = new double[max_length];
+
         DoubleArrayPointer alpha_i = new DoubleArrayPointer(alpha, 0);
         IntArrayPointer alpha_index_i = new IntArrayPointer(alpha_index, 0);
 
-        while (iter < max_iter) {
+        while (iter < max_iter && (budget == null || !budget.shouldStop())) {
             double stopping = Double.NEGATIVE_INFINITY;
 
             for (i = 0; i < active_size; i++) {
@@ -130,12 +147,13 @@ class SolverMCSVM_CS {
                         G[m] = 1;
                     if (y_index[i] < active_size_i[i]) G[y_index[i]] = 0;
 
-                    for (Feature xi : prob.x[i]) {
+                    int xi_length = x.copy(i, xi_index, xi_value);
+                    for (int k = 0; k < xi_length; k++) {
                         // double *w_i = &w[(xi.index-1)*nr_class];
-                        int w_offset = (xi.getIndex() - 1) * nr_class;
+                        int w_offset = (xi_index[k] - 1) * nr_class;
                         for (m = 0; m < active_size_i[i]; m++)
                             // G[m] += w_i[alpha_index_i[m]]*(xi.value);
-                            G[m] += w[w_offset + alpha_index_i.get(m)] * (xi.getValue());
+                            G[m] += w[w_offset + alpha_index_i.get(m)] * (xi_value[k]);
 
                     }
 
@@ -146,7 +164,7 @@ class SolverMCSVM_CS {
                         if (G[m] > maxG) maxG = G[m];
                     }
                     if (y_index[i] < active_size_i[i]) {
-                        if (alpha_i.get(prob.y[i]) < C[GETI(i)] && G[y_index[i]] < minG) {
+                        if (alpha_i.get(prob.y[i]) < upperBound(i) && G[y_index[i]] < minG) {
                             minG = G[y_index[i]];
                         }
                     }
@@ -183,7 +201,7 @@ class SolverMCSVM_CS {
                     for (m = 0; m < active_size_i[i]; m++)
                         B[m] = G[m] - Ai * alpha_i.get(alpha_index_i.get(m));
 
-                    solve_sub_problem(Ai, y_index[i], C[GETI(i)], active_size_i[i], alpha_new);
+                    solve_sub_problem(Ai, y_index[i], upperBound(i), active_size_i[i], alpha_new);
                     int nz_d = 0;
                     for (m = 0; m < active_size_i[i]; m++) {
                         double d = alpha_new[m] - alpha_i.get(alpha_index_i.get(m));
@@ -195,11 +213,11 @@ class SolverMCSVM_CS {
                         }
                     }
 
-                    for (Feature xi : prob.x[i]) {
+                    for (int k = 0; k < xi_length; k++) {
                         // double *w_i = &w[(xi->index-1)*nr_class];
-                        int w_offset = (xi.getIndex() - 1) * nr_class;
+                        int w_offset = (xi_index[k] - 1) * nr_class;
                         for (m = 0; m < nz_d; m++) {
-                            w[w_offset + d_ind[m]] += d_val[m] * xi.getValue();
+                            w[w_offset + d_ind[m]] += d_val[m] * xi_value[k];
                         }
                     }
                 }
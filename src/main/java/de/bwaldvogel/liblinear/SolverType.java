@@ -54,7 +54,28 @@ public enum SolverType {
      *
      * @since 1.7
      */
-    L2R_LR_DUAL(true);
+    L2R_LR_DUAL(true),
+
+    /**
+     * L2-regularized logistic regression (primal) by L-BFGS
+     *
+     * @since 1.9
+     */
+    L2R_LR_LBFGS(true),
+
+    /**
+     * L2-regularized L2-loss support vector classification (primal) by L-BFGS
+     *
+     * @since 1.9
+     */
+    L2R_L2LOSS_SVC_LBFGS(false),
+
+    /**
+     * L1-regularized logistic regression by OWL-QN
+     *
+     * @since 1.9
+     */
+    L1R_LR_OWLQN(true);
 
     private final boolean logisticRegressionSolver;
 
@@ -0,0 +1,168 @@
+package de.bwaldvogel.liblinear;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The working arrays of {@link Tron}, {@link Lbfgs}, the function objects, the dual and the L1-regularized
+ * coordinate descent solvers, reused across CG iterations, classes and cross-validation folds.</p>
+ *
+ * Every user of an array has its own slot, so that e.g. Tron and its function object can hold their arrays at the
+ * same time. An array is reused as long as the requested length doesn't change, so the classes of a one-vs-rest
+ * model and folds of the same size don't allocate anything. The contents of an array are undefined, the users
+ * initialize them (except {@link #zeros(int, int)}).
+ *
+ * A workspace is used by one solve at a time, concurrent solves take their own workspace from a {@link Pool}.
+ */
+final class SolverWorkspace {
+
+    // Tron, vectors of length n
+    static final int    TRON_S        = 0;
+    static final int    TRON_R        = 1;
+    static final int    TRON_W_NEW    = 2;
+    static final int    TRON_G        = 3;
+    static final int    TRON_D        = 4;
+    static final int    TRON_HD       = 5;
+    static final int    TRON_W0       = 6;
+    static final int    TRON_M        = 7;
+    static final int    TRON_Z        = 8;
+
+    // the function objects, vectors of length l
+    static final int    FUN_Z         = 9;
+    static final int    FUN_D         = 10;
+    static final int    FUN_C         = 11;
+    static final int    FUN_I         = 0;
+
+    // the dual solvers, vectors of length l (alpha of solve_l2r_lr_dual has length 2l)
+    static final int    DUAL_ALPHA    = 12;
+    static final int    DUAL_QD       = 13;
+    static final int    DUAL_INDEX    = 1;
+    static final int    DUAL_Y        = 0;
+    static final int    DUAL_DIAG     = 14;
+    static final int    DUAL_UPPER    = 15;
+
+    // the costs C_i of the instances for the dual and the L1-regularized solvers, length l
+    static final int    COSTS         = 16;
+
+    // the L1-regularized coordinate descent solvers, vectors of length n
+    static final int    L1_XJ_SQ      = 17;
+    static final int    L1_HDIAG      = 18;
+    static final int    L1_GRAD       = 19;
+    static final int    L1_WPD        = 20;
+    static final int    L1_XJNEG_SUM  = 21;
+    static final int    L1_INDEX      = 2;
+
+    // the L1-regularized coordinate descent solvers, vectors of length l
+    static final int    L1_B          = 22;
+    static final int    L1_XTD        = 23;
+    static final int    L1_EXP_WTX    = 24;
+    static final int    L1_EXP_NEW    = 25;
+    static final int    L1_TAU        = 26;
+    static final int    L1_D          = 27;
+    static final int    L1_Y          = 1;
+
+    // Lbfgs, vectors of length n, the pairs of steps and gradient differences and their coefficients
+    static final int    LBFGS_G       = 28;
+    static final int    LBFGS_PG      = 29;
+    static final int    LBFGS_D       = 30;
+    static final int    LBFGS_W_NEW   = 31;
+    static final int    LBFGS_G_NEW   = 32;
+    static final int    LBFGS_W0      = 33;
+    static final int    LBFGS_RHO     = 34;
+    static final int    LBFGS_ALPHA   = 35;
+    static final int    LBFGS_S       = 0;
+    static final int    LBFGS_Y       = 1;
+
+    private final double[][]   doubles  = new double[36][];
+    private final int[][]      ints     = new int[3][];
+    private final byte[][]     bytes    = new byte[2][];
+    private final double[][][] matrices = new double[2][][];
+
+    private RowKernels       kernels;
+
+    /**
+     * @return the array of the slot with the given length, its contents are undefined
+     */
+    double[] doubles(int slot, int length) {
+        double[] array = doubles[slot];
+        if (array == null || array.length != length) {
+            array = new double[length];
+            doubles[slot] = array;
+        }
+        return array;
+    }
+
+    /**
+     * @return the array of the slot with the given length, filled with zeros
+     */
+    double[] zeros(int slot, int length) {
+        double[] array = doubles(slot, length);
+        for (int i = 0; i < length; i++)
+            array[i] = 0;
+        return array;
+    }
+
+    /**
+     * @return the array of the slot with the given length, its contents are undefined
+     */
+    int[] ints(int slot, int length) {
+        int[] array = ints[slot];
+        if (array == null || array.length != length) {
+            array = new int[length];
+            ints[slot] = array;
+        }
+        return array;
+    }
+
+    /**
+     * @return the array of the slot with the given length, its contents are undefined
+     */
+    byte[] bytes(int slot, int length) {
+        byte[] array = bytes[slot];
+        if (array == null || array.length != length) {
+            array = new byte[length];
+            bytes[slot] = array;
+        }
+        return array;
+    }
+
+    /**
+     * @return the rows x length array of the slot, the contents of its rows are undefined
+     */
+    double[][] matrix(int slot, int rows, int length) {
+        double[][] matrix = matrices[slot];
+        if (matrix == null || matrix.length != rows || matrix[0].length != length) {
+            matrix = new double[rows][length];
+            matrices[slot] = matrix;
+        }
+        return matrix;
+    }
+
+    /**
+     * @return the kernels of the rows, shared by all classes of the same rows
+     */
+    RowKernels kernels(SparseRows x, int l, int n, int numThreads) {
+        if (kernels == null || !kernels.isFor(x, l, n, numThreads)) kernels = new RowKernels(x, l, n, numThreads);
+        return kernels;
+    }
+
+    /**
+     * the workspaces of one training or cross validation
+     */
+    static final class Pool {
+
+        private final List<SolverWorkspace> free = new ArrayList<SolverWorkspace>();
+
+        /**
+         * @return a workspace that no other solve uses until it is released
+         */
+        synchronized SolverWorkspace acquire() {
+            if (free.isEmpty()) return new SolverWorkspace();
+            return free.remove(free.size() - 1);
+        }
+
+        synchronized void release(SolverWorkspace workspace) {
+            free.add(workspace);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * <p>Row-wise read access to the sparse instance matrix of a {@link Problem}.</p>
+ *
+ * The solvers only touch the training data through this interface, so that the
+ * instances can be kept in {@link Problem#x} or in one of the primitive storage
+ * backends (see {@link CsrProblem}) without creating {@link libsvm.svm.model.Feature} objects.
+ *
+ * Feature indices are one-based like in {@link Problem#x}, dense vectors are zero-based,
+ * i.e. feature <code>index</code> corresponds to <code>v[index - 1]</code>.
+ *
+ * @since 1.9
+ */
+interface SparseRows {
+
+    /**
+     * @return the number of non-zero entries of row i
+     */
+    int length(int i);
+
+    /**
+     * copies the indices and values of row i into the given arrays,
+     * which must be large enough to hold {@link #length(int)} entries
+     *
+     * @return the number of entries copied
+     */
+    int copy(int i, int[] index, double[] value);
+
+    /**
+     * @return <code>v^T x_i</code>
+     */
+    double dot(int i, double[] v);
+
+    /**
+     * <pre>
+     * v += a * x_i
+     * </pre>
+     */
+    void axpy(int i, double a, double[] v);
+
+    /**
+     * @return <code>x_i^T x_i</code>
+     */
+    double squaredNorm(int i);
+}
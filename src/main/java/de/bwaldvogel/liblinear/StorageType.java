@@ -0,0 +1,50 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * the in-memory representation of the instances of a {@link Problem}
+ *
+ * @see Train#readProblem(java.io.File, double, StorageType)
+ * @since 1.9
+ */
+public enum StorageType {
+
+    /**
+     * one {@link libsvm.svm.model.FeatureNode} per non-zero entry in {@link Problem#x}
+     */
+    FEATURE_NODES,
+
+    /**
+     * compressed sparse rows with double precision values, see {@link CsrProblem}
+     */
+    CSR,
+
+    /**
+     * compressed sparse rows with single precision values, see {@link CsrProblem}.
+     * Needs about half of the memory of {@link #CSR}, all computations are still done in double precision.
+     */
+    CSR_FLOAT,
+
+    /**
+     * compressed sparse rows which only store the indices for rows in which every value is 1,
+     * see {@link CsrProblem#isBinary()}. The other rows keep their values in double precision.
+     */
+    CSR_BINARY,
+
+    /**
+     * delta-coded variable length indices with double precision values, see {@link CompressedProblem}
+     */
+    COMPRESSED,
+
+    /**
+     * delta-coded variable length indices with dictionary-coded values, see {@link CompressedProblem}.
+     * Pays off for data with few distinct values like counts or indicators.
+     */
+    COMPRESSED_DICTIONARY;
+
+    /**
+     * @return true for the storage types of a {@link CompressedProblem}
+     */
+    boolean isCompressed() {
+        return this == COMPRESSED || this == COMPRESSED_DICTIONARY;
+    }
+}
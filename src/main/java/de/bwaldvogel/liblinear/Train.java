@@ -3,14 +3,12 @@ package de.bwaldvogel.liblinear;
 import static de.bwaldvogel.liblinear.Linear.atof;
 import static de.bwaldvogel.liblinear.Linear.atoi;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.StringTokenizer;
 
 import libsvm.svm.model.Feature;
 import libsvm.svm.model.FeatureNode;
@@ -33,6 +31,8 @@ public class Train {
 	private String inputFilename;
 	private String modelFilename;
 	private int nr_fold;
+	private int nr_thread = Runtime.getRuntime().availableProcessors();
+	private FeatureHasher hasher = null;
 	private Parameter param = null;
 	private Problem prob = null;
 
@@ -51,8 +51,9 @@ public class Train {
 				++total_correct;
 
 		System.out.printf("correct: %d%n", total_correct);
+		// weighted instances count as often as their weight
 		System.out.printf("Cross Validation Accuracy = %g%%%n", 100.0
-				* total_correct / prob.l);
+				* Linear.accuracy(prob, target));
 	}
 
 	private void exit_with_help() {
@@ -68,20 +69,25 @@ public class Train {
 						+ "   5 -- L1-regularized L2-loss support vector classification%n"
 						+ "   6 -- L1-regularized logistic regression%n"
 						+ "   7 -- L2-regularized logistic regression (dual)%n"
+						+ "   8 -- L2-regularized logistic regression (primal, L-BFGS)%n"
+						+ "   9 -- L2-regularized L2-loss support vector classification (primal, L-BFGS)%n"
+						+ "  10 -- L1-regularized logistic regression (OWL-QN)%n"
 						+ "-c cost : set the parameter C (default 1)%n"
 						+ "-e epsilon : set tolerance of termination criterion%n"
-						+ "   -s 0 and 2%n"
+						+ "   -s 0, 2, 8 and 9%n"
 						+ "       |f'(w)|_2 <= eps*min(pos,neg)/l*|f'(w0)|_2,%n"
 						+ "       where f is the primal function and pos/neg are # of%n"
 						+ "       positive/negative data (default 0.01)%n"
 						+ "   -s 1, 3, 4 and 7%n"
 						+ "       Dual maximal violation <= eps; similar to libsvm (default 0.1)%n"
-						+ "   -s 5 and 6%n"
+						+ "   -s 5, 6 and 10%n"
 						+ "       |f'(w)|_1 <= eps*min(pos,neg)/l*|f'(w0)|_1,%n"
 						+ "       where f is the primal function (default 0.01)%n"
 						+ "-B bias : if bias >= 0, instance x becomes [x; bias]; if < 0, no bias term added (default -1)%n"
 						+ "-wi weight: weights adjust the parameter C of different classes (see README for details)%n"
 						+ "-v n: n-fold cross validation mode%n"
+						+ "-n nr_thread : number of threads used to read the training set (default: number of processors) and to train (default 1)%n"
+						+ "-H bits : hash the feature keys into 2^bits features with signed hashing (default: no hashing)%n"
 						+ "-q : quiet mode (no outputs)%n");
 		System.exit(1);
 	}
@@ -94,6 +100,14 @@ public class Train {
 		return bias;
 	}
 
+	int getNumThreads() {
+		return nr_thread;
+	}
+
+	FeatureHasher getFeatureHasher() {
+		return hasher;
+	}
+
 	Parameter getParameter() {
 		return param;
 	}
@@ -144,6 +158,25 @@ public class Train {
 					exit_with_help();
 				}
 				break;
+			case 'n':
+				nr_thread = atoi(argv[i]);
+				if (nr_thread < 1) {
+					System.err.println("number of threads must be positive");
+					exit_with_help();
+				}
+				// the training only uses several threads if they are asked for,
+				// so that the model doesn't depend on the number of processors
+				param.setNumThreads(nr_thread);
+				break;
+			case 'H':
+				int bits = atoi(argv[i]);
+				if (bits < 1 || bits > FeatureHasher.MAX_BITS) {
+					System.err.println("number of hash bits must be between 1 and "
+							+ FeatureHasher.MAX_BITS);
+					exit_with_help();
+				}
+				hasher = new FeatureHasher(bits);
+				break;
 			case 'q':
 				linear.disableDebugOutput();
 				break;
@@ -170,7 +203,9 @@ public class Train {
 
 		if (param.eps == Double.POSITIVE_INFINITY) {
 			if (param.solverType == SolverType.L2R_LR
-					|| param.solverType == SolverType.L2R_L2LOSS_SVC) {
+					|| param.solverType == SolverType.L2R_L2LOSS_SVC
+					|| param.solverType == SolverType.L2R_LR_LBFGS
+					|| param.solverType == SolverType.L2R_L2LOSS_SVC_LBFGS) {
 				param.setEps(0.01);
 			} else if (param.solverType == SolverType.L2R_L2LOSS_SVC_DUAL
 					|| param.solverType == SolverType.L2R_L1LOSS_SVC_DUAL
@@ -178,14 +213,16 @@ public class Train {
 					|| param.solverType == SolverType.L2R_LR_DUAL) {
 				param.setEps(0.1);
 			} else if (param.solverType == SolverType.L1R_L2LOSS_SVC
-					|| param.solverType == SolverType.L1R_LR) {
+					|| param.solverType == SolverType.L1R_LR
+					|| param.solverType == SolverType.L1R_LR_OWLQN) {
 				param.setEps(0.01);
 			}
 		}
 	}
 
 	/**
-	 * reads a problem from LibSVM format
+	 * reads a problem from LibSVM format.
+	 * Binary problem files (see {@link ProblemFileWriter}) are detected automatically.
 	 * 
 	 * @param file
 	 *            the SVM file
@@ -196,82 +233,120 @@ public class Train {
 	 */
 	public static Problem readProblem(File file, double bias) throws IOException,
 			InvalidInputDataException {
-		BufferedReader fp = new BufferedReader(new FileReader(file));
+		return readProblem(file, bias, StorageType.FEATURE_NODES);
+	}
+
+	/**
+	 * reads a problem from LibSVM format or from a binary problem file (see
+	 * {@link ProblemFileWriter}) into the given kind of storage
+	 * 
+	 * @see #readProblem(File, double)
+	 * @since 1.9
+	 */
+	public static Problem readProblem(File file, double bias, StorageType storage)
+			throws IOException, InvalidInputDataException {
+		return readProblem(file, bias, storage, 1);
+	}
+
+	/**
+	 * reads a problem with <code>numThreads</code> threads. A file in LibSVM
+	 * format is split into chunks at line boundaries which are parsed in
+	 * parallel, the result is the same as the one of
+	 * {@link #readProblem(File, double, StorageType)}.
+	 * 
+	 * @since 1.9
+	 */
+	public static Problem readProblem(File file, double bias,
+			StorageType storage, int numThreads) throws IOException,
+			InvalidInputDataException {
+		return readProblem(file, bias, storage, numThreads, null);
+	}
+
+	/**
+	 * reads a problem whose feature keys are hashed with the given hasher
+	 * (see {@link FeatureHasher}), the problem has <code>2^bits</code>
+	 * features (plus the bias feature) and records the hasher. The keys of an
+	 * instance don't have to be sorted.
+	 * 
+	 * @param hasher
+	 *            maps the feature keys to indices, null for plain indices
+	 * @throws IllegalArgumentException
+	 *             if a hasher is given for a binary problem file
+	 * @see #readProblem(File, double, StorageType, int)
+	 * @since 1.9
+	 */
+	public static Problem readProblem(File file, double bias,
+			StorageType storage, int numThreads, FeatureHasher hasher)
+			throws IOException, InvalidInputDataException {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("numThreads must be positive");
+		if (ProblemFileFormat.isProblemFile(file)) {
+			if (hasher != null)
+				throw new IllegalArgumentException(
+						"feature hashing is not supported for binary problem files");
+			return ProblemFileReader.read(file, bias, storage);
+		}
+		if (numThreads > 1
+				&& file.length() >= 2L * ParallelProblemReader.MIN_CHUNK_SIZE) {
+			Problem prob = ParallelProblemReader.read(file, bias, storage,
+					numThreads, hasher);
+			prob.featureHasher = hasher;
+			return prob;
+		}
+
+		Reader fp = new FileReader(file);
+		LineReader reader = new LineReader(fp);
 		List<Integer> vy = new ArrayList<Integer>();
 		List<Feature[]> vx = new ArrayList<Feature[]>();
+		ProblemBuilder builder = null;
+		// the parser hashes the keys, the builder only needs the number of features
+		if (storage != StorageType.FEATURE_NODES)
+			builder = new ProblemBuilder(bias, storage, hasher, false);
 		int max_index = 0;
+		LineParser parser = new LineParser(hasher);
 
 		int lineNr = 0;
 
 		try {
 			while (true) {
-				String line = fp.readLine();
-				if (line == null)
+				if (!reader.next())
 					break;
 				lineNr++;
 
-				StringTokenizer st = new StringTokenizer(line, " \t\n\r\f:");
-				String token;
-				try {
-					token = st.nextToken();
-				} catch (NoSuchElementException e) {
-					throw new InvalidInputDataException("empty line", file,
-							lineNr, e);
-				}
+				parser.parse(reader.buf, reader.start, reader.end, file, lineNr);
+				int m = parser.length;
 
-				try {
-					vy.add(atoi(token));
-				} catch (NumberFormatException e) {
-					throw new InvalidInputDataException("invalid label: "
-							+ token, file, lineNr, e);
+				if (builder != null) {
+					builder.beginRow(parser.label);
+					for (int j = 0; j < m; j++)
+						builder.add(parser.indices[j], parser.values[j]);
+					builder.endRow();
+					continue;
 				}
 
-				int m = st.countTokens() / 2;
 				Feature[] x;
 				if (bias >= 0) {
 					x = new Feature[m + 1];
 				} else {
 					x = new Feature[m];
 				}
-				int indexBefore = 0;
-				for (int j = 0; j < m; j++) {
-
-					token = st.nextToken();
-					int index;
-					try {
-						index = atoi(token);
-					} catch (NumberFormatException e) {
-						throw new InvalidInputDataException("invalid index: "
-								+ token, file, lineNr, e);
-					}
-
-					// assert that indices are valid and sorted
-					if (index < 0)
-						throw new InvalidInputDataException("invalid index: "
-								+ index, file, lineNr);
-					if (index <= indexBefore)
-						throw new InvalidInputDataException(
-								"indices must be sorted in ascending order",
-								file, lineNr);
-					indexBefore = index;
-
-					token = st.nextToken();
-					try {
-						double value = atof(token);
-						x[j] = new FeatureNode(index, value);
-					} catch (NumberFormatException e) {
-						throw new InvalidInputDataException("invalid value: "
-								+ token, file, lineNr);
-					}
-				}
+				for (int j = 0; j < m; j++)
+					x[j] = new FeatureNode(parser.indices[j], parser.values[j]);
 				if (m > 0) {
 					max_index = Math.max(max_index, x[m - 1].getIndex());
 				}
 
+				vy.add(parser.label);
 				vx.add(x);
 			}
 
-			return constructProblem(vy, vx, max_index, bias);
+			if (builder != null)
+				return storage.isCompressed() ? builder.buildCompressed() : builder.build();
+			if (hasher != null)
+				max_index = hasher.getDimension();
+			Problem prob = constructProblem(vy, vx, max_index, bias);
+			prob.featureHasher = hasher;
+			return prob;
 		} finally {
 			fp.close();
 		}
@@ -279,7 +354,8 @@ public class Train {
 
 	void readProblem(String filename) throws IOException,
 			InvalidInputDataException {
-		prob = readProblem(new File(filename), bias);
+		prob = readProblem(new File(filename), bias,
+				StorageType.FEATURE_NODES, nr_thread, hasher);
 	}
 
 	private int[] addToArray(int[] array, int newElement) {
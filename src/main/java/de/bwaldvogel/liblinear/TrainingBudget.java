@@ -0,0 +1,43 @@
+package de.bwaldvogel.liblinear;
+
+/**
+ * The iteration limit, deadline and cancellation token of one training (see {@link Parameter}). The solvers call
+ * {@link #shouldStop()} once per outer iteration. The budget is shared by the classes of a one-vs-rest model and by
+ * the folds of a cross validation, so it has to be thread-safe.
+ */
+final class TrainingBudget {
+
+    private final int               maxIterations;
+    private final long              deadline;
+    private final CancellationToken cancellationToken;
+
+    private volatile boolean        stoppedEarly;
+
+    TrainingBudget( Parameter param ) {
+        this.maxIterations = param.maxIterations;
+        this.deadline = param.deadline;
+        this.cancellationToken = param.cancellationToken;
+    }
+
+    /**
+     * @return the iteration limit of the parameter or the default of the solver if it has none
+     */
+    int maxIterations(int defaultValue) {
+        return maxIterations > 0 ? maxIterations : defaultValue;
+    }
+
+    /**
+     * @return true if the deadline has passed or the training was cancelled
+     */
+    boolean shouldStop() {
+        if (stoppedEarly) return true;
+        if ((cancellationToken != null && cancellationToken.isCancelled()) || (deadline > 0 && System.currentTimeMillis() >= deadline)) {
+            stoppedEarly = true;
+        }
+        return stoppedEarly;
+    }
+
+    boolean isStoppedEarly() {
+        return stoppedEarly;
+    }
+}
@@ -11,6 +11,12 @@ class Tron {
 
 	private final int max_iter;
 
+	private final TrainingBudget budget;
+
+	private final SolverWorkspace workspace;
+
+	private final boolean preconditioned;
+
 	public Tron(final Function fun_obj) {
 		this(fun_obj, 0.1);
 	}
@@ -20,9 +26,37 @@ class Tron {
 	}
 
 	public Tron(final Function fun_obj, double eps, int max_iter) {
+		this(fun_obj, eps, max_iter, null);
+	}
+
+	/**
+	 * @param budget stops the iterations at its deadline, null for no limit
+	 */
+	Tron(final Function fun_obj, double eps, int max_iter, TrainingBudget budget) {
+		this(fun_obj, eps, max_iter, budget, new SolverWorkspace());
+	}
+
+	/**
+	 * @param workspace holds the vectors of the iterations, so that another Tron can reuse them
+	 */
+	Tron(final Function fun_obj, double eps, int max_iter, TrainingBudget budget, SolverWorkspace workspace) {
+		this(fun_obj, eps, max_iter, budget, workspace, false);
+	}
+
+	/**
+	 * @param preconditioned runs the conjugate gradient with the diagonal
+	 *            preconditioner of the function (see
+	 *            {@link Function#Hdiag(double[])}), the trust region is then
+	 *            measured in the norm of the preconditioner
+	 */
+	Tron(final Function fun_obj, double eps, int max_iter, TrainingBudget budget, SolverWorkspace workspace,
+			boolean preconditioned) {
 		this.fun_obj = fun_obj;
 		this.eps = eps;
 		this.max_iter = max_iter;
+		this.budget = budget;
+		this.workspace = workspace;
+		this.preconditioned = preconditioned;
 		utils = new Utils();
 	}
 
@@ -38,19 +72,35 @@ class Tron {
 		double delta, snorm, one = 1.0;
 		double alpha, f, fnew, prered, actred, gs;
 		int search = 1, iter = 1;
-		double[] s = new double[n];
-		double[] r = new double[n];
-		double[] w_new = new double[n];
-		double[] g = new double[n];
-
-		for (i = 0; i < n; i++)
-			w[i] = 0;
-
-		f = fun_obj.fun(w);
-		fun_obj.grad(w, g);
-		delta = euclideanNorm(g);
-		double gnorm1 = delta;
-		double gnorm = gnorm1;
+		double[] s = workspace.doubles(SolverWorkspace.TRON_S, n);
+		double[] r = workspace.doubles(SolverWorkspace.TRON_R, n);
+		double[] w_new = workspace.doubles(SolverWorkspace.TRON_W_NEW, n);
+		double[] g = workspace.doubles(SolverWorkspace.TRON_G, n);
+
+		// w is the starting point. The stopping condition is relative to the
+		// gradient at w = 0, so that a warm start doesn't make it stricter.
+		double gnorm1;
+		if (Linear.isZero(w)) {
+			f = fun_obj.fun(w);
+			fun_obj.grad(w, g);
+			gnorm1 = euclideanNorm(g);
+		} else {
+			double[] w0 = workspace.zeros(SolverWorkspace.TRON_W0, n);
+			fun_obj.fun(w0);
+			fun_obj.grad(w0, g);
+			gnorm1 = euclideanNorm(g);
+			f = fun_obj.fun(w);
+			fun_obj.grad(w, g);
+		}
+		double gnorm = euclideanNorm(g);
+		double[] M = null;
+		if (preconditioned) {
+			M = workspace.doubles(SolverWorkspace.TRON_M, n);
+			preconditioner(M);
+			delta = Math.sqrt(uTMv(g, M, g));
+		} else {
+			delta = gnorm;
+		}
 
 		if (gnorm <= eps * gnorm1)
 			search = 0;
@@ -58,7 +108,14 @@ class Tron {
 		iter = 1;
 
 		while (iter <= max_iter && search != 0) {
-			cg_iter = trcg(delta, g, s, r);
+			// w is only replaced by better iterates, so it can be returned at any time
+			if (budget != null && budget.shouldStop())
+				break;
+
+			if (preconditioned)
+				cg_iter = trpcg(delta, g, M, s, r);
+			else
+				cg_iter = trcg(delta, g, s, r);
 
 			System.arraycopy(w, 0, w_new, 0, n);
 			daxpy(one, s, w_new);
@@ -71,7 +128,10 @@ class Tron {
 			actred = f - fnew;
 
 			// On the first iteration, adjust the initial step bound.
-			snorm = euclideanNorm(s);
+			if (preconditioned)
+				snorm = Math.sqrt(uTMv(s, M, s));
+			else
+				snorm = euclideanNorm(s);
 			if (iter == 1)
 				delta = Math.min(delta, snorm);
 
@@ -104,6 +164,8 @@ class Tron {
 				System.arraycopy(w_new, 0, w, 0, n);
 				f = fnew;
 				fun_obj.grad(w, g);
+				if (preconditioned)
+					preconditioner(M);
 
 				gnorm = euclideanNorm(g);
 				if (gnorm <= eps * gnorm1)
@@ -128,8 +190,8 @@ class Tron {
 	private int trcg(double delta, double[] g, double[] s, double[] r) {
 		int n = fun_obj.get_nr_variable();
 		double one = 1;
-		double[] d = new double[n];
-		double[] Hd = new double[n];
+		double[] d = workspace.doubles(SolverWorkspace.TRON_D, n);
+		double[] Hd = workspace.doubles(SolverWorkspace.TRON_HD, n);
 		double rTr, rnewTrnew, cgtol;
 
 		for (int i = 0; i < n; i++) {
@@ -181,6 +243,91 @@ class Tron {
 		return (cg_iter);
 	}
 
+	/**
+	 * the diagonal preconditioner at the current w, a convex combination of
+	 * the identity and the diagonal of the Hessian like in LIBLINEAR 2.20
+	 */
+	private void preconditioner(double[] M) {
+		double alpha_pcg = 0.01;
+		fun_obj.Hdiag(M);
+		for (int i = 0; i < M.length; i++)
+			M[i] = (1 - alpha_pcg) + alpha_pcg * M[i];
+	}
+
+	/**
+	 * the preconditioned conjugate gradient, the trust region constraint is
+	 * <code>||s||_M &lt;= delta</code> with <code>||s||_M^2 = s^T M s</code>
+	 */
+	private int trpcg(double delta, double[] g, double[] M, double[] s, double[] r) {
+		int n = fun_obj.get_nr_variable();
+		double one = 1;
+		double[] d = workspace.doubles(SolverWorkspace.TRON_D, n);
+		double[] Hd = workspace.doubles(SolverWorkspace.TRON_HD, n);
+		double[] z = workspace.doubles(SolverWorkspace.TRON_Z, n);
+		double zTr, znewTrnew, cgtol;
+
+		for (int i = 0; i < n; i++) {
+			s[i] = 0;
+			r[i] = -g[i];
+			z[i] = r[i] / M[i];
+			d[i] = z[i];
+		}
+
+		zTr = dot(z, r);
+		cgtol = 0.1 * Math.sqrt(zTr);
+		int cg_iter = 0;
+
+		while (true) {
+			if (Math.sqrt(zTr) <= cgtol)
+				break;
+			cg_iter++;
+			fun_obj.Hv(d, Hd);
+
+			double alpha = zTr / dot(d, Hd);
+			daxpy(alpha, d, s);
+			if (Math.sqrt(uTMv(s, M, s)) > delta) {
+				utils.info("cg reaches trust region boundary%n");
+				alpha = -alpha;
+				daxpy(alpha, d, s);
+
+				double sTMd = uTMv(s, M, d);
+				double sTMs = uTMv(s, M, s);
+				double dTMd = uTMv(d, M, d);
+				double dsq = delta * delta;
+				double rad = Math.sqrt(sTMd * sTMd + dTMd * (dsq - sTMs));
+				if (sTMd >= 0)
+					alpha = (dsq - sTMs) / (sTMd + rad);
+				else
+					alpha = (rad - sTMd) / dTMd;
+				daxpy(alpha, d, s);
+				alpha = -alpha;
+				daxpy(alpha, Hd, r);
+				break;
+			}
+			alpha = -alpha;
+			daxpy(alpha, Hd, r);
+			for (int i = 0; i < n; i++)
+				z[i] = r[i] / M[i];
+			znewTrnew = dot(z, r);
+			double beta = znewTrnew / zTr;
+			scale(beta, d);
+			daxpy(one, z, d);
+			zTr = znewTrnew;
+		}
+
+		return (cg_iter);
+	}
+
+	/**
+	 * returns <code>u^T M v</code> for the diagonal matrix M
+	 */
+	private double uTMv(double[] u, double[] M, double[] v) {
+		double product = 0;
+		for (int i = 0; i < u.length; i++)
+			product += u[i] * M[i] * v[i];
+		return product;
+	}
+
 	/**
 	 * constant times a vector plus a vector
 	 * 
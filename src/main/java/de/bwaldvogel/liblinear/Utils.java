@@ -1,7 +1,13 @@
 package de.bwaldvogel.liblinear;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Some commonly used methods
@@ -91,4 +97,38 @@ public class Utils {
 	public void resetRandom() {
 		random = new Random(DEFAULT_RANDOM_SEED);
 	}
+
+	/**
+	 * runs the tasks on the executor and waits for all of them, see {@link #join(List, String)}
+	 */
+	static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks, String what) {
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(tasks.size());
+		for (Callable<Void> task : tasks)
+			futures.add(executor.submit(task));
+		join(futures, what);
+	}
+
+	/**
+	 * Waits for all tasks. The exception of a failed task is thrown again, checked exceptions wrapped in an
+	 * IllegalStateException. If the calling thread is interrupted, the tasks are cancelled.
+	 *
+	 * @param what the name of the computation for the error message
+	 */
+	static void join(List<Future<Void>> futures, String what) {
+		try {
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			for (Future<Void> future : futures)
+				future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted while running " + what);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof Error) throw (Error)cause;
+			throw new IllegalStateException(cause);
+		}
+	}
 }
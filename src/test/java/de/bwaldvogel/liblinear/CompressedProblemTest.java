@@ -0,0 +1,163 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+
+public class CompressedProblemTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    private static CompressedProblem compress(Problem prob, StorageType storage) {
+        ProblemBuilder builder = new ProblemBuilder(prob.bias, storage);
+        for (int i = 0; i < prob.l; i++) {
+            builder.beginRow(prob.y[i]);
+            int features = prob.bias >= 0 ? prob.x[i].length - 1 : prob.x[i].length;
+            for (int j = 0; j < features; j++)
+                builder.add(prob.x[i][j].getIndex(), prob.x[i][j].getValue());
+            builder.endRow();
+        }
+        return builder.buildCompressed();
+    }
+
+    private static void assertSameInstances(Problem actual, Problem expected) {
+        assertThat(actual.l).isEqualTo(expected.l);
+        assertThat(actual.n).isEqualTo(expected.n);
+        assertThat(actual.y).isEqualTo(expected.y);
+        int[] index = new int[actual.n];
+        double[] value = new double[actual.n];
+        double[] v = new double[actual.n];
+        for (int j = 0; j < v.length; j++)
+            v[j] = j % 7 - 3;
+        for (int i = 0; i < actual.l; i++) {
+            assertThat(actual.rows().length(i)).isEqualTo(expected.x[i].length);
+            int length = actual.rows().copy(i, index, value);
+            assertThat(length).isEqualTo(expected.x[i].length);
+            double dot = 0;
+            double squaredNorm = 0;
+            for (int j = 0; j < length; j++) {
+                assertThat(index[j]).isEqualTo(expected.x[i][j].getIndex());
+                assertThat(value[j]).isEqualTo(expected.x[i][j].getValue());
+                dot += v[index[j] - 1] * value[j];
+                squaredNorm += value[j] * value[j];
+            }
+            assertThat(actual.rows().dot(i, v)).isEqualTo(dot);
+            assertThat(actual.rows().squaredNorm(i)).isEqualTo(squaredNorm);
+        }
+    }
+
+    /**
+     * a random problem with <code>n</code> set to the largest index that occurs, the builder doesn't know more
+     */
+    private static Problem createRandomProblem() {
+        Problem prob = LinearTest.createRandomProblem(3);
+        prob.n = 0;
+        for (Feature[] row : prob.x)
+            if (row.length > 0) prob.n = Math.max(prob.n, row[row.length - 1].getIndex());
+        return prob;
+    }
+
+    /**
+     * @param j a feature index or 0 for the bias feature
+     * @return the weight of feature j for the k-th decision function, 0 for features the model doesn't know
+     */
+    private static double weight(Model model, int j, int k) {
+        int nr_w = model.w.length / (model.bias >= 0 ? model.nr_feature + 1 : model.nr_feature);
+        if (j > model.nr_feature) return 0;
+        int idx = j == 0 ? model.nr_feature : j - 1;
+        return model.w[idx * nr_w + k];
+    }
+
+    /**
+     * the compressed problem may have fewer features than the original one, because the builder only knows the
+     * largest index that occurs
+     */
+    private static void assertSameModel(Model actual, Model expected, String message) {
+        assertThat(actual.label).as(message).isEqualTo(expected.label);
+        assertThat(actual.bias).as(message).isEqualTo(expected.bias);
+        int nr_w = expected.w.length / (expected.bias >= 0 ? expected.nr_feature + 1 : expected.nr_feature);
+        for (int j = expected.bias >= 0 ? 0 : 1; j <= Math.max(actual.nr_feature, expected.nr_feature); j++) {
+            for (int k = 0; k < nr_w; k++)
+                assertThat(weight(actual, j, k)).as(message + " w[" + j + "]").isEqualTo(weight(expected, j, k), delta(1e-10));
+        }
+    }
+
+    @Test
+    public void testTrainSameModelAsFeatureProblem() {
+        for (double bias : new double[] {-1, 1}) {
+            Problem prob = createRandomProblem();
+            if (bias >= 0) {
+                prob.bias = bias;
+                prob.n++;
+                for (int i = 0; i < prob.l; i++) {
+                    Feature[] row = new FeatureNode[prob.x[i].length + 1];
+                    System.arraycopy(prob.x[i], 0, row, 0, prob.x[i].length);
+                    row[row.length - 1] = new FeatureNode(prob.n, bias);
+                    prob.x[i] = row;
+                }
+            }
+
+            for (StorageType storage : new StorageType[] {StorageType.COMPRESSED, StorageType.COMPRESSED_DICTIONARY}) {
+                CompressedProblem compressed = compress(prob, storage);
+                assertThat(compressed.x).isNull();
+                assertThat(compressed.isDictionaryCoded()).isEqualTo(storage == StorageType.COMPRESSED_DICTIONARY);
+                assertSameInstances(compressed, prob);
+
+                for (SolverType solver : SolverType.values()) {
+                    Parameter param = new Parameter(solver, 1, 0.1);
+                    linear.resetRandom();
+                    Model expected = linear.train(prob, param);
+                    linear.resetRandom();
+                    assertSameModel(linear.train(compressed, param), expected, storage + " " + solver);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLargeIndicesAndFewDistinctValues() {
+        // count data with gaps that need up to three bytes per index
+        Random random = new Random(17);
+        Problem prob = new Problem();
+        prob.l = 500;
+        prob.bias = -1;
+        prob.y = new int[prob.l];
+        prob.x = new Feature[prob.l][];
+        for (int i = 0; i < prob.l; i++) {
+            prob.y[i] = random.nextInt(2);
+            int length = random.nextInt(50);
+            prob.x[i] = new Feature[length];
+            int index = 0;
+            for (int j = 0; j < length; j++) {
+                index += 1 + random.nextInt(j % 5 == 0 ? 100000 : 100);
+                prob.x[i][j] = new FeatureNode(index, random.nextInt(5) - 2);
+            }
+            prob.n = Math.max(prob.n, index);
+        }
+
+        CompressedProblem plain = compress(prob, StorageType.COMPRESSED);
+        CompressedProblem dictionary = compress(prob, StorageType.COMPRESSED_DICTIONARY);
+        assertSameInstances(plain, prob);
+        assertSameInstances(dictionary, prob);
+
+        long nnz = 0;
+        for (int i = 0; i < prob.l; i++)
+            nnz += prob.x[i].length;
+        // CSR needs 12 bytes per non-zero entry
+        assertThat(plain.getMemoryUsage()).isLessThan(11 * nnz);
+        assertThat(dictionary.getMemoryUsage()).isLessThan(4 * nnz);
+    }
+}
@@ -0,0 +1,176 @@
+package de.bwaldvogel.liblinear;
+
+import static de.bwaldvogel.liblinear.Linear.NL;
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+
+public class CsrProblemTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    static CsrProblem toCsr(Problem prob) {
+        int nnz = 0;
+        for (int i = 0; i < prob.l; i++)
+            nnz += prob.x[i].length;
+
+        int[] rowPtr = new int[prob.l + 1];
+        int[] index = new int[nnz];
+        double[] value = new double[nnz];
+        int k = 0;
+        for (int i = 0; i < prob.l; i++) {
+            for (Feature f : prob.x[i]) {
+                index[k] = f.getIndex();
+                value[k] = f.getValue();
+                k++;
+            }
+            rowPtr[i + 1] = k;
+        }
+        return new CsrProblem(rowPtr, index, value, prob.y.clone(), prob.n, prob.bias);
+    }
+
+    @Test
+    public void testTrainSameModelAsFeatureProblem() {
+        Problem prob = LinearTest.createRandomProblem(3);
+        CsrProblem csr = toCsr(prob);
+        assertThat(csr.x).isNull();
+        assertThat(csr.l).isEqualTo(prob.l);
+
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+
+            linear.resetRandom();
+            Model expected = linear.train(prob, param);
+            linear.resetRandom();
+            Model actual = linear.train(csr, param);
+
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testCrossValidation() {
+        Problem prob = LinearTest.createRandomProblem(2);
+        CsrProblem csr = toCsr(prob);
+        Parameter param = new Parameter(SolverType.L2R_L2LOSS_SVC_DUAL, 1, 0.1);
+
+        int[] expected = new int[prob.l];
+        int[] actual = new int[prob.l];
+        linear.resetRandom();
+        linear.crossValidation(prob, param, 5, expected);
+        linear.resetRandom();
+        linear.crossValidation(csr, param, 5, actual);
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void testBinaryProblem() {
+        Problem prob = LinearTest.createRandomProblem(3);
+        // turn it into indicator data with a bias feature that isn't 1
+        prob.bias = 2;
+        prob.n++;
+        int nnz = 0;
+        for (int i = 0; i < prob.l; i++) {
+            Feature[] row = new FeatureNode[prob.x[i].length + 1];
+            for (int j = 0; j < prob.x[i].length; j++)
+                row[j] = new FeatureNode(prob.x[i][j].getIndex(), 1);
+            row[row.length - 1] = new FeatureNode(prob.n, prob.bias);
+            prob.x[i] = row;
+            nnz += row.length;
+        }
+
+        int[] rowPtr = new int[prob.l + 1];
+        int[] index = new int[nnz];
+        for (int i = 0, k = 0; i < prob.l; i++) {
+            for (Feature f : prob.x[i])
+                index[k++] = f.getIndex();
+            rowPtr[i + 1] = k;
+        }
+        CsrProblem binary = new CsrProblem(rowPtr, index, prob.y.clone(), prob.n, prob.bias);
+        assertThat(binary.isBinary()).isTrue();
+
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+
+            linear.resetRandom();
+            Model expected = linear.train(prob, param);
+            linear.resetRandom();
+            Model actual = linear.train(binary, param);
+            assertThat(actual).isEqualTo(expected);
+
+            for (int i = 0; i < prob.l; i++) {
+                int[] x = new int[prob.x[i].length - 1];
+                for (int j = 0; j < x.length; j++)
+                    x[j] = prob.x[i][j].getIndex();
+                assertThat(linear.predict(actual, x)).isEqualTo(linear.predict(expected, prob.x[i]));
+            }
+        }
+    }
+
+    @Test
+    public void testMixedBinaryProblem() throws Exception {
+        File file = File.createTempFile("svm", "test");
+        file.deleteOnExit();
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.append("1 1:1 3:1 4:1").append(NL);
+            writer.append("2 2:0.5 3:1").append(NL);
+            writer.append("1 2:1 5:1").append(NL);
+            writer.append("2 1:1 4:3 5:1").append(NL);
+        }
+        finally {
+            writer.close();
+        }
+
+        Problem expected = Train.readProblem(file, 0.5);
+        CsrProblem binary = (CsrProblem)Train.readProblem(file, 0.5, StorageType.CSR_BINARY);
+        assertThat(binary.isBinary()).isTrue();
+        assertThat(binary.getValue()).isNull();
+        assertThat(binary.n).isEqualTo(expected.n);
+
+        int[] index = new int[binary.n];
+        double[] value = new double[binary.n];
+        for (int i = 0; i < binary.l; i++) {
+            int length = binary.rows().copy(i, index, value);
+            assertThat(length).isEqualTo(expected.x[i].length);
+            for (int j = 0; j < length; j++) {
+                assertThat(index[j]).isEqualTo(expected.x[i][j].getIndex());
+                assertThat(value[j]).isEqualTo(expected.x[i][j].getValue());
+            }
+        }
+
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+            linear.resetRandom();
+            Model expectedModel = linear.train(expected, param);
+            linear.resetRandom();
+            assertThat(linear.train(binary, param)).isEqualTo(expectedModel);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsortedIndices() {
+        new CsrProblem(new int[] {0, 2}, new int[] {2, 1}, new double[] {1, 1}, new int[] {1}, 2, -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIndexLargerThanN() {
+        new CsrProblem(new int[] {0, 2}, new int[] {1, 3}, new double[] {1, 1}, new int[] {1}, 2, -1);
+    }
+}
@@ -0,0 +1,164 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+
+public class DuplicateRowsTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    /** every instance of prob is repeated 1-3 times, the copies are shuffled */
+    private static Problem withDuplicates(Problem prob, Random random) {
+        int[] copies = new int[prob.l];
+        int l = 0;
+        for (int i = 0; i < prob.l; i++) {
+            copies[i] = 1 + random.nextInt(3);
+            l += copies[i];
+        }
+        int[] rows = new int[l];
+        for (int i = 0, k = 0; i < prob.l; i++)
+            for (int c = 0; c < copies[i]; c++)
+                rows[k++] = i;
+        for (int k = l - 1; k > 0; k--) {
+            int j = random.nextInt(k + 1);
+            int tmp = rows[k];
+            rows[k] = rows[j];
+            rows[j] = tmp;
+        }
+
+        Problem result = new Problem();
+        result.l = l;
+        result.n = prob.n;
+        result.bias = prob.bias;
+        result.y = new int[l];
+        result.x = new Feature[l][];
+        for (int k = 0; k < l; k++) {
+            result.y[k] = prob.y[rows[k]];
+            // copy the nodes, so that duplicates are found by value
+            result.x[k] = new Feature[prob.x[rows[k]].length];
+            for (int j = 0; j < result.x[k].length; j++)
+                result.x[k][j] = new FeatureNode(prob.x[rows[k]][j].getIndex(), prob.x[rows[k]][j].getValue());
+        }
+        return result;
+    }
+
+    @Test
+    public void testCollapse() {
+        Problem prob = new Problem();
+        prob.l = 5;
+        prob.n = 3;
+        prob.bias = -1;
+        prob.y = new int[] {1, 2, 1, 1, 2};
+        prob.x = new Feature[][] { //
+            {new FeatureNode(1, 1), new FeatureNode(3, 0.5)}, //
+            {new FeatureNode(1, 1), new FeatureNode(3, 0.5)}, // different label
+            {new FeatureNode(1, 1), new FeatureNode(3, 0.5)}, //
+            {new FeatureNode(1, 1)}, //
+            {new FeatureNode(1, 1), new FeatureNode(3, 0.5)}};
+        prob.W = new double[] {1, 2, 0.5, 1, 1};
+
+        Problem collapsed = Problem.collapseDuplicates(prob);
+        assertThat(collapsed.l).isEqualTo(3);
+        assertThat(collapsed.n).isEqualTo(3);
+        assertThat(collapsed.y).isEqualTo(new int[] {1, 2, 1});
+        assertThat(collapsed.W).isEqualTo(new double[] {1.5, 3, 1});
+        assertThat(collapsed.x[0]).isSameAs(prob.x[0]);
+        assertThat(collapsed.x[2]).isSameAs(prob.x[3]);
+
+        prob.y = new int[] {1, 2, 3, 4, 5};
+        assertThat(Problem.collapseDuplicates(prob)).isSameAs(prob);
+    }
+
+    /** the primal objective of the model on prob with C = 1 */
+    static double objective(Model model, Problem prob) {
+        double[] w = model.getFeatureWeights();
+        int nr_w = model.getNrClass() == 2 && model.solverType != SolverType.MCSVM_CS ? 1 : model.getNrClass();
+        double v = 0;
+        for (double wj : w)
+            v += model.solverType == SolverType.L1R_L2LOSS_SVC || model.solverType == SolverType.L1R_LR
+                || model.solverType == SolverType.L1R_LR_OWLQN ? Math.abs(wj) : 0.5 * wj * wj;
+        for (int i = 0; i < prob.l; i++) {
+            double[] wx = new double[nr_w];
+            for (Feature f : prob.x[i])
+                for (int k = 0; k < nr_w; k++)
+                    wx[k] += w[(f.getIndex() - 1) * nr_w + k] * f.getValue();
+            if (model.solverType == SolverType.MCSVM_CS) {
+                int yi = prob.y[i] == model.getLabels()[0] ? 0 : 1;
+                double max = 0;
+                for (int k = 0; k < nr_w; k++)
+                    if (k != yi) max = Math.max(max, 1 + wx[k] - wx[yi]);
+                v += max;
+                continue;
+            }
+            double ywx = prob.y[i] == model.getLabels()[0] ? wx[0] : -wx[0];
+            if (model.solverType.isLogisticRegressionSolver())
+                v += Math.log(1 + Math.exp(-ywx));
+            else if (model.solverType == SolverType.L2R_L1LOSS_SVC_DUAL)
+                v += Math.max(0, 1 - ywx);
+            else if (ywx < 1) v += (1 - ywx) * (1 - ywx);
+        }
+        return v;
+    }
+
+    @Test
+    public void testTrainOnDistinctInstances() {
+        Random random = new Random(11);
+        Problem distinct = LinearTest.createRandomProblem(2);
+        Problem prob = withDuplicates(distinct, random);
+
+        for (Problem input : new Problem[] {prob, CsrProblemTest.toCsr(prob)}) {
+            Problem collapsed = Problem.collapseDuplicates(input);
+            assertThat(collapsed.l).isEqualTo(distinct.l);
+            double sum = 0;
+            for (double weight : collapsed.W)
+                sum += weight;
+            assertThat(sum).isEqualTo(prob.l);
+
+            for (SolverType solver : SolverType.values()) {
+                // the solutions of the L1-regularized solvers are not unique and the dual solvers stop at
+                // different points, so the objectives are compared instead of the weights
+                Parameter param = new Parameter(solver, 1, 1e-6);
+                double expected = objective(linear.train(prob, param), prob);
+                double actual = objective(linear.train(collapsed, param), prob);
+                assertThat(actual).as(solver.name()).isEqualTo(expected, delta(5e-3 * expected));
+            }
+        }
+    }
+
+    @Test
+    public void testAccuracyCountsTheWeights() {
+        Random random = new Random(12);
+        Problem prob = withDuplicates(LinearTest.createRandomProblem(3), random);
+        Problem collapsed = Problem.collapseDuplicates(prob);
+        Model model = linear.train(collapsed, new Parameter(SolverType.L2R_LR, 0.1, 0.01));
+
+        int[] target = new int[prob.l];
+        for (int i = 0; i < prob.l; i++)
+            target[i] = linear.predict(model, prob.x[i]);
+        int[] collapsedTarget = new int[collapsed.l];
+        for (int i = 0; i < collapsed.l; i++)
+            collapsedTarget[i] = linear.predict(model, collapsed.x[i]);
+        assertThat(Linear.accuracy(collapsed, collapsedTarget)).isEqualTo(Linear.accuracy(prob, target), delta(1e-12));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveWeight() {
+        Problem prob = LinearTest.createRandomProblem(2);
+        prob.W = new double[prob.l];
+        linear.train(prob, new Parameter(SolverType.L2R_LR, 1, 0.1));
+    }
+}
@@ -0,0 +1,39 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+
+public class FeatureColumnsTest {
+
+    /** 2 features of 4 instances, feature 1 is set in the instances 1, 3 and 4, feature 2 in instance 2 */
+    private static FeatureColumns createColumns() {
+        return new FeatureColumns(new CsrRows(new int[] {0, 3, 4}, new int[] {1, 3, 4, 2}, new double[] {1, 3, 4, 2}), 4);
+    }
+
+    @Test
+    public void testIdentity() {
+        FeatureColumns columns = createColumns();
+        assertThat(columns.rowOf).isEqualTo(new int[] {0, 1, 2, 3});
+        assertThat(columns.nnz()).isEqualTo(4);
+    }
+
+    @Test
+    public void testSelect() {
+        FeatureColumns columns = createColumns();
+        FeatureColumns fold = columns.select(new int[] {3, 0, 1});
+        assertThat(fold.rowOf).isEqualTo(new int[] {1, 2, -1, 0});
+        assertThat(fold.x_value).isSameAs(columns.x_value);
+        assertThat(fold.row_index).isSameAs(columns.row_index);
+        assertThat(fold.nnz()).isEqualTo(4);
+    }
+
+    @Test
+    public void testSelectOfSelection() {
+        FeatureColumns fold = createColumns().select(new int[] {3, 0, 1});
+        // row 0 of the permutation is row 1 of the fold, i.e. row 0 of the base problem
+        FeatureColumns permuted = fold.select(new int[] {1, 2, 0});
+        assertThat(permuted.rowOf).isEqualTo(new int[] {0, 1, -1, 2});
+    }
+}
@@ -0,0 +1,217 @@
+package de.bwaldvogel.liblinear;
+
+import static de.bwaldvogel.liblinear.Linear.NL;
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Mockito.mock;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class FeatureHasherTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    private static long hashToken(String token) {
+        return FeatureHasher.hash(token.toCharArray(), 0, token.length());
+    }
+
+    @Test
+    public void testTokensAreHashedLikeKeys() {
+        assertThat(hashToken("abc")).isEqualTo(FeatureHasher.hash("abc"));
+        assertThat(hashToken("123")).isEqualTo(FeatureHasher.hash(123L));
+        assertThat(hashToken("-42")).isEqualTo(FeatureHasher.hash(-42L));
+        assertThat(hashToken("9223372036854775807")).isEqualTo(FeatureHasher.hash(Long.MAX_VALUE));
+        assertThat(hashToken("-9223372036854775808")).isEqualTo(FeatureHasher.hash(Long.MIN_VALUE));
+        // out of range, so it is a string key
+        assertThat(hashToken("9223372036854775808")).isEqualTo(FeatureHasher.hash("9223372036854775808"));
+        assertThat(hashToken("1.5")).isEqualTo(FeatureHasher.hash("1.5"));
+        assertThat(hashToken("-")).isEqualTo(FeatureHasher.hash("-"));
+    }
+
+    @Test
+    public void testIndexAndSign() {
+        FeatureHasher signed = new FeatureHasher(4);
+        FeatureHasher unsigned = new FeatureHasher(4, false);
+        assertThat(signed.getDimension()).isEqualTo(16);
+
+        int negative = 0;
+        for (long key = -500; key < 500; key++) {
+            assertThat(signed.index(key)).isGreaterThanOrEqualTo(1).isLessThanOrEqualTo(16);
+            assertThat(signed.index(key)).isEqualTo(unsigned.index(key));
+            assertThat(unsigned.sign(key)).isEqualTo(1);
+            if (signed.sign(key) < 0) negative++;
+        }
+        assertThat(negative).isGreaterThan(400).isLessThan(600);
+        assertThat(signed.index("feature")).isEqualTo(signed.index("feature"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyBits() {
+        new FeatureHasher(FeatureHasher.MAX_BITS + 1);
+    }
+
+    @Test
+    public void testSortAndMerge() {
+        Random random = new Random(3);
+        for (int length : new int[] {0, 1, 5, 32, 33, 200}) {
+            int[] index = new int[length];
+            double[] value = new double[length];
+            double[] expected = new double[11];
+            for (int k = 0; k < length; k++) {
+                index[k] = random.nextInt(10) + 1;
+                value[k] = random.nextInt(5) - 2;
+                expected[index[k]] += value[k];
+            }
+
+            int merged = FeatureHasher.sortAndMerge(index, value, length);
+            int k = 0;
+            for (int idx = 1; idx <= 10; idx++) {
+                if (expected[idx] == 0) continue;
+                assertThat(index[k]).isEqualTo(idx);
+                assertThat(value[k]).isEqualTo(expected[idx]);
+                k++;
+            }
+            assertThat(merged).isEqualTo(k);
+        }
+    }
+
+    @Test
+    public void testProblemBuilder() {
+        FeatureHasher hasher = new FeatureHasher(3);
+        ProblemBuilder builder = new ProblemBuilder(1, StorageType.CSR, hasher);
+        builder.beginRow(1);
+        builder.addHashed("b", 2);
+        builder.addHashed(77L, 1);
+        builder.addHashed("a", 3);
+        builder.add(5, 4);
+        builder.endRow();
+
+        Problem prob = builder.build();
+        assertThat(prob.featureHasher).isEqualTo(hasher);
+        assertThat(prob.n).isEqualTo(9);
+
+        double[] expected = new double[9];
+        expected[hasher.index("b") - 1] += hasher.sign("b") * 2;
+        expected[hasher.index(77L) - 1] += hasher.sign(77L);
+        expected[hasher.index("a") - 1] += hasher.sign("a") * 3;
+        expected[hasher.index(5L) - 1] += hasher.sign(5L) * 4;
+        expected[8] = 1;
+
+        int[] index = new int[9];
+        double[] value = new double[9];
+        int length = prob.rows().copy(0, index, value);
+        double[] actual = new double[9];
+        for (int j = 0; j < length; j++) {
+            if (j > 0) assertThat(index[j]).isGreaterThan(index[j - 1]);
+            actual[index[j] - 1] = value[j];
+        }
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAddHashedWithoutHasher() {
+        ProblemBuilder builder = new ProblemBuilder(1);
+        builder.beginRow(1);
+        builder.addHashed("a", 1);
+    }
+
+    @Test
+    public void testMalformedFeatureHashingInModel() throws Exception {
+        String header = "solver_type L2R_LR\nnr_class 2\nlabel 0 1\nnr_feature 2\nbias -1\n";
+        for (String hashing : new String[] {"feature_hashing 10", "feature_hashing 10 maybe", "feature_hashing 10 signed 1"}) {
+            try {
+                Linear.loadModel(new StringReader(header + hashing + "\nw\n0.1\n0.2\n"));
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage()).contains(hashing);
+            }
+        }
+    }
+
+    @Test
+    public void testTrainAndPredict() throws Exception {
+        File file = File.createTempFile("svm", "test");
+        file.deleteOnExit();
+
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            int label = random.nextInt(2);
+            sb.append(label);
+            // unsorted string and long keys, the words are more likely in one of the classes
+            for (int j = 0; j < 5; j++) {
+                int word = random.nextInt(50);
+                if (random.nextInt(3) > 0) word = word / 2 * 2 + label;
+                sb.append(" word").append(word).append(':').append(1);
+            }
+            sb.append(' ').append(random.nextLong()).append(":0.5");
+            sb.append(NL);
+        }
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.append(sb);
+        }
+        finally {
+            writer.close();
+        }
+
+        FeatureHasher hasher = new FeatureHasher(10);
+        Problem prob = Train.readProblem(file, 1, StorageType.FEATURE_NODES, 1, hasher);
+        assertThat(prob.n).isEqualTo(1025);
+        assertThat(prob.featureHasher).isEqualTo(hasher);
+        for (StorageType storage : new StorageType[] {StorageType.CSR, StorageType.COMPRESSED}) {
+            Problem other = Train.readProblem(file, 1, storage, 1, hasher);
+            assertThat(other.n).isEqualTo(prob.n);
+            assertThat(other.featureHasher).isEqualTo(hasher);
+            assertThat(linear.train(other, new Parameter(SolverType.L2R_LR, 1, 0.01))).isEqualTo(
+                linear.train(prob, new Parameter(SolverType.L2R_LR, 1, 0.01)));
+        }
+        Problem parallel = ParallelProblemReader.read(file, 1, StorageType.CSR, 3, hasher, 4096);
+        assertThat(parallel.n).isEqualTo(prob.n);
+
+        Model model = linear.train(prob, new Parameter(SolverType.L2R_LR, 1, 0.01));
+        assertThat(model.getFeatureHasher()).isEqualTo(hasher);
+        assertThat(model.getNrFeature()).isEqualTo(1024);
+
+        StringWriter modelWriter = new StringWriter();
+        Linear.saveModel(modelWriter, model);
+        Model loaded = Linear.loadModel(new StringReader(modelWriter.toString()));
+        assertThat(loaded.getFeatureHasher()).isEqualTo(hasher);
+        assertThat(loaded.getNrFeature()).isEqualTo(model.getNrFeature());
+
+        PrintStream out = System.out;
+        System.setOut(mock(PrintStream.class));
+        StringWriter predictions = new StringWriter();
+        try {
+            new Predict().doPredict(new BufferedReader(new StringReader(sb.toString())), predictions, loaded);
+        }
+        finally {
+            System.setOut(out);
+        }
+        String[] lines = predictions.toString().split("\n");
+        assertThat(lines).hasSize(prob.l);
+        int correct = 0;
+        for (int i = 0; i < prob.l; i++) {
+            int expected = linear.predict(loaded, prob.x[i]);
+            assertThat(Integer.parseInt(lines[i])).isEqualTo(expected);
+            if (expected == prob.y[i]) correct++;
+        }
+        assertThat(correct).isGreaterThan(prob.l * 2 / 3);
+    }
+}
@@ -0,0 +1,93 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class LbfgsTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    private static double objective(SolverType solver, Problem prob, double eps) {
+        return DuplicateRowsTest.objective(linear.train(prob, new Parameter(solver, 1, eps)), prob);
+    }
+
+    @Test
+    public void testSameOptimumAsTron() {
+        Problem prob = TronTest.createBadlyScaledProblem(new Random(4));
+        assertThat(objective(SolverType.L2R_LR_LBFGS, prob, 1e-6)).isEqualTo(objective(SolverType.L2R_LR, prob, 1e-6),
+            delta(1e-5 * objective(SolverType.L2R_LR, prob, 1e-6)));
+        assertThat(objective(SolverType.L2R_L2LOSS_SVC_LBFGS, prob, 1e-6)).isEqualTo(objective(SolverType.L2R_L2LOSS_SVC, prob, 1e-6),
+            delta(1e-5 * objective(SolverType.L2R_L2LOSS_SVC, prob, 1e-6)));
+    }
+
+    @Test
+    public void testOwlqnReachesTheOptimumOfCoordinateDescent() {
+        Problem prob = RowKernelsTest.createProblem(new Random(5));
+        double expected = objective(SolverType.L1R_LR, prob, 1e-6);
+        assertThat(objective(SolverType.L1R_LR_OWLQN, prob, 1e-6)).isEqualTo(expected, delta(1e-4 * expected));
+    }
+
+    @Test
+    public void testOwlqnWeightsAreSparse() {
+        Problem prob = RowKernelsTest.createProblem(new Random(6));
+        Model model = linear.train(prob, new Parameter(SolverType.L1R_LR_OWLQN, 0.1, 0.01));
+        int zeros = 0;
+        for (double w : model.getFeatureWeights())
+            if (w == 0) zeros++;
+        assertThat(zeros).isGreaterThan(prob.n / 2).isLessThan(prob.n);
+    }
+
+    @Test
+    public void testReusedWorkspaceGivesTheSameWeights() {
+        Problem prob = TronTest.createBadlyScaledProblem(new Random(7));
+        for (boolean l1 : new boolean[] {false, true}) {
+            double[] expected = new double[prob.n];
+            new Lbfgs(new L2R_LrFunction(prob, 1, 1, 1, new SolverWorkspace(), !l1), 1e-4, 1000, null, new SolverWorkspace(), l1)
+                .minimize(expected);
+
+            SolverWorkspace workspace = new SolverWorkspace();
+            double[] w = new double[prob.n];
+            for (int j = 0; j < prob.n; j++)
+                w[j] = 0.1;
+            // leaves the stored pairs and the vectors of a warm start in the workspace
+            new Lbfgs(new L2R_LrFunction(prob, 2, 2, 1, workspace, !l1), 1e-4, 1000, null, workspace, l1).minimize(w);
+            double[] actual = new double[prob.n];
+            new Lbfgs(new L2R_LrFunction(prob, 1, 1, 1, workspace, !l1), 1e-4, 1000, null, workspace, l1).minimize(actual);
+            assertThat(actual).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testLossWithoutRegularization() {
+        Problem prob = LinearTest.createRandomProblem(2);
+        for (int i = 0; i < prob.l; i++)
+            prob.y[i] = prob.y[i] == 0 ? -1 : 1;
+        double[] w = new double[prob.n];
+        for (int j = 0; j < prob.n; j++)
+            w[j] = 0.1 * (j % 5 - 2);
+        Function regularized = new L2R_LrFunction(prob, 1, 2, 1, new SolverWorkspace());
+        Function loss = new L2R_LrFunction(prob, 1, 2, 1, new SolverWorkspace(), false);
+        double ww = 0;
+        for (double wj : w)
+            ww += wj * wj;
+        assertThat(loss.fun(w)).isEqualTo(regularized.fun(w) - ww / 2, delta(1e-10));
+
+        double[] g = new double[prob.n];
+        double[] g_loss = new double[prob.n];
+        regularized.grad(w, g);
+        loss.grad(w, g_loss);
+        for (int j = 0; j < prob.n; j++)
+            assertThat(g_loss[j]).isEqualTo(g[j] - w[j], delta(1e-10));
+    }
+}
@@ -0,0 +1,44 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+
+public class LineReaderTest {
+
+    private static List<String> readLines(String text, int bufferSize) throws Exception {
+        LineReader reader = new LineReader(new StringReader(text), bufferSize);
+        List<String> lines = new ArrayList<String>();
+        while (reader.next()) {
+            lines.add(new String(reader.buf, reader.start, reader.end - reader.start));
+        }
+        return lines;
+    }
+
+    private static List<String> readLinesWithBufferedReader(String text) throws Exception {
+        BufferedReader reader = new BufferedReader(new StringReader(text));
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testSameLinesAsBufferedReader() throws Exception {
+        for (String text : new String[] {"", "\n", "a", "a\n", "a\nb", "a\r\nb\r\n", "a\rb\r", "a\r\r\nb", "\n\n\r\n", "1 1:2 3:4\n2 5:6\r\n3",
+            "a very long line which doesn't fit into the buffer\r\nand another one\rand a last one"}) {
+            List<String> expected = readLinesWithBufferedReader(text);
+            for (int bufferSize : new int[] {1, 2, 3, 7, 1024}) {
+                assertThat(readLines(text, bufferSize)).as(text + " / " + bufferSize).isEqualTo(expected);
+            }
+        }
+    }
+}
@@ -118,7 +118,7 @@ public class LinearTest {
 
                 // compared the behavior with the C version
                 if (C < 0.2) if (solver == SolverType.L1R_L2LOSS_SVC) continue;
-                if (C < 0.7) if (solver == SolverType.L1R_LR) continue;
+                if (C < 0.7) if (solver == SolverType.L1R_LR || solver == SolverType.L1R_LR_OWLQN) continue;
 
                 Parameter param = new Parameter(solver, C, 0.1);
                 Model model = linear.train(prob, param);
@@ -168,6 +168,46 @@ public class LinearTest {
         }
     }
 
+    @Test
+    public void testTrainOneVsRestWithSeveralThreads() {
+        Problem prob = createRandomProblem(5);
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+            linear.resetRandom();
+            Model expected = linear.train(prob, param);
+
+            for (int numThreads : new int[] {2, 8}) {
+                param.setNumThreads(numThreads);
+                linear.resetRandom();
+                assertThat(linear.train(prob, param)).as(solver + " with " + numThreads + " threads").isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNumThreads() {
+        new Parameter(SolverType.L2R_LR, 1, 0.1).setNumThreads(0);
+    }
+
+    @Test
+    public void testCrossValidationWithSeveralThreads() {
+        Problem prob = createRandomProblem(3);
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+            int[] expected = new int[prob.l];
+            linear.resetRandom();
+            linear.crossValidation(prob, param, 5, expected);
+
+            for (int numThreads : new int[] {3, 16}) {
+                param.setNumThreads(numThreads);
+                int[] target = new int[prob.l];
+                linear.resetRandom();
+                linear.crossValidation(prob, param, 5, target);
+                assertThat(target).as(solver + " with " + numThreads + " threads").isEqualTo(expected);
+            }
+        }
+    }
+
     @Test
     public void testLoadSaveModel() throws Exception {
 
@@ -0,0 +1,199 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+
+public class MappedProblemTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    /**
+     * writes the instances of prob, which must not have a bias feature, and sets prob.n to the largest index
+     */
+    static File writeProblem(Problem prob, double bias) throws Exception {
+        File file = File.createTempFile("problem", ".bin");
+        file.deleteOnExit();
+
+        long nnz = 0;
+        int max_length = 0;
+        for (Feature[] row : prob.x) {
+            nnz += row.length;
+            max_length = Math.max(max_length, row.length);
+        }
+
+        int[] index = new int[max_length];
+        double[] value = new double[max_length];
+        int max_index = 0;
+        ProblemFileWriter writer = new ProblemFileWriter(file, prob.l, nnz, bias);
+        for (int i = 0; i < prob.l; i++) {
+            for (int j = 0; j < prob.x[i].length; j++) {
+                index[j] = prob.x[i][j].getIndex();
+                value[j] = prob.x[i][j].getValue();
+                max_index = Math.max(max_index, index[j]);
+            }
+            writer.writeRow(prob.y[i], index, value, prob.x[i].length);
+        }
+        writer.close();
+
+        prob.n = max_index;
+        return file;
+    }
+
+    @Test
+    public void testTrainSameModelAsFeatureProblem() throws Exception {
+        Problem prob = LinearTest.createRandomProblem(3);
+        File file = writeProblem(prob, -1);
+
+        // tiny segments, so that many rows span several of them
+        for (int segmentSize : new int[] {8, 64, MappedProblem.DEFAULT_SEGMENT_SIZE}) {
+            MappedProblem mapped = MappedProblem.open(file, -1, segmentSize);
+            assertThat(mapped.x).isNull();
+            assertThat(mapped.l).isEqualTo(prob.l);
+            assertThat(mapped.n).isEqualTo(prob.n);
+            assertThat(mapped.y).isEqualTo(prob.y);
+
+            for (SolverType solver : SolverType.values()) {
+                Parameter param = new Parameter(solver, 1, 0.1);
+
+                linear.resetRandom();
+                Model expected = linear.train(prob, param);
+                linear.resetRandom();
+                assertThat(linear.train(mapped, param)).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    public void testBias() throws Exception {
+        Problem prob = LinearTest.createRandomProblem(2);
+        File file = writeProblem(prob, 2);
+
+        Problem expected = new Problem();
+        expected.l = prob.l;
+        expected.n = prob.n + 1;
+        expected.y = prob.y;
+        expected.bias = 2;
+        expected.x = new Feature[prob.l][];
+        for (int i = 0; i < prob.l; i++) {
+            expected.x[i] = new FeatureNode[prob.x[i].length + 1];
+            System.arraycopy(prob.x[i], 0, expected.x[i], 0, prob.x[i].length);
+            expected.x[i][prob.x[i].length] = new FeatureNode(expected.n, 2);
+        }
+
+        MappedProblem mapped = MappedProblem.open(file);
+        assertThat(mapped.bias).isEqualTo(2);
+        assertThat(mapped.n).isEqualTo(expected.n);
+
+        int[] index = new int[mapped.n];
+        double[] value = new double[mapped.n];
+        for (int i = 0; i < mapped.l; i++) {
+            int length = mapped.rows().copy(i, index, value);
+            assertThat(length).isEqualTo(expected.x[i].length);
+            for (int j = 0; j < length; j++) {
+                assertThat(index[j]).isEqualTo(expected.x[i][j].getIndex());
+                assertThat(value[j]).isEqualTo(expected.x[i][j].getValue());
+            }
+        }
+
+        Parameter param = new Parameter(SolverType.L2R_LR, 1, 0.1);
+        assertThat(linear.train(mapped, param)).isEqualTo(linear.train(expected, param));
+
+        // the bias can be overridden
+        assertThat(MappedProblem.open(file, -1).n).isEqualTo(prob.n);
+    }
+
+    @Test
+    public void testCrossValidation() throws Exception {
+        Problem prob = LinearTest.createRandomProblem(2);
+        MappedProblem mapped = MappedProblem.open(writeProblem(prob, -1), -1, 64);
+        Parameter param = new Parameter(SolverType.L2R_L2LOSS_SVC_DUAL, 1, 0.1);
+
+        int[] expected = new int[prob.l];
+        int[] actual = new int[prob.l];
+        linear.resetRandom();
+        linear.crossValidation(prob, param, 5, expected);
+        linear.resetRandom();
+        linear.crossValidation(mapped, param, 5, actual);
+
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void testWrongNumberOfRows() throws Exception {
+        File file = File.createTempFile("problem", ".bin");
+        file.deleteOnExit();
+        ProblemFileWriter writer = new ProblemFileWriter(file, 2, 1, -1);
+        writer.writeRow(1, new int[] {1}, new double[] {1}, 1);
+        try {
+            writer.close();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("only 1 of 2 instances have been written");
+        }
+    }
+
+    /** overwrites the stored index k of the file */
+    private static void patchIndex(File file, long k, int index) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            ProblemFileFormat format = ProblemFileFormat.readHeader(file, raf.getChannel());
+            ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(index).flip();
+            raf.getChannel().write(buffer, format.indexOffset + 4 * k);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void testInvalidIndices() throws Exception {
+        Problem prob = new Problem();
+        prob.l = 2;
+        prob.y = new int[] {1, 2};
+        prob.x = new Feature[][] { {new FeatureNode(1, 1), new FeatureNode(3, 1)}, {new FeatureNode(2, 1)}};
+        for (int[] patch : new int[][] { {1, 1}, {2, 4}, {2, 0}}) {
+            File file = writeProblem(prob, -1);
+            patchIndex(file, patch[0], patch[1]);
+            try {
+                MappedProblem.open(file);
+                fail("InvalidInputDataException expected");
+            } catch (InvalidInputDataException e) {
+                assertThat(e.getMessage()).contains("feature indices");
+            }
+        }
+    }
+
+    @Test
+    public void testNoProblemFile() throws Exception {
+        File file = File.createTempFile("problem", ".txt");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("1 1:1 2:3\n".getBytes());
+        out.close();
+
+        try {
+            MappedProblem.open(file);
+            fail("InvalidInputDataException expected");
+        } catch (InvalidInputDataException e) {
+            assertThat(e.getFile()).isEqualTo(file);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class NumberScannerTest {
+
+    private static double parseDouble(String s) {
+        char[] chars = ("x" + s + "y").toCharArray();
+        return NumberScanner.parseDouble(chars, 1, chars.length - 1);
+    }
+
+    private static int parseInt(String s) {
+        char[] chars = ("x" + s + "y").toCharArray();
+        return NumberScanner.parseInt(chars, 1, chars.length - 1);
+    }
+
+    private static void assertSameDouble(String s) {
+        double expected = Double.parseDouble(s);
+        double actual = parseDouble(s);
+        // compare the bits, this also checks the sign of zero
+        assertThat(Double.doubleToRawLongBits(actual)).as(s).isEqualTo(Double.doubleToRawLongBits(expected));
+    }
+
+    @Test
+    public void testParseDouble() {
+        for (String s : new String[] {"0", "-0", "+0", "0.0", "-0.0", "1", "-1", "+1", "1.", ".5", "-.5", "+.5", "0.1", "0.3", "-1.2",
+            "3.141592653589793", "2.718281828459045", "1e10", "1E10", "1e-10", "1.5e+3", "-2.5E-3", "123456789012345678",
+            "1234567890123456789", "0.000000000000000000001", "9007199254740993", "9007199254740992", "1e22", "1e23", "1e-22",
+            "1e-23", "4.9e-324", "1.7976931348623157e308", "0e999", "1.0d", "1.0f", "0x1p3", " 1", "1 ", "00001.25000",
+            "0.1000000000000000055511151231257827", "17.0e-1", "5e-1", "123.456e2"}) {
+            assertSameDouble(s);
+        }
+    }
+
+    @Test
+    public void testParseRandomDoubles() {
+        Random random = new Random(0);
+        for (int i = 0; i < 100000; i++) {
+            double d;
+            switch (i % 4) {
+                case 0:
+                    d = random.nextDouble();
+                    break;
+                case 1:
+                    d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(40) - 20);
+                    break;
+                case 2:
+                    d = random.nextInt(100000) / 1000.0;
+                    break;
+                default:
+                    d = Double.longBitsToDouble(random.nextLong());
+                    if (Double.isNaN(d) || Double.isInfinite(d)) continue;
+            }
+            assertSameDouble(Double.toString(d));
+            assertSameDouble(String.format(Locale.ENGLISH, "%.6g", d));
+            assertSameDouble(String.format(Locale.ENGLISH, "%.3f", d));
+        }
+    }
+
+    @Test
+    public void testParseInvalidDouble() {
+        for (String s : new String[] {"", ".", "-", "e5", "1e", "1e+", "1.2.3", "abc", "1,5"}) {
+            try {
+                parseDouble(s);
+                fail("NumberFormatException expected for '" + s + "'");
+            } catch (NumberFormatException e) {
+                // expected
+            } catch (IllegalArgumentException e) {
+                // atof rejects empty strings with an IllegalArgumentException
+                assertThat(s).isEmpty();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseNaN() {
+        parseDouble("NaN");
+    }
+
+    @Test
+    public void testParseInt() {
+        for (String s : new String[] {"0", "-0", "+0", "1", "-1", "+17", "123456789", "-123456789", "2147483647", "-2147483648", "007"}) {
+            assertThat(parseInt(s)).as(s).isEqualTo(Linear.atoi(s));
+        }
+
+        for (String s : new String[] {"2147483648", "1.0", "a", "-", "+", "1e3"}) {
+            try {
+                parseInt(s);
+                fail("NumberFormatException expected for '" + s + "'");
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class ParallelDualCoordinateDescentTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    @Test
+    public void testSameSolutionAsSequentialSolver() {
+        Problem prob = RowKernelsTest.createProblem(new Random(13));
+        for (SolverType solver : new SolverType[] {SolverType.L2R_L2LOSS_SVC_DUAL, SolverType.L2R_L1LOSS_SVC_DUAL}) {
+            Parameter param = new Parameter(solver, 0.1, 1e-4);
+            double[] expected = linear.train(prob, param).getFeatureWeights();
+
+            param.setNumThreads(4);
+            param.setAsynchronousDual(true);
+            double[] actual = linear.train(prob, param).getFeatureWeights();
+            for (int j = 0; j < expected.length; j++)
+                assertThat(actual[j]).as(solver + " w[" + j + "]").isEqualTo(expected[j], delta(1e-3));
+        }
+    }
+
+    @Test
+    public void testThreadsAloneKeepTheSequentialSolver() {
+        Problem prob = RowKernelsTest.createProblem(new Random(15));
+        Parameter param = new Parameter(SolverType.L2R_L2LOSS_SVC_DUAL, 0.1, 1e-2);
+        linear.resetRandom();
+        Model expected = linear.train(prob, param);
+        param.setNumThreads(4);
+        linear.resetRandom();
+        assertThat(linear.train(prob, param)).isEqualTo(expected);
+    }
+
+    @Test
+    public void testWarmStartAndDeadline() {
+        Problem prob = RowKernelsTest.createProblem(new Random(14));
+        Parameter param = new Parameter(SolverType.L2R_L2LOSS_SVC_DUAL, 0.1, 1e-4);
+        param.setNumThreads(3);
+        param.setAsynchronousDual(true);
+        Model optimum = linear.train(prob, param);
+        Model warm = linear.train(prob, param, optimum);
+        for (int j = 0; j < optimum.w.length; j++)
+            assertThat(warm.w[j]).isEqualTo(optimum.w[j], delta(1e-3));
+
+        param.setDeadline(1);
+        assertThat(linear.train(prob, param).isStoppedEarly()).isTrue();
+    }
+}
@@ -0,0 +1,112 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+
+public class ParallelProblemReaderTest {
+
+    private static final Random random = new Random(42);
+
+    private static File createFile(int lines, int brokenLine, String brokenContent) throws Exception {
+        File file = File.createTempFile("svm", "test");
+        file.deleteOnExit();
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            for (int lineNr = 1; lineNr <= lines; lineNr++) {
+                if (lineNr == brokenLine) {
+                    writer.append(brokenContent);
+                } else {
+                    writer.append(Integer.toString(random.nextInt(3)));
+                    int index = 0;
+                    int m = random.nextInt(8);
+                    for (int j = 0; j < m; j++) {
+                        index += random.nextInt(5) + 1;
+                        writer.append(' ').append(Integer.toString(index)).append(':').append(Double.toString(random.nextDouble()));
+                    }
+                }
+                // mix the line terminators
+                writer.append(lineNr % 7 == 0 ? "\r\n" : "\n");
+            }
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void testSameProblemAsSequentialReader() throws Exception {
+        File file = createFile(2000, -1, null);
+
+        for (double bias : new double[] {-1, 1}) {
+            for (StorageType storage : StorageType.values()) {
+                Problem expected = Train.readProblem(file, bias, storage);
+                for (int numThreads : new int[] {1, 2, 5}) {
+                    Problem actual = ParallelProblemReader.read(file, bias, storage, numThreads, null, 256);
+                    assertThat(actual.l).isEqualTo(expected.l);
+                    assertThat(actual.n).isEqualTo(expected.n);
+                    assertThat(actual.bias).isEqualTo(expected.bias);
+                    assertThat(actual.y).isEqualTo(expected.y);
+                    assertThat(actual.getClass()).isEqualTo(expected.getClass());
+
+                    int[] index = new int[actual.n];
+                    double[] value = new double[actual.n];
+                    int[] expectedIndex = new int[expected.n];
+                    double[] expectedValue = new double[expected.n];
+                    for (int i = 0; i < actual.l; i++) {
+                        int length = actual.rows().copy(i, index, value);
+                        assertThat(length).isEqualTo(expected.rows().copy(i, expectedIndex, expectedValue));
+                        for (int j = 0; j < length; j++) {
+                            assertThat(index[j]).isEqualTo(expectedIndex[j]);
+                            assertThat(value[j]).isEqualTo(expectedValue[j]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLineNumberOfError() throws Exception {
+        for (int brokenLine : new int[] {1, 777, 1999}) {
+            File file = createFile(2000, brokenLine, "1 3:1 2:1");
+            try {
+                ParallelProblemReader.read(file, -1, StorageType.CSR, 4, null, 256);
+                fail("InvalidInputDataException expected");
+            } catch (InvalidInputDataException e) {
+                assertThat(e.getLine()).isEqualTo(brokenLine);
+                assertThat(e.getFile()).isEqualTo(file);
+                assertThat(e).hasMessage("indices must be sorted in ascending order");
+            }
+        }
+    }
+
+    @Test
+    public void testFirstErrorIsReported() throws Exception {
+        File file = createFile(2000, 1500, "x");
+        try {
+            ParallelProblemReader.read(file, -1, StorageType.FEATURE_NODES, 4, null, 256);
+            fail("InvalidInputDataException expected");
+        } catch (InvalidInputDataException e) {
+            assertThat(e.getLine()).isEqualTo(1500);
+            assertThat(e).hasMessage("invalid label: x");
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        File file = createFile(0, -1, null);
+        Problem prob = ParallelProblemReader.read(file, 1, StorageType.CSR, 4, null, 256);
+        assertThat(prob.l).isEqualTo(0);
+        assertThat(prob.n).isEqualTo(1);
+    }
+}
@@ -0,0 +1,154 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+import org.junit.Test;
+
+
+public class ProblemBuilderTest {
+
+    @Test
+    public void testBuildWithBias() {
+        ProblemBuilder builder = new ProblemBuilder(1);
+        // the example of Problem
+        builder.addRow(1, new int[] {2, 3}, new double[] {0.1, 0.2}, 2);
+        builder.addRow(2, new int[] {2, 3, 4}, new double[] {0.1, 0.3, -1.2}, 3);
+        builder.addRow(1, new int[] {1}, new double[] {0.4}, 1);
+        builder.beginRow(2);
+        builder.add(2, 0.1);
+        builder.add(4, 1.4);
+        builder.add(5, 0.5);
+        builder.endRow();
+        builder.addRow(3, new int[] {1, 2, 3, 4, 5}, new double[] {-0.1, -0.2, 0.1, 1.1, 0.1}, 5);
+        assertThat(builder.size()).isEqualTo(5);
+        assertThat(builder.getMaxIndex()).isEqualTo(5);
+
+        CsrProblem prob = builder.build();
+        assertThat(prob.l).isEqualTo(5);
+        assertThat(prob.n).isEqualTo(6);
+        assertThat(prob.bias).isEqualTo(1);
+        assertThat(prob.y).isEqualTo(new int[] {1, 2, 1, 2, 3});
+        assertThat(prob.getRowPtr()).isEqualTo(new int[] {0, 3, 7, 9, 13, 19});
+
+        int[] expectedIndex = {2, 3, 6, 2, 3, 4, 6, 1, 6, 2, 4, 5, 6, 1, 2, 3, 4, 5, 6};
+        double[] expectedValue = {0.1, 0.2, 1, 0.1, 0.3, -1.2, 1, 0.4, 1, 0.1, 1.4, 0.5, 1, -0.1, -0.2, 0.1, 1.1, 0.1, 1};
+        for (int k = 0; k < expectedIndex.length; k++) {
+            assertThat(prob.getIndex()[k]).isEqualTo(expectedIndex[k]);
+            assertThat(prob.getValue()[k]).isEqualTo(expectedValue[k]);
+        }
+    }
+
+    @Test
+    public void testBuildWithoutBias() {
+        ProblemBuilder builder = new ProblemBuilder(-1, StorageType.CSR_FLOAT);
+        for (int i = 0; i < 1000; i++) {
+            builder.addRow(i % 3, new int[] {i + 1, i + 3}, new double[] {0.5, i}, 2);
+        }
+        builder.addRow(1, new int[0], new double[0], 0);
+
+        CsrProblem prob = builder.build();
+        assertThat(prob.l).isEqualTo(1001);
+        assertThat(prob.n).isEqualTo(1002);
+        assertThat(prob.isSinglePrecision()).isTrue();
+        assertThat(prob.rows().length(1000)).isEqualTo(0);
+        assertThat(prob.rows().dot(999, new double[prob.n])).isEqualTo(0);
+    }
+
+    @Test
+    public void testStatisticsAreCollectedWhileBuilding() {
+        StorageType[] storages = {StorageType.CSR, StorageType.CSR_FLOAT, StorageType.CSR_BINARY, StorageType.COMPRESSED,
+            StorageType.COMPRESSED_DICTIONARY};
+        for (StorageType storage : storages) {
+            for (double bias : new double[] {-1, 0.3})
+            for (FeatureHasher hasher : new FeatureHasher[] {null, new FeatureHasher(4)}) {
+                ProblemBuilder builder = new ProblemBuilder(bias, storage, hasher);
+                builder.addRow(1, new int[] {2, 7}, new double[] {0.1, 1}, 2);
+                builder.addRow(2, new int[] {1, 2, 3}, new double[] {1, 1, 1}, 3);
+                builder.addRow(1, new int[0], new double[0], 0);
+                Problem prob = storage.isCompressed() ? builder.buildCompressed() : builder.build();
+
+                RowStatistics expected = RowStatistics.compute(prob.rows(), prob.l);
+                RowStatistics actual = prob.rowStatistics();
+                String message = storage + " with bias " + bias + (hasher != null ? " and hashing" : "");
+                assertThat(actual.length).as(message).isEqualTo(expected.length);
+                assertThat(actual.squaredNorm).as(message).isEqualTo(expected.squaredNorm);
+                assertThat(actual.maxIndex).as(message).isEqualTo(expected.maxIndex);
+            }
+        }
+    }
+
+    @Test
+    public void testBrokenRowIsDropped() {
+        ProblemBuilder builder = new ProblemBuilder(1);
+        builder.addRow(1, new int[] {1, 2}, new double[] {1, 1}, 2);
+        try {
+            builder.addRow(2, new int[] {7, 3}, new double[] {1, 1}, 2);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertThat(e).hasMessage("feature nodes must be sorted by index in ascending order");
+        }
+        assertThat(builder.size()).isEqualTo(1);
+        assertThat(builder.getMaxIndex()).isEqualTo(2);
+
+        builder.addRow(2, new int[] {1}, new double[] {2}, 1);
+        CsrProblem prob = builder.build();
+        assertThat(prob.n).isEqualTo(3);
+        assertThat(prob.getRowPtr()).isEqualTo(new int[] {0, 3, 5});
+    }
+
+    @Test
+    public void testIllegalState() {
+        ProblemBuilder builder = new ProblemBuilder(1);
+        try {
+            builder.add(1, 1);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        builder.beginRow(1);
+        try {
+            builder.build();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        builder.endRow();
+
+        builder.build();
+        try {
+            builder.beginRow(1);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("the problem has already been built");
+        }
+    }
+
+    @Test
+    public void testBuildMatchesTheStorageType() {
+        ProblemBuilder builder = new ProblemBuilder(1, StorageType.COMPRESSED);
+        builder.addRow(1, new int[] {1}, new double[] {1}, 1);
+        try {
+            builder.build();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("the problem is compressed, use buildCompressed()");
+        }
+        assertThat(builder.buildCompressed().l).isEqualTo(1);
+
+        builder = new ProblemBuilder(1, StorageType.CSR_BINARY);
+        try {
+            builder.buildCompressed();
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("the problem isn't compressed, use build()");
+        }
+        assertThat(builder.build().isBinary()).isTrue();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFeatureNodesAreNotSupported() {
+        new ProblemBuilder(1, StorageType.FEATURE_NODES);
+    }
+}
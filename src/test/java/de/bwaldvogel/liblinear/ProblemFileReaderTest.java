@@ -0,0 +1,134 @@
+package de.bwaldvogel.liblinear;
+
+import static de.bwaldvogel.liblinear.Linear.NL;
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.RandomAccessFile;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class ProblemFileReaderTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    private static File createTextFile() throws Exception {
+        File file = File.createTempFile("svm", "test");
+        file.deleteOnExit();
+
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.append("1 1:1 3:1 4:1").append(NL);
+            writer.append("2 2:0.5 3:1").append(NL);
+            writer.append("1").append(NL);
+            writer.append("2 1:1 4:3 7:1").append(NL);
+            writer.append("3 2:-1.5 5:0.25 6:1").append(NL);
+        }
+        finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static File createTempFile() throws Exception {
+        File file = File.createTempFile("problem", ".bin");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void assertSameInstances(Problem actual, Problem expected) {
+        assertThat(actual.l).isEqualTo(expected.l);
+        assertThat(actual.n).isEqualTo(expected.n);
+        assertThat(actual.bias).isEqualTo(expected.bias);
+        assertThat(actual.y).isEqualTo(expected.y);
+
+        int[] index = new int[actual.n];
+        double[] value = new double[actual.n];
+        int[] expectedIndex = new int[expected.n];
+        double[] expectedValue = new double[expected.n];
+        for (int i = 0; i < actual.l; i++) {
+            int length = actual.rows().copy(i, index, value);
+            assertThat(length).isEqualTo(expected.rows().copy(i, expectedIndex, expectedValue));
+            for (int j = 0; j < length; j++) {
+                assertThat(index[j]).isEqualTo(expectedIndex[j]);
+                assertThat(value[j]).isEqualTo(expectedValue[j]);
+            }
+        }
+    }
+
+    @Test
+    public void testConvert() throws Exception {
+        File textFile = createTextFile();
+        File binaryFile = createTempFile();
+        ProblemFileWriter.convert(textFile, binaryFile, -1);
+        assertThat(ProblemFileFormat.isProblemFile(binaryFile)).isTrue();
+        assertThat(ProblemFileFormat.isProblemFile(textFile)).isFalse();
+
+        for (double bias : new double[] {-1, 0, 1, 2.5}) {
+            Problem expected = Train.readProblem(textFile, bias);
+            for (StorageType storage : StorageType.values()) {
+                Problem actual = Train.readProblem(binaryFile, bias, storage);
+                assertSameInstances(actual, expected);
+                if (storage == StorageType.FEATURE_NODES) {
+                    assertThat(actual.x).isNotNull();
+                } else if (storage == StorageType.COMPRESSED || storage == StorageType.COMPRESSED_DICTIONARY) {
+                    assertThat(actual).isInstanceOf(CompressedProblem.class);
+                } else {
+                    assertThat(actual).isInstanceOf(CsrProblem.class);
+                }
+            }
+            assertSameInstances(Problem.readFromFile(binaryFile, bias), expected);
+            assertSameInstances(MappedProblem.open(binaryFile, bias), expected);
+        }
+    }
+
+    @Test
+    public void testWriteProblem() throws Exception {
+        Problem prob = Train.readProblem(createTextFile(), 1);
+        File file = createTempFile();
+        ProblemFileWriter.write(prob, file);
+
+        MappedProblem mapped = MappedProblem.open(file);
+        assertSameInstances(mapped, prob);
+        assertSameInstances(Train.readProblem(file, 1, StorageType.CSR), prob);
+    }
+
+    @Test
+    public void testWriteRandomProblem() throws Exception {
+        Problem prob = LinearTest.createRandomProblem(3);
+        File file = createTempFile();
+        ProblemFileWriter.write(prob, file);
+
+        // n is kept, even if the largest index is smaller
+        Problem actual = Train.readProblem(file, -1, StorageType.CSR);
+        assertSameInstances(actual, prob);
+
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+            linear.resetRandom();
+            Model expected = linear.train(prob, param);
+            linear.resetRandom();
+            assertThat(linear.train(actual, param)).isEqualTo(expected);
+        }
+    }
+
+    @Test(expected = InvalidInputDataException.class)
+    public void testTruncatedFile() throws Exception {
+        File file = createTempFile();
+        ProblemFileWriter.convert(createTextFile(), file, -1);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 8);
+        raf.close();
+
+        Train.readProblem(file, -1);
+    }
+}
@@ -0,0 +1,67 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class RegularizationPathTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    @Test
+    public void testModelsMatchColdStarts() {
+        Problem prob = LinearTest.createRandomProblem(3);
+        double[] C = {0.01, 0.1, 1, 10};
+        for (SolverType solver : new SolverType[] {SolverType.L2R_LR, SolverType.L2R_L2LOSS_SVC, SolverType.L2R_LR_DUAL}) {
+            Parameter param = new Parameter(solver, 1, 1e-6);
+            RegularizationPath path = linear.trainPath(prob, param, C, 3);
+            assertThat(path.size()).isEqualTo(C.length);
+
+            for (int k = 0; k < C.length; k++) {
+                assertThat(path.getC(k)).isEqualTo(C[k]);
+                assertThat(path.getAccuracy(k)).isGreaterThanOrEqualTo(0).isLessThanOrEqualTo(1);
+
+                Model expected = linear.train(prob, new Parameter(solver, C[k], 1e-6));
+                Model actual = path.getModel(k);
+                assertThat(actual.getLabels()).isEqualTo(expected.getLabels());
+                for (int j = 0; j < expected.w.length; j++)
+                    assertThat(actual.w[j]).as(solver + " C=" + C[k] + " w[" + j + "]").isEqualTo(expected.w[j], delta(1e-3));
+            }
+            int best = path.getBestIndex();
+            for (int k = 0; k < C.length; k++)
+                assertThat(path.getAccuracy(k)).isLessThanOrEqualTo(path.getAccuracy(best));
+        }
+    }
+
+    @Test
+    public void testIndependentOfThreads() {
+        Problem prob = LinearTest.createRandomProblem(4);
+        double[] C = {0.5, 1, 2};
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+            linear.resetRandom();
+            RegularizationPath expected = linear.trainPath(prob, param, C, 5);
+
+            param.setNumThreads(6);
+            linear.resetRandom();
+            RegularizationPath actual = linear.trainPath(prob, param, C, 5);
+            for (int k = 0; k < C.length; k++) {
+                assertThat(actual.getAccuracy(k)).as(solver.name()).isEqualTo(expected.getAccuracy(k));
+                assertThat(actual.getModel(k)).as(solver.name()).isEqualTo(expected.getModel(k));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsortedC() {
+        linear.trainPath(LinearTest.createRandomProblem(2), new Parameter(SolverType.L2R_LR, 1, 0.1), new double[] {1, 0.5}, 3);
+    }
+}
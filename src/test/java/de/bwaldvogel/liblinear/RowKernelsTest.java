@@ -0,0 +1,175 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+
+public class RowKernelsTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    /** a problem that is large enough to be split into blocks, with rows of very different lengths */
+    static Problem createProblem(Random random) {
+        Problem prob = new Problem();
+        prob.l = 3000;
+        prob.n = 500;
+        prob.bias = -1;
+        prob.y = new int[prob.l];
+        prob.x = new Feature[prob.l][];
+        for (int i = 0; i < prob.l; i++) {
+            prob.y[i] = random.nextBoolean() ? 1 : -1;
+            int length = i % 10 == 0 ? 400 : random.nextInt(40);
+            prob.x[i] = new Feature[length];
+            int index = 0;
+            for (int j = 0; j < length; j++) {
+                index += 1 + random.nextInt((prob.n - index) / (length - j));
+                prob.x[i][j] = new FeatureNode(index, random.nextGaussian() + (prob.y[i] > 0 ? 0.1 : -0.1));
+            }
+        }
+        return prob;
+    }
+
+    @Test
+    public void testSameProductsAsSingleThread() {
+        Random random = new Random(5);
+        Problem prob = createProblem(random);
+        SparseRows x = prob.rows();
+        RowKernels single = new RowKernels(x, prob.l, prob.n, 1);
+
+        double[] v = new double[prob.n];
+        for (int j = 0; j < v.length; j++)
+            v[j] = random.nextGaussian();
+        double[] u = new double[prob.l];
+        for (int i = 0; i < u.length; i++)
+            u[i] = random.nextGaussian();
+        int[] rows = new int[prob.l];
+        int m = 0;
+        for (int i = 0; i < prob.l; i++)
+            if (random.nextInt(3) > 0) rows[m++] = i;
+
+        double[] expectedXv = new double[prob.l];
+        double[] expectedXTv = new double[prob.n];
+        double[] expectedSubXv = new double[m];
+        double[] expectedSubXTv = new double[prob.n];
+        single.Xv(null, prob.l, v, expectedXv);
+        single.XTv(null, prob.l, u, expectedXTv);
+        single.Xv(rows, m, v, expectedSubXv);
+        single.XTv(rows, m, u, expectedSubXTv);
+
+        for (int numThreads : new int[] {2, 3, 8}) {
+            RowKernels kernels = new RowKernels(x, prob.l, prob.n, numThreads);
+            double[] Xv = new double[prob.l];
+            double[] XTv = new double[prob.n];
+            for (int repeat = 0; repeat < 2; repeat++) {
+                kernels.Xv(null, prob.l, v, Xv);
+                assertThat(Xv).isEqualTo(expectedXv);
+                kernels.XTv(null, prob.l, u, XTv);
+                for (int j = 0; j < prob.n; j++)
+                    assertThat(XTv[j]).isEqualTo(expectedXTv[j], delta(1e-10));
+
+                kernels.Xv(rows, m, v, Xv);
+                for (int k = 0; k < m; k++)
+                    assertThat(Xv[k]).isEqualTo(expectedSubXv[k]);
+                kernels.XTv(rows, m, u, XTv);
+                for (int j = 0; j < prob.n; j++)
+                    assertThat(XTv[j]).isEqualTo(expectedSubXTv[j], delta(1e-10));
+            }
+        }
+    }
+
+    @Test
+    public void testXTDXvIsXvScaledAndXTv() {
+        Random random = new Random(7);
+        Problem prob = createProblem(random);
+        double[] s = new double[prob.n];
+        for (int j = 0; j < s.length; j++)
+            s[j] = random.nextGaussian();
+        double[] D = new double[prob.l];
+        for (int i = 0; i < D.length; i++)
+            D[i] = random.nextDouble();
+        int[] rows = new int[prob.l];
+        int m = 0;
+        for (int i = 0; i < prob.l; i++)
+            if (random.nextInt(3) > 0) rows[m++] = i;
+
+        for (int numThreads : new int[] {1, 4}) {
+            RowKernels kernels = new RowKernels(prob.rows(), prob.l, prob.n, numThreads);
+            for (int[] subset : new int[][] {null, rows}) {
+                int size = subset == null ? prob.l : m;
+                double[] wa = new double[size];
+                kernels.Xv(subset, size, s, wa);
+                for (int k = 0; k < size; k++)
+                    wa[k] *= D[subset == null ? k : subset[k]];
+                double[] expected = new double[prob.n];
+                kernels.XTv(subset, size, wa, expected);
+
+                double[] actual = new double[prob.n];
+                kernels.XTDXv(subset, size, D, s, actual);
+                assertThat(actual).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    public void testDiagXTDX() {
+        Random random = new Random(8);
+        Problem prob = createProblem(random);
+        double[] D = new double[prob.l];
+        for (int i = 0; i < D.length; i++)
+            D[i] = random.nextDouble();
+        double[] expected = new double[prob.n];
+        for (int i = 0; i < prob.l; i++)
+            for (Feature f : prob.x[i])
+                expected[f.getIndex() - 1] += D[i] * f.getValue() * f.getValue();
+
+        for (int numThreads : new int[] {1, 4}) {
+            RowKernels kernels = new RowKernels(prob.rows(), prob.l, prob.n, numThreads);
+            double[] diag = new double[prob.n];
+            kernels.diagXTDX(null, prob.l, D, diag);
+            for (int j = 0; j < prob.n; j++)
+                assertThat(diag[j]).isEqualTo(expected[j], delta(1e-10));
+        }
+    }
+
+    @Test
+    public void testSmallProblemsAreNotSplit() {
+        Problem prob = LinearTest.createRandomProblem(2);
+        RowKernels kernels = new RowKernels(prob.rows(), prob.l, prob.n, 4);
+        RowKernels single = new RowKernels(prob.rows(), prob.l, prob.n, 1);
+        double[] u = new double[prob.l];
+        for (int i = 0; i < u.length; i++)
+            u[i] = i % 5 - 2;
+        double[] expected = new double[prob.n];
+        double[] actual = new double[prob.n];
+        single.XTv(null, prob.l, u, expected);
+        kernels.XTv(null, prob.l, u, actual);
+        assertThat(actual).isEqualTo(expected);
+    }
+
+    @Test
+    public void testTrainPrimalSolversWithSeveralThreads() {
+        Problem prob = createProblem(new Random(9));
+        for (SolverType solver : new SolverType[] {SolverType.L2R_LR, SolverType.L2R_L2LOSS_SVC}) {
+            Parameter param = new Parameter(solver, 1, 0.001);
+            Model expected = linear.train(prob, param);
+            param.setNumThreads(4);
+            Model actual = linear.train(prob, param);
+            for (int j = 0; j < prob.n; j++)
+                assertThat(actual.getFeatureWeights()[j]).as(solver + " w[" + j + "]").isEqualTo(expected.getFeatureWeights()[j],
+                    delta(1e-6));
+        }
+    }
+}
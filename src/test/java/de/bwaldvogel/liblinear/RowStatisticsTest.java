@@ -0,0 +1,64 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+
+public class RowStatisticsTest {
+
+    /** the example of {@link Problem} without bias */
+    private static CsrProblem createProblem() {
+        ProblemBuilder builder = new ProblemBuilder(-1);
+        builder.addRow(1, new int[] {2, 3}, new double[] {0.1, 0.2}, 2);
+        builder.addRow(2, new int[] {2, 3, 4}, new double[] {0.1, 0.3, -1.2}, 3);
+        builder.addRow(1, new int[] {1}, new double[] {0.4}, 1);
+        builder.addRow(2, new int[] {2, 4, 5}, new double[] {0.1, 1.4, 0.5}, 3);
+        builder.addRow(3, new int[] {1, 2, 3, 4, 5}, new double[] {-0.1, -0.2, 0.1, 1.1, 0.1}, 5);
+        return builder.build();
+    }
+
+    @Test
+    public void testCompute() {
+        CsrProblem prob = createProblem();
+        RowStatistics statistics = RowStatistics.compute(prob.rows(), prob.l);
+        assertThat(statistics.length).isEqualTo(new int[] {2, 3, 1, 3, 5});
+        assertThat(statistics.maxLength).isEqualTo(5);
+        assertThat(statistics.maxIndex).isEqualTo(5);
+        for (int i = 0; i < prob.l; i++)
+            assertThat(statistics.squaredNorm[i]).isEqualTo(prob.rows().squaredNorm(i));
+    }
+
+    @Test
+    public void testSelect() {
+        RowStatistics statistics = RowStatistics.compute(createProblem().rows(), 5);
+        RowStatistics subset = statistics.select(new int[] {3, 0});
+        assertThat(subset.length).isEqualTo(new int[] {3, 2});
+        assertThat(subset.squaredNorm).isEqualTo(new double[] {statistics.squaredNorm[3], statistics.squaredNorm[0]});
+        assertThat(subset.maxLength).isEqualTo(3);
+        assertThat(subset.maxIndex).isEqualTo(5);
+    }
+
+    @Test
+    public void testCachedForPrimitiveStorage() {
+        CsrProblem prob = createProblem();
+        assertThat(prob.rowStatistics()).isSameAs(prob.rowStatistics());
+        assertThat(prob.rowStatistics().maxIndex).isEqualTo(5);
+    }
+
+    @Test
+    public void testRecomputedWhenTheRowsChange() {
+        CsrProblem prob = createProblem();
+        RowStatistics all = prob.rowStatistics();
+        prob.l = 2;
+        RowStatistics firstRows = prob.rowStatistics();
+        assertThat(firstRows.length).isEqualTo(new int[] {2, 3});
+        assertThat(firstRows.maxIndex).isEqualTo(4);
+
+        prob.l = 5;
+        prob.rows = new RowSubset(prob.rows, new int[] {2, 0, 1, 3, 4});
+        assertThat(prob.rowStatistics()).isNotSameAs(all);
+        assertThat(prob.rowStatistics().length).isEqualTo(new int[] {1, 2, 3, 3, 5});
+        assertThat(prob.rowStatistics()).isSameAs(prob.rowStatistics());
+    }
+}
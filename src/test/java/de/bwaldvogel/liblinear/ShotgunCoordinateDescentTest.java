@@ -0,0 +1,111 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+
+public class ShotgunCoordinateDescentTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    @Test
+    public void testSameObjectiveAsSequentialSolver() {
+        Problem prob = RowKernelsTest.createProblem(new Random(17));
+        for (SolverType solver : new SolverType[] {SolverType.L1R_L2LOSS_SVC, SolverType.L1R_LR}) {
+            Parameter param = new Parameter(solver, 1, 1e-4);
+            double expected = DuplicateRowsTest.objective(linear.train(prob, param), prob);
+
+            param.setNumThreads(4);
+            param.setAsynchronousL1(true);
+            double actual = DuplicateRowsTest.objective(linear.train(prob, param), prob);
+            assertThat(actual).as(solver.name()).isEqualTo(expected, delta(1e-3 * expected));
+        }
+    }
+
+    @Test
+    public void testThreadsAloneKeepTheSequentialSolver() {
+        Problem prob = RowKernelsTest.createProblem(new Random(19));
+        for (SolverType solver : new SolverType[] {SolverType.L1R_L2LOSS_SVC, SolverType.L1R_LR}) {
+            Parameter param = new Parameter(solver, 1, 0.01);
+            linear.resetRandom();
+            Model expected = linear.train(prob, param);
+            param.setNumThreads(4);
+            linear.resetRandom();
+            assertThat(linear.train(prob, param)).as(solver.name()).isEqualTo(expected);
+        }
+    }
+
+    /** n columns that are all equal, or each with a single entry in its own row */
+    private static FeatureColumns columns(int n, boolean identical) {
+        int[] col_ptr = new int[n + 1];
+        int[] row_index = new int[identical ? 10 * n : n];
+        double[] x_value = new double[row_index.length];
+        for (int j = 0; j < n; j++) {
+            int length = identical ? 10 : 1;
+            col_ptr[j + 1] = col_ptr[j] + length;
+            for (int k = 0; k < length; k++) {
+                row_index[col_ptr[j] + k] = identical ? k + 1 : j + 1;
+                x_value[col_ptr[j] + k] = 1 + k;
+            }
+        }
+        return new FeatureColumns(new CsrRows(col_ptr, row_index, x_value), identical ? 10 : n);
+    }
+
+    @Test
+    public void testThreadsDependOnCorrelation() {
+        assertThat(new ShotgunCoordinateDescent(columns(100, false), 100, 100, 8).getNumThreads()).isEqualTo(8);
+        assertThat(new ShotgunCoordinateDescent(columns(100, true), 10, 100, 8).getNumThreads()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSpectralRadiusIsEstimatedOnce() {
+        FeatureColumns columns = columns(100, true);
+        double rho = columns.spectralRadius();
+        assertThat(rho).isEqualTo(100, delta(1e-6));
+        assertThat(columns.spectralRadius()).isEqualTo(rho);
+    }
+
+    /** a large problem whose features are almost identical, so that Shotgun falls back to one thread */
+    private static Problem createCorrelatedProblem(Random random) {
+        Problem prob = new Problem();
+        prob.l = 2000;
+        prob.n = 40;
+        prob.bias = -1;
+        prob.y = new int[prob.l];
+        prob.x = new Feature[prob.l][prob.n];
+        for (int i = 0; i < prob.l; i++) {
+            prob.y[i] = random.nextBoolean() ? 1 : -1;
+            double base = random.nextGaussian() + (prob.y[i] > 0 ? 0.5 : -0.5);
+            for (int j = 0; j < prob.n; j++)
+                prob.x[i][j] = new FeatureNode(j + 1, base + 0.01 * random.nextGaussian());
+        }
+        return prob;
+    }
+
+    @Test
+    public void testSequentialFallbackIsIndependentOfThreads() {
+        Problem prob = createCorrelatedProblem(new Random(18));
+        for (SolverType solver : new SolverType[] {SolverType.L1R_L2LOSS_SVC, SolverType.L1R_LR}) {
+            Parameter param = new Parameter(solver, 1, 0.01);
+            linear.resetRandom();
+            Model expected = linear.train(prob, param);
+            param.setNumThreads(4);
+            param.setAsynchronousL1(true);
+            linear.resetRandom();
+            assertThat(linear.train(prob, param)).as(solver.name()).isEqualTo(expected);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.Test;
+
+
+public class SolverWorkspaceTest {
+
+    @Test
+    public void testArraysAreReused() {
+        SolverWorkspace workspace = new SolverWorkspace();
+        double[] z = workspace.doubles(SolverWorkspace.FUN_Z, 10);
+        assertThat(workspace.doubles(SolverWorkspace.FUN_Z, 10)).isSameAs(z);
+        assertThat(workspace.doubles(SolverWorkspace.FUN_D, 10)).isNotSameAs(z);
+        assertThat(workspace.doubles(SolverWorkspace.FUN_Z, 11)).hasSize(11);
+        assertThat(workspace.ints(SolverWorkspace.FUN_I, 5)).isSameAs(workspace.ints(SolverWorkspace.FUN_I, 5));
+        assertThat(workspace.bytes(SolverWorkspace.DUAL_Y, 5)).isSameAs(workspace.bytes(SolverWorkspace.DUAL_Y, 5));
+    }
+
+    @Test
+    public void testMatricesAreReused() {
+        SolverWorkspace workspace = new SolverWorkspace();
+        double[][] s = workspace.matrix(SolverWorkspace.LBFGS_S, 3, 4);
+        assertThat(s).hasSize(3);
+        assertThat(s[0]).hasSize(4);
+        assertThat(workspace.matrix(SolverWorkspace.LBFGS_S, 3, 4)).isSameAs(s);
+        assertThat(workspace.matrix(SolverWorkspace.LBFGS_Y, 3, 4)).isNotSameAs(s);
+        assertThat(workspace.matrix(SolverWorkspace.LBFGS_S, 3, 5)[0]).hasSize(5);
+    }
+
+    @Test
+    public void testZeros() {
+        SolverWorkspace workspace = new SolverWorkspace();
+        double[] w0 = workspace.doubles(SolverWorkspace.TRON_W0, 3);
+        w0[1] = 5;
+        assertThat(workspace.zeros(SolverWorkspace.TRON_W0, 3)).isSameAs(w0).isEqualTo(new double[3]);
+    }
+
+    @Test
+    public void testInstanceCostsAreStoredInTheWorkspace() {
+        SolverWorkspace workspace = new SolverWorkspace();
+        Problem prob = new Problem();
+        prob.l = 3;
+        prob.y = new int[] {1, -1, 1};
+        prob.W = new double[] {1, 2, 0.5};
+        double[] C = Linear.instanceCosts(prob, 4, 3, workspace);
+        assertThat(C).isEqualTo(new double[] {4, 6, 2});
+        assertThat(workspace.doubles(SolverWorkspace.COSTS, 3)).isSameAs(C);
+        prob.W = null;
+        assertThat(Linear.instanceCosts(prob, 4, 3, workspace)).isSameAs(C).isEqualTo(new double[] {4, 3, 4});
+    }
+
+    @Test
+    public void testKernelsAreShared() {
+        SolverWorkspace workspace = new SolverWorkspace();
+        SparseRows x = new CsrRows(new int[] {0, 1}, new int[] {1}, new double[] {2});
+        RowKernels kernels = workspace.kernels(x, 1, 1, 1);
+        assertThat(workspace.kernels(x, 1, 1, 1)).isSameAs(kernels);
+        assertThat(workspace.kernels(x, 1, 1, 2)).isNotSameAs(kernels);
+    }
+
+    @Test
+    public void testPool() {
+        SolverWorkspace.Pool pool = new SolverWorkspace.Pool();
+        SolverWorkspace first = pool.acquire();
+        SolverWorkspace second = pool.acquire();
+        assertThat(second).isNotSameAs(first);
+        pool.release(first);
+        assertThat(pool.acquire()).isSameAs(first);
+    }
+}
@@ -26,7 +26,8 @@ public class TrainTest {
             assertThat(param.solverType).isEqualTo(solver);
             // check default eps
             if (solver.ordinal() == 0 || solver.ordinal() == 2 //
-                || solver.ordinal() == 5 || solver.ordinal() == 6) {
+                || solver.ordinal() == 5 || solver.ordinal() == 6 //
+                || solver.ordinal() >= 8) {
                 assertThat(param.eps).isEqualTo(0.01);
             } else {
                 assertThat(param.eps).isEqualTo(0.1);
@@ -36,6 +37,28 @@ public class TrainTest {
         }
     }
 
+    @Test
+    public void testParseNumThreads() {
+        Train train = new Train();
+        train.parse_command_line(new String[] {"model-filename"});
+        assertThat(train.getNumThreads()).isEqualTo(Runtime.getRuntime().availableProcessors());
+        assertThat(train.getParameter().getNumThreads()).isEqualTo(1);
+
+        train.parse_command_line(new String[] {"-n", "3", "model-filename"});
+        assertThat(train.getNumThreads()).isEqualTo(3);
+        assertThat(train.getParameter().getNumThreads()).isEqualTo(3);
+    }
+
+    @Test
+    public void testParseFeatureHashing() {
+        Train train = new Train();
+        train.parse_command_line(new String[] {"model-filename"});
+        assertThat(train.getFeatureHasher()).isNull();
+
+        train.parse_command_line(new String[] {"-H", "18", "model-filename"});
+        assertThat(train.getFeatureHasher()).isEqualTo(new FeatureHasher(18));
+    }
+
     @Test
     // https://github.com/bwaldvogel/liblinear-java/issues/4
     public void testParseWeights() throws Exception {
@@ -98,6 +121,58 @@ public class TrainTest {
         }
     }
 
+    @Test
+    public void testReadProblemIntoCsr() throws Exception {
+
+        File file = File.createTempFile("svm", "test");
+        file.deleteOnExit();
+
+        Collection<String> lines = new ArrayList<String>();
+        lines.add("1 1:0.5  3:1  4:0.25   6:1");
+        lines.add("2 2:1  3:-2  5:1   7:1");
+        lines.add("1 ");
+        lines.add("1 1:1  4:1  7:0.125");
+        lines.add("2 4:1  5:1  7:1");
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            for (String line : lines)
+                writer.append(line).append(NL);
+        }
+        finally {
+            writer.close();
+        }
+
+        Problem expected = Train.readProblem(file, 1);
+        Linear linear = new Linear();
+        linear.disableDebugOutput();
+        Parameter param = new Parameter(SolverType.L2R_L2LOSS_SVC_DUAL, 1, 0.1);
+        linear.resetRandom();
+        Model expectedModel = linear.train(expected, param);
+
+        for (StorageType storage : new StorageType[] {StorageType.CSR, StorageType.CSR_FLOAT}) {
+            CsrProblem prob = (CsrProblem)Train.readProblem(file, 1, storage);
+            assertThat(prob.isSinglePrecision()).isEqualTo(storage == StorageType.CSR_FLOAT);
+            assertThat(prob.l).isEqualTo(expected.l);
+            assertThat(prob.n).isEqualTo(expected.n);
+            assertThat(prob.y).isEqualTo(expected.y);
+            assertThat(prob.getRowPtr()).isEqualTo(new int[] {0, 5, 10, 11, 15, 19});
+
+            for (int i = 0; i < prob.l; i++) {
+                int[] index = new int[prob.n];
+                double[] value = new double[prob.n];
+                int length = prob.rows().copy(i, index, value);
+                assertThat(length).isEqualTo(expected.x[i].length);
+                for (int j = 0; j < length; j++) {
+                    assertThat(index[j]).isEqualTo(expected.x[i][j].getIndex());
+                    assertThat(value[j]).isEqualTo(expected.x[i][j].getValue());
+                }
+            }
+
+            linear.resetRandom();
+            assertThat(linear.train(prob, param)).isEqualTo(expectedModel);
+        }
+    }
+
     /**
      * unit-test for Issue #1 (http://github.com/bwaldvogel/liblinear-java/issues#issue/1)
      */
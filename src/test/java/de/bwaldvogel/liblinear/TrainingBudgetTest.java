@@ -0,0 +1,108 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+
+public class TrainingBudgetTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    @Test
+    public void testCancelled() {
+        Problem prob = LinearTest.createRandomProblem(3);
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+            param.setCancellationToken(token);
+            Model model = linear.train(prob, param);
+            assertThat(model.isStoppedEarly()).as(solver.name()).isTrue();
+            // the model is still usable
+            for (int i = 0; i < prob.l; i++)
+                assertThat(linear.predict(model, prob.x[i])).isGreaterThanOrEqualTo(0).isLessThan(3);
+
+            param.setCancellationToken(new CancellationToken());
+            assertThat(linear.train(prob, param).isStoppedEarly()).as(solver.name()).isFalse();
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        Problem prob = LinearTest.createRandomProblem(2);
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+            param.setDeadline(System.currentTimeMillis() - 1);
+            assertThat(linear.train(prob, param).isStoppedEarly()).as(solver.name()).isTrue();
+
+            param.setDeadline(System.currentTimeMillis() + 60000);
+            assertThat(linear.train(prob, param).isStoppedEarly()).as(solver.name()).isFalse();
+        }
+    }
+
+    @Test
+    public void testCrossValidationWithDeadline() {
+        Problem prob = LinearTest.createRandomProblem(3);
+        Parameter param = new Parameter(SolverType.L2R_L2LOSS_SVC_DUAL, 1, 0.1);
+        param.setNumThreads(3);
+        param.setDeadline(1);
+        int[] target = new int[prob.l];
+        linear.crossValidation(prob, param, 4, target);
+        for (int predicted : target)
+            assertThat(predicted).isGreaterThanOrEqualTo(0).isLessThan(3);
+    }
+
+    /** a dense problem with noisy labels, which no solver solves in one iteration */
+    private static Problem createNoisyProblem() {
+        Random random = new Random(1);
+        Problem prob = new Problem();
+        prob.l = 300;
+        prob.n = 20;
+        prob.bias = -1;
+        prob.y = new int[prob.l];
+        prob.x = new Feature[prob.l][prob.n];
+        for (int i = 0; i < prob.l; i++) {
+            double sum = 0;
+            for (int j = 0; j < prob.n; j++) {
+                double value = random.nextGaussian();
+                prob.x[i][j] = new FeatureNode(j + 1, value);
+                sum += value * (j % 3 - 1);
+            }
+            prob.y[i] = sum + 2 * random.nextGaussian() > 0 ? 1 : 0;
+        }
+        return prob;
+    }
+
+    @Test
+    public void testMaxIterations() {
+        Problem prob = createNoisyProblem();
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 1e-6);
+            linear.resetRandom();
+            Model converged = linear.train(prob, param);
+
+            param.setMaxIterations(1);
+            linear.resetRandom();
+            Model model = linear.train(prob, param);
+            assertThat(model.isStoppedEarly()).isFalse();
+            assertThat(model).as(solver.name()).isNotEqualTo(converged);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMaxIterations() {
+        new Parameter(SolverType.L2R_LR, 1, 0.1).setMaxIterations(-1);
+    }
+}
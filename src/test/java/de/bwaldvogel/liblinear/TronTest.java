@@ -0,0 +1,133 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Delta.delta;
+
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import libsvm.svm.model.Feature;
+import libsvm.svm.model.FeatureNode;
+
+
+public class TronTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    /** the features have scales between 1e-2 and 1e2 */
+    static Problem createBadlyScaledProblem(Random random) {
+        Problem prob = new Problem();
+        prob.l = 300;
+        prob.n = 40;
+        prob.bias = -1;
+        prob.y = new int[prob.l];
+        prob.x = new Feature[prob.l][];
+        double[] scale = new double[prob.n];
+        for (int j = 0; j < prob.n; j++)
+            scale[j] = Math.pow(10, 4.0 * j / (prob.n - 1) - 2);
+        for (int i = 0; i < prob.l; i++) {
+            prob.y[i] = random.nextBoolean() ? 1 : -1;
+            int length = 1 + random.nextInt(prob.n / 2);
+            prob.x[i] = new Feature[length];
+            int index = 0;
+            for (int j = 0; j < length; j++) {
+                index += 1 + random.nextInt((prob.n - index) / (length - j));
+                prob.x[i][j] = new FeatureNode(index, scale[index - 1] * (random.nextGaussian() + (prob.y[i] > 0 ? 0.5 : -0.5)));
+            }
+        }
+        return prob;
+    }
+
+    /** counts the Hessian-vector products */
+    private static class CountingFunction implements Function {
+
+        private final Function fun_obj;
+        int                    hv;
+
+        CountingFunction( Function fun_obj ) {
+            this.fun_obj = fun_obj;
+        }
+
+        public double fun(double[] w) {
+            return fun_obj.fun(w);
+        }
+
+        public void grad(double[] w, double[] g) {
+            fun_obj.grad(w, g);
+        }
+
+        public void Hv(double[] s, double[] Hs) {
+            hv++;
+            fun_obj.Hv(s, Hs);
+        }
+
+        public void Hdiag(double[] M) {
+            fun_obj.Hdiag(M);
+        }
+
+        public int get_nr_variable() {
+            return fun_obj.get_nr_variable();
+        }
+    }
+
+    private static Function[] createFunctions(Problem prob) {
+        return new Function[] {new L2R_LrFunction(prob, 1, 2), new L2R_L2_SvcFunction(prob, 1, 2)};
+    }
+
+    @Test
+    public void testHdiagIsTheDiagonalOfTheHessian() {
+        Random random = new Random(1);
+        Problem prob = createBadlyScaledProblem(random);
+        double[] w = new double[prob.n];
+        for (int j = 0; j < prob.n; j++)
+            w[j] = 0.01 * random.nextGaussian();
+
+        for (Function fun_obj : createFunctions(prob)) {
+            double[] g = new double[prob.n];
+            fun_obj.fun(w);
+            fun_obj.grad(w, g);
+            double[] M = new double[prob.n];
+            fun_obj.Hdiag(M);
+
+            double[] e = new double[prob.n];
+            double[] He = new double[prob.n];
+            for (int j = 0; j < prob.n; j++) {
+                e[j] = 1;
+                fun_obj.Hv(e, He);
+                e[j] = 0;
+                assertThat(M[j]).isEqualTo(He[j], delta(1e-9 * He[j]));
+            }
+        }
+    }
+
+    @Test
+    public void testPreconditionedNewtonReachesTheSameOptimum() {
+        Problem prob = createBadlyScaledProblem(new Random(2));
+        for (SolverType solver : new SolverType[] {SolverType.L2R_LR, SolverType.L2R_L2LOSS_SVC}) {
+            Parameter param = new Parameter(solver, 1, 1e-4);
+            double expected = DuplicateRowsTest.objective(linear.train(prob, param), prob);
+            param.setPreconditioning(true);
+            double actual = DuplicateRowsTest.objective(linear.train(prob, param), prob);
+            assertThat(actual).as(solver.name()).isEqualTo(expected, delta(1e-5 * expected));
+        }
+    }
+
+    @Test
+    public void testPreconditioningSavesHessianProducts() {
+        Problem prob = createBadlyScaledProblem(new Random(3));
+        for (int f = 0; f < 2; f++) {
+            CountingFunction plain = new CountingFunction(createFunctions(prob)[f]);
+            new Tron(plain, 1e-4, 1000, null, new SolverWorkspace(), false).tron(new double[prob.n]);
+            CountingFunction preconditioned = new CountingFunction(createFunctions(prob)[f]);
+            new Tron(preconditioned, 1e-4, 1000, null, new SolverWorkspace(), true).tron(new double[prob.n]);
+            assertThat(preconditioned.hv).isLessThan(plain.hv);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package de.bwaldvogel.liblinear;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+public class WarmStartTest {
+
+    private static Linear linear = new Linear();
+
+    @BeforeClass
+    public static void disableDebugOutput() {
+        linear.disableDebugOutput();
+    }
+
+    private static double distance(double[] a, double[] b) {
+        double d = 0;
+        for (int i = 0; i < a.length; i++)
+            d += (a[i] - b[i]) * (a[i] - b[i]);
+        return Math.sqrt(d);
+    }
+
+    @Test
+    public void testZeroWeightsAreAColdStart() {
+        Problem prob = LinearTest.createRandomProblem(3);
+        for (SolverType solver : SolverType.values()) {
+            Parameter param = new Parameter(solver, 1, 0.1);
+            linear.resetRandom();
+            Model expected = linear.train(prob, param);
+            linear.resetRandom();
+            assertThat(linear.train(prob, param, new double[expected.w.length])).as(solver.name()).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testStartCloseToTheOptimum() {
+        for (int numClasses : new int[] {2, 3}) {
+            Problem prob = LinearTest.createRandomProblem(numClasses);
+            for (SolverType solver : SolverType.values()) {
+                if (solver == SolverType.MCSVM_CS) continue;
+                String description = solver + " with " + numClasses + " classes";
+
+                Parameter tight = new Parameter(solver, 1, 1e-5);
+                Model optimum = linear.train(prob, tight);
+                assertThat(distance(linear.train(prob, tight, optimum).w, optimum.w)).as(description).isLessThan(1e-2);
+
+                // the dual variables of the instances on the margin can't be recovered from the weights for the L1 loss
+                if (solver == SolverType.L2R_L1LOSS_SVC_DUAL) continue;
+
+                // one pass over the data with a loose stopping tolerance
+                Parameter loose = new Parameter(solver, 1, 1e3);
+                Model cold = linear.train(prob, loose);
+                Model warm = linear.train(prob, loose, optimum);
+                assertThat(distance(warm.w, optimum.w)).as(description).isLessThan(distance(cold.w, optimum.w));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchClassesByLabel() {
+        Problem prob = LinearTest.createRandomProblem(2);
+        Parameter param = new Parameter(SolverType.L2R_LR, 1, 1e3);
+        Model optimum = linear.train(prob, new Parameter(SolverType.L2R_LR, 1, 1e-5));
+
+        // the same problem with the first instance of the other class in front, so the labels are swapped
+        int first = 0;
+        while (prob.y[first] == prob.y[0])
+            first++;
+        Problem swapped = new Problem();
+        swapped.l = prob.l;
+        swapped.n = prob.n;
+        swapped.bias = prob.bias;
+        swapped.x = prob.x.clone();
+        swapped.y = prob.y.clone();
+        swapped.x[0] = prob.x[first];
+        swapped.x[first] = prob.x[0];
+        swapped.y[0] = prob.y[first];
+        swapped.y[first] = prob.y[0];
+
+        Model warm = linear.train(swapped, param, optimum);
+        assertThat(warm.label).isEqualTo(new int[] {optimum.label[1], optimum.label[0]});
+        double[] negated = new double[optimum.w.length];
+        for (int j = 0; j < negated.length; j++)
+            negated[j] = -optimum.w[j];
+        assertThat(distance(warm.w, negated)).isLessThan(1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfWeights() {
+        Problem prob = LinearTest.createRandomProblem(3);
+        linear.train(prob, new Parameter(SolverType.L2R_LR, 1, 0.1), new double[prob.n]);
+    }
+}